@@ -0,0 +1,78 @@
+package com.defiancecraft.configure.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jnbt.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.defiancecraft.configure.db.BsonBuffer;
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.ItemEncoder;
+import com.defiancecraft.configure.items.ItemRegistry;
+import com.mongodb.DefaultDBEncoder;
+
+/**
+ * Benchmarks turning a player's parsed EnderItems into an encoded
+ * bank document, as the enderchest migrator's --bson-encoder options
+ * do: 'tree' converts every item to DBObjects and then encodes the
+ * bank, 'direct' encodes the items straight into a reused buffer.
+ * Each invocation encodes one player, so with the GC profiler
+ * (-prof gc), gc.alloc.rate.norm is the allocation per player.
+ *
+ * Both encode the bank with the migrator's own createBank, and the
+ * fixture is checked to encode identically both ways (see
+ * {@link EncodingCheck}) before it is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BsonEncodingBenchmark {
+
+	@Param({ "EMPTY", "FULL_CHEST", "HEAVY_BOOKS", "HEAVY_ENCHANTS", "MIXED_META" })
+	public PlayerDataFixture fixture;
+
+	private ItemConverter converter;
+	private ItemEncoder itemEncoder;
+	private DefaultDBEncoder encoder = new DefaultDBEncoder();
+	private BsonBuffer itemBuffer = new BsonBuffer(16 * 1024);
+	private BsonBuffer bankBuffer = new BsonBuffer(16 * 1024);
+	private List<Tag> items;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+
+		converter = new ItemConverter(ItemRegistry.loadDefault());
+		itemEncoder = new ItemEncoder(converter);
+		items = EncodingCheck.getEnderItems(fixture);
+
+		EncodingCheck.check(converter, fixture);
+
+	}
+
+	@Benchmark
+	public byte[] tree() {
+		return EncodingCheck.encodeTree(converter, encoder, items);
+	}
+
+	@Benchmark
+	public byte[] direct() {
+		return EncodingCheck.encodeDirect(itemEncoder, items, itemBuffer, bankBuffer);
+	}
+
+}
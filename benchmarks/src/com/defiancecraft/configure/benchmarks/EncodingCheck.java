@@ -0,0 +1,129 @@
+package com.defiancecraft.configure.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.jnbt.ListTag;
+import org.jnbt.Tag;
+
+import com.defiancecraft.configure.db.BsonBuffer;
+import com.defiancecraft.configure.db.RawDBObject;
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.ItemEncoder;
+import com.defiancecraft.configure.items.ItemRegistry;
+import com.defiancecraft.configure.migrators.EnderChestMigrator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import com.mongodb.DefaultDBEncoder;
+
+/**
+ * Checks that the enderchest migrator's --bson-encoder options write the
+ * same bank documents: that the bytes the direct encoder writes are the
+ * bytes the driver's DefaultDBEncoder writes for the DBObjects from
+ * ItemConverter, for the ender items of every PlayerDataFixture.
+ *
+ * BsonEncodingBenchmark checks its fixture before measuring it; to
+ * check every fixture on its own, once the module is packaged, run
+ *
+ *     java -cp benchmarks/target/benchmarks.jar com.defiancecraft.configure.benchmarks.EncodingCheck
+ */
+public class EncodingCheck {
+
+	static final DBRef USER = new DBRef(null, "users", new ObjectId());
+
+	/**
+	 * Checks every fixture, exiting with status 1 if any differ
+	 *
+	 * @param args Unused
+	 * @throws IOException If a fixture could not be generated or parsed
+	 */
+	public static void main(String[] args) throws IOException {
+
+		ItemConverter converter = new ItemConverter(ItemRegistry.loadDefault());
+		int failed = 0;
+
+		for (PlayerDataFixture fixture : PlayerDataFixture.values()) {
+			try {
+				check(converter, fixture);
+				System.out.printf("[*] %-16s identical%n", fixture);
+			} catch (IllegalStateException e) {
+				System.out.printf("[!] %-16s %s%n", fixture, e.getMessage());
+				failed++;
+			}
+		}
+
+		if (failed > 0)
+			System.exit(1);
+
+	}
+
+	/**
+	 * Checks that both encoders write the same bank for a fixture
+	 *
+	 * @param converter ItemConverter to convert and encode items with
+	 * @param fixture Fixture to check
+	 * @throws IOException If the fixture could not be generated or parsed
+	 * @throws IllegalStateException If the banks differ
+	 */
+	public static void check(ItemConverter converter, PlayerDataFixture fixture) throws IOException {
+
+		List<Tag> items = getEnderItems(fixture);
+		byte[] tree = encodeTree(converter, new DefaultDBEncoder(), items);
+		byte[] direct = encodeDirect(new ItemEncoder(converter), items, new BsonBuffer(16 * 1024), new BsonBuffer(16 * 1024));
+
+		if (Arrays.equals(tree, direct))
+			return;
+
+		int offset = 0;
+		while (offset < tree.length && offset < direct.length && tree[offset] == direct[offset])
+			offset++;
+
+		throw new IllegalStateException(String.format(
+				"banks differ from byte %d (tree: %d bytes, direct: %d bytes)", offset, tree.length, direct.length));
+
+	}
+
+	/**
+	 * Gets the parsed ender items of a fixture
+	 */
+	static List<Tag> getEnderItems(PlayerDataFixture fixture) throws IOException {
+		return ((ListTag) ParseBenchmark.parse(fixture.generate()).getValue().get("EnderItems")).getValue();
+	}
+
+	/**
+	 * Encodes a bank as --bson-encoder tree does: converting every item
+	 * to DBObjects, and then encoding the bank as the driver would
+	 */
+	static byte[] encodeTree(ItemConverter converter, DefaultDBEncoder encoder, List<Tag> items) {
+
+		List<DBObject> bankItems = new ArrayList<DBObject>();
+		for (Tag itemTag : items)
+			bankItems.add(converter.processItem(itemTag));
+
+		// The buffer is only used for directly encoded items
+		return encoder.encode(EnderChestMigrator.createBank(new BasicDBObject("items", bankItems), USER, null));
+
+	}
+
+	/**
+	 * Encodes a bank as --bson-encoder direct does: encoding the items
+	 * straight into one buffer, as a worker does, and then copying them
+	 * into the bank in another, as the writing thread does
+	 */
+	static byte[] encodeDirect(ItemEncoder itemEncoder, List<Tag> items, BsonBuffer itemBuffer, BsonBuffer bankBuffer) {
+
+		itemBuffer.reset();
+		int doc = itemBuffer.startDocument();
+		itemEncoder.encodeItems("items", items, itemBuffer);
+		itemBuffer.end(doc);
+
+		DBObject bank = EnderChestMigrator.createBank(new RawDBObject(itemBuffer.toByteArray()), USER, bankBuffer);
+		return ((RawDBObject) bank).getDocument();
+
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.defiancecraft.configure.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.jnbt.CompoundTag;
+import org.jnbt.ListTag;
+import org.jnbt.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.ItemRegistry;
+import com.defiancecraft.configure.items.MaterialTable;
+import com.defiancecraft.configure.items.MetaType;
+import com.mongodb.DBObject;
+
+/**
+ * Benchmarks the conversion of parsed item tags to DBObjects. Each
+ * invocation converts one item (cycling through the fixture's ender
+ * items), so the throughput of processItem is in items/sec.
+ *
+ * The legacy* benchmarks run the same fixtures through the conversion
+ * EnderChestMigrator used before ItemConverter (see LegacyItemConverter),
+ * so the two can be compared side by side; setup checks that both give
+ * the same documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemConversionBenchmark {
+
+	@Param({ "FULL_CHEST", "HEAVY_BOOKS", "HEAVY_ENCHANTS" })
+	public PlayerDataFixture fixture;
+
+	private ItemConverter converter;
+	private LegacyItemConverter legacyConverter;
+	private List<Tag> items;
+	private List<MetaType> metaTypes = new ArrayList<MetaType>();
+	private List<String> materialNames = new ArrayList<String>();
+	private List<CompoundTag> metaTags = new ArrayList<CompoundTag>();
+	private List<List<Tag>> enchantLists = new ArrayList<List<Tag>>();
+	private int[] colors = { 0x000000, 0xFFFFFF, 0x3366CC, 0xA06540 };
+	private int index;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("deprecation")
+	public void setup() throws IOException {
+
+		ItemRegistry itemRegistry = ItemRegistry.loadDefault();
+		converter = new ItemConverter(itemRegistry);
+		legacyConverter = new LegacyItemConverter(itemRegistry);
+		items = ((ListTag) ParseBenchmark.parse(fixture.generate()).getValue().get("EnderItems")).getValue();
+
+		for (Tag itemTag : items) {
+
+			if (!converter.processItem(itemTag).equals(legacyConverter.processItem(itemTag)))
+				throw new IllegalStateException(String.format("ItemConverter and LegacyItemConverter convert an item of %s differently", fixture));
+
+			Map<String, Tag> item = ((CompoundTag) itemTag).getValue();
+			if (!item.containsKey("tag"))
+				continue;
+
+			CompoundTag tag = (CompoundTag) item.get("tag");
+			int itemId = converter.getItemId(item.get("id"));
+			metaTypes.add(MaterialTable.getMetaType(itemId));
+			materialNames.add(Material.getMaterial(itemId).name());
+			metaTags.add(tag);
+
+			for (String key : new String[] { "ench", "StoredEnchantments" })
+				if (tag.getValue().containsKey(key))
+					enchantLists.add(((ListTag) tag.getValue().get(key)).getValue());
+
+		}
+
+	}
+
+	private int next(int size) {
+		if (++index >= size)
+			index = 0;
+		return index;
+	}
+
+	@Benchmark
+	public DBObject processItem() {
+		return converter.processItem(items.get(next(items.size())));
+	}
+
+	@Benchmark
+	public DBObject processMeta() {
+		if (metaTags.isEmpty())
+			return null;
+		int i = next(metaTags.size());
+		return converter.processMeta(metaTypes.get(i), metaTags.get(i));
+	}
+
+	@Benchmark
+	public DBObject serializeEnchantments() {
+		if (enchantLists.isEmpty())
+			return null;
+		return converter.serializeEnchantments(enchantLists.get(next(enchantLists.size())));
+	}
+
+	@Benchmark
+	public DBObject serializeColor() {
+		return converter.serializeColor(colors[next(colors.length)]);
+	}
+
+	@Benchmark
+	public DBObject legacyProcessItem() {
+		return legacyConverter.processItem(items.get(next(items.size())));
+	}
+
+	@Benchmark
+	public DBObject legacyProcessMeta() {
+		if (metaTags.isEmpty())
+			return null;
+		int i = next(metaTags.size());
+		return legacyConverter.processMeta(materialNames.get(i), metaTags.get(i));
+	}
+
+	@Benchmark
+	public DBObject legacySerializeEnchantments() {
+		if (enchantLists.isEmpty())
+			return null;
+		return legacyConverter.serializeEnchantments(enchantLists.get(next(enchantLists.size())));
+	}
+
+}
@@ -0,0 +1,305 @@
+package com.defiancecraft.configure.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.ShortTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import com.defiancecraft.configure.items.ItemRegistry;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * The item conversion EnderChestMigrator used before ItemConverter, kept
+ * as it was so that ItemConversionBenchmark can measure both: a Material
+ * lookup and toUpperCase per item, a string switch on the material name
+ * for meta, containsKey then get for every tag, and enchantment names in
+ * a boxed HashMap.
+ *
+ * String item IDs are resolved with an ItemRegistry, where the original
+ * looked them up in a HashMap loaded from items.json; both are a map
+ * lookup by name.
+ */
+public class LegacyItemConverter {
+
+	private static final Map<Integer, String> ENCHANTMENTS = new HashMap<Integer, String>();
+
+	static {
+
+		// Because everyone loves hardcoded enchantments!
+		ENCHANTMENTS.put(0, "PROTECTION_ENVIRONMENTAL");
+		ENCHANTMENTS.put(1, "PROTECTION_FIRE");
+		ENCHANTMENTS.put(2, "PROTECTION_FALL");
+		ENCHANTMENTS.put(3, "PROTECTION_EXPLOSIONS");
+		ENCHANTMENTS.put(4, "PROTECTION_PROJECTILE");
+		ENCHANTMENTS.put(5, "OXYGEN");
+		ENCHANTMENTS.put(6, "WATER_WORKER");
+		ENCHANTMENTS.put(7, "THORNS");
+		ENCHANTMENTS.put(8, "DEPTH_STRIDER");
+		ENCHANTMENTS.put(16, "DAMAGE_ALL");
+		ENCHANTMENTS.put(17, "DAMAGE_UNDEAD");
+		ENCHANTMENTS.put(18, "DAMAGE_ARTHROPODS");
+		ENCHANTMENTS.put(19, "KNOCKBACK");
+		ENCHANTMENTS.put(20, "FIRE_ASPECT");
+		ENCHANTMENTS.put(21, "LOOT_BONUS_MOBS");
+		ENCHANTMENTS.put(32, "DIG_SPEED");
+		ENCHANTMENTS.put(33, "SILK_TOUCH");
+		ENCHANTMENTS.put(34, "DURABILITY");
+		ENCHANTMENTS.put(35, "LOOT_BONUS_BLOCKS");
+		ENCHANTMENTS.put(48, "ARROW_DAMAGE");
+		ENCHANTMENTS.put(49, "ARROW_KNOCKBACK");
+		ENCHANTMENTS.put(50, "ARROW_FIRE");
+		ENCHANTMENTS.put(51, "ARROW_INFINITE");
+		ENCHANTMENTS.put(61, "LUCK");
+		ENCHANTMENTS.put(62, "LURE");
+
+	}
+
+	private final ItemRegistry itemRegistry;
+
+	/**
+	 * Constructs a LegacyItemConverter
+	 *
+	 * @param itemRegistry Registry to resolve string item IDs with
+	 */
+	public LegacyItemConverter(ItemRegistry itemRegistry) {
+		this.itemRegistry = itemRegistry;
+	}
+
+	/**
+	 * Processes an item tag into a DBObject, as processItem did before
+	 * ItemConverter
+	 *
+	 * @param itemTag The item tag to process
+	 * @return A serialized DBObject
+	 */
+	@SuppressWarnings("deprecation")
+	public DBObject processItem(Tag itemTag) {
+
+		DBObject itemDBO = new BasicDBObject();
+		CompoundTag item = (CompoundTag) itemTag;
+
+		itemDBO.put("amount", (int)((ByteTag)item.getValue().get("Count")).getValue());
+		itemDBO.put("slot", (int)((ByteTag)item.getValue().get("Slot")).getValue());
+		itemDBO.put("damage", ((ShortTag)item.getValue().get("Damage")).getValue());
+
+		// Apparently, IDs can be strings or shorts..
+		int itemId = 0;
+
+		if (item.getValue().get("id") instanceof StringTag) {
+			String minecraftId = ((StringTag)item.getValue().get("id")).getValue();
+			itemId = itemRegistry.getId(minecraftId);
+		} else if (item.getValue().get("id") instanceof ShortTag) {
+			itemId = ((ShortTag)item.getValue().get("id")).getValue();
+		}
+
+		String bukkitId = Material.getMaterial(itemId).name().toUpperCase();
+
+		itemDBO.put("type", bukkitId);
+
+		// Process the meta using the material name and the 'tag' tag.
+		if (item.getValue().containsKey("tag"))
+			itemDBO.put("meta", processMeta(bukkitId, (CompoundTag)item.getValue().get("tag")));
+
+		return itemDBO;
+
+	}
+
+	/**
+	 * Processes meta for an individual item, as processMeta did before
+	 * ItemConverter; material should be the Bukkit name for the item.
+	 *
+	 * @param material The Bukkit Material name
+	 * @param tag The 'tag' tag on the item
+	 * @return A DBObject containing the metadata
+	 */
+	public DBObject processMeta(String material, CompoundTag tag) {
+
+		DBObject metaDBO = new BasicDBObject();
+		Map<String, Tag> tagContents = tag.getValue();
+		metaDBO.put("==", "ItemMeta");
+
+		switch (material) {
+
+			// Written Book or Book & Quill
+			case "WRITTEN_BOOK":
+			case "BOOK_AND_QUILL": {
+
+				if (material.equalsIgnoreCase("WRITTEN_BOOK"))
+					metaDBO.put("meta-type", "BOOK");
+				else
+					metaDBO.put("meta-type", "BOOK");
+
+				if (tagContents.containsKey("resolved"))
+					metaDBO.put("resolved", ((ByteTag)tagContents.get("resolved")).getValue());
+
+				if (tagContents.containsKey("generation"))
+					metaDBO.put("generation", ((IntTag)tagContents.get("generation")).getValue());
+
+				if (tagContents.containsKey("author"))
+					metaDBO.put("author", ((StringTag)tagContents.get("author")).getValue());
+
+				if (tagContents.containsKey("title"))
+					metaDBO.put("title", ((StringTag)tagContents.get("title")).getValue());
+
+				if (tagContents.containsKey("pages")) {
+					List<String> pages = new ArrayList<String>();
+
+					for (Tag pageTag : ((ListTag)tagContents.get("pages")).getValue())
+						pages.add(((StringTag)pageTag).getValue());
+
+					metaDBO.put("pages", pages);
+				}
+
+				break;
+			}
+
+			// Skull Item
+			case "SKULL_ITEM": {
+
+				// "skull-owner" is the only important part as of 1.8; there are more parts, however
+				metaDBO.put("meta-type", "SKULL");
+				if (tagContents.containsKey("SkullOwner") && tagContents.get("SkullOwner") instanceof StringTag)
+					metaDBO.put("skull-owner", ((StringTag)tagContents.get("SkullOwner")).getValue());
+				else if (tagContents.containsKey("SkullOwner") && tagContents.get("SkullOwner") instanceof CompoundTag)
+					metaDBO.put("skull-owner", ((StringTag)((CompoundTag)tagContents.get("SkullOwner")).getValue().get("Name")).getValue());
+
+				break;
+
+			}
+
+			// Leather Armour
+			case "LEATHER_HELMET":
+			case "LEATHER_CHESTPLATE":
+			case "LEATHER_LEGGINGS":
+			case "LEATHER_BOOTS": {
+
+				metaDBO.put("meta-type", "LEATHER_ARMOR");
+
+				if (tagContents.containsKey("display"))
+					if (((CompoundTag)tagContents.get("display")).getValue().containsKey("color"))
+						metaDBO.put("color", serializeColor(((IntTag)((CompoundTag)tagContents.get("display")).getValue().get("color")).getValue()));
+
+				break;
+
+			}
+
+			// Enchanted Books
+			case "ENCHANTED_BOOK": {
+
+				metaDBO.put("meta-type", "ENCHANTED");
+
+				if (tagContents.containsKey("StoredEnchantments"))
+					metaDBO.put("stored-enchants", serializeEnchantments(((ListTag)tagContents.get("StoredEnchantments")).getValue()));
+
+				break;
+
+			}
+
+			// For everything else with meta...
+			default:
+				metaDBO.put("meta-type", "UNSPECIFIC");
+
+		}
+
+		// Serialize generic data too. This includes:
+		// Display names; lore; enchantments; repair cost; attributes; HideFlags.
+
+		if (tagContents.containsKey("display")) {
+
+			Map<String, Tag> displayTag = ((CompoundTag)tagContents.get("display")).getValue();
+
+			// Item Display Names
+			if (displayTag.containsKey("Name"))
+				metaDBO.put("display-name", ((StringTag)displayTag.get("Name")).getValue());
+
+			// Item Lore
+			if (displayTag.containsKey("Lore")) {
+				List<String> lore = new ArrayList<String>();
+				for (Tag loreTag : ((ListTag)displayTag.get("Lore")).getValue())
+					lore.add(((StringTag)loreTag).getValue());
+				metaDBO.put("lore", lore);
+			}
+
+		}
+
+		// Item Enchantments
+		if (tagContents.containsKey("ench"))
+			metaDBO.put("enchants", serializeEnchantments(((ListTag)tagContents.get("ench")).getValue()));
+
+		// Repair Cost
+		if (tagContents.containsKey("RepairCost"))
+			metaDBO.put("repair-cost", ((IntTag)tagContents.get("RepairCost")).getValue());
+
+		// Hide Flags
+		if (tagContents.containsKey("HideFlags"))
+			metaDBO.put("ItemFlags", ((IntTag)tagContents.get("HideFlags")).getValue());
+
+		return metaDBO;
+
+	}
+
+	/**
+	 * Serializes a colour integer value into a DBObject
+	 *
+	 * @param color Colour value
+	 * @return Serialized colour
+	 */
+	public DBObject serializeColor(int color) {
+
+		DBObject ret = new BasicDBObject(ConfigurationSerialization.SERIALIZED_TYPE_KEY, "Color");
+
+		ret.put("RED", color >> 16);
+		ret.put("GREEN", (color >> 8) & 0xFF);
+		ret.put("BLUE", color & 0xFF);
+
+		return ret;
+
+	}
+
+	/**
+	 * Serializes a list of enchantments into a DBObject
+	 *
+	 * @param enchants Enchants to serialize
+	 * @return DBObject
+	 */
+	public DBObject serializeEnchantments(List<Tag> enchants) {
+
+		DBObject ret = new BasicDBObject();
+
+		// Put enchants as key-value pairs (enchant => level)
+		for (Tag enchantTag : enchants) {
+			Map<String, Tag> enchant = ((CompoundTag)enchantTag).getValue();
+			int id = ((ShortTag)enchant.get("id")).getValue();
+			int lvl = ((ShortTag)enchant.get("lvl")).getValue();
+
+			ret.put(getEnchantmentName(id), lvl);
+		}
+
+		return ret;
+
+	}
+
+	/**
+	 * Gets the Bukkit name of an enchantment
+	 *
+	 * @param id ID of enchantment
+	 * @return Bukkit Enchantment name, or null if non-existent
+	 */
+	private String getEnchantmentName(int id) {
+
+		return ENCHANTMENTS.containsKey(id) ? ENCHANTMENTS.get(id) : null;
+
+	}
+
+}
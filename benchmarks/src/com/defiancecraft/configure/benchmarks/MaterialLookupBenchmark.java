@@ -0,0 +1,69 @@
+package com.defiancecraft.configure.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.MaterialTable;
+
+/**
+ * Compares the per-item material and enchantment lookups used by
+ * processItem before and after they were replaced with precomputed
+ * tables (the "legacy" benchmarks reproduce the old lookups).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaterialLookupBenchmark {
+
+	private static final int[] ITEM_IDS = { 1, 4, 17, 54, 264, 276, 298, 311, 387, 397, 403 };
+	private static final int[] ENCHANT_IDS = { 0, 1, 7, 16, 20, 32, 34, 48, 51, 62 };
+	private static final Map<Integer, String> LEGACY_ENCHANTMENTS = new HashMap<Integer, String>();
+
+	static {
+		for (int id : ENCHANT_IDS)
+			LEGACY_ENCHANTMENTS.put(id, ItemConverter.getEnchantmentName(id));
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public void legacyMaterialName(Blackhole bh) {
+		for (int id : ITEM_IDS)
+			bh.consume(Material.getMaterial(id).name().toUpperCase());
+	}
+
+	@Benchmark
+	public void tableMaterialName(Blackhole bh) {
+		for (int id : ITEM_IDS)
+			bh.consume(MaterialTable.getName(id));
+	}
+
+	@Benchmark
+	public void legacyEnchantmentName(Blackhole bh) {
+		for (int id : ENCHANT_IDS)
+			bh.consume(LEGACY_ENCHANTMENTS.containsKey(id) ? LEGACY_ENCHANTMENTS.get(id) : null);
+	}
+
+	@Benchmark
+	public void tableEnchantmentName(Blackhole bh) {
+		for (int id : ENCHANT_IDS)
+			bh.consume(ItemConverter.getEnchantmentName(id));
+	}
+
+}
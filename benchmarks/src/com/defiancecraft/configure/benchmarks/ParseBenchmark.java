@@ -0,0 +1,111 @@
+package com.defiancecraft.configure.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.jnbt.CompoundTag;
+import org.jnbt.NBTInputStream;
+import org.jnbt.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.defiancecraft.configure.nbt.NBTExtractor;
+import com.defiancecraft.configure.nbt.StreamingNBTExtractor;
+import com.defiancecraft.configure.nbt.TreeNBTExtractor;
+
+/**
+ * Benchmarks the parse step of the enderchest migrator: reading a
+ * player file, inflating it and building its NBT tree, or extracting
+ * only its EnderItems.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "EMPTY", "FULL_CHEST", "HEAVY_BOOKS", "HEAVY_ENCHANTS" })
+	public PlayerDataFixture fixture;
+
+	private static final NBTExtractor TREE = new TreeNBTExtractor("EnderItems");
+	private static final NBTExtractor STREAMING = new StreamingNBTExtractor("EnderItems");
+
+	private byte[] data;
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = fixture.generate();
+		file = Files.createTempFile("player", ".dat");
+		Files.write(file, data);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Parses a player file already in memory
+	 */
+	@Benchmark
+	public CompoundTag parse() throws IOException {
+		return parse(data);
+	}
+
+	/**
+	 * Reads a player file from disk and parses it, as
+	 * processPlayerFile does
+	 */
+	@Benchmark
+	public CompoundTag readAndParse() throws IOException {
+		return parse(Files.readAllBytes(file));
+	}
+
+	/**
+	 * Extracts EnderItems with the tree extractor (--nbt-reader tree)
+	 */
+	@Benchmark
+	public Map<String, Tag> extractTree() throws IOException {
+		return extract(TREE, data);
+	}
+
+	/**
+	 * Extracts EnderItems with the streaming extractor (--nbt-reader streaming)
+	 */
+	@Benchmark
+	public Map<String, Tag> extractStreaming() throws IOException {
+		return extract(STREAMING, data);
+	}
+
+	static Map<String, Tag> extract(NBTExtractor extractor, byte[] data) throws IOException {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			return extractor.extract(in);
+		}
+	}
+
+	static CompoundTag parse(byte[] data) throws IOException {
+		try (NBTInputStream in = new NBTInputStream(new ByteArrayInputStream(data), true)) {
+			return (CompoundTag) in.readTag();
+		}
+	}
+
+}
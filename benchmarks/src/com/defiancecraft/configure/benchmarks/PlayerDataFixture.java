@@ -0,0 +1,282 @@
+package com.defiancecraft.configure.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.DoubleTag;
+import org.jnbt.FloatTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.NBTOutputStream;
+import org.jnbt.ShortTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+/**
+ * Generated player .dat files of different shapes. Every fixture has
+ * a full inventory and the usual position/attribute tags, so that parse
+ * benchmarks pay for the parts of the file the migrators do not read.
+ */
+public enum PlayerDataFixture {
+
+	/** No ender items at all */
+	EMPTY {
+		List<Tag> enderItems() {
+			return new ArrayList<Tag>();
+		}
+	},
+
+	/** 27 plain stacks */
+	FULL_CHEST {
+		List<Tag> enderItems() {
+			List<Tag> items = new ArrayList<Tag>();
+			for (int slot = 0; slot < CHEST_SLOTS; slot++)
+				items.add(item(slot, PLAIN_ITEMS[slot % PLAIN_ITEMS.length], 64, 0, null));
+			return items;
+		}
+	},
+
+	/** 27 written books of 50 full pages each */
+	HEAVY_BOOKS {
+		List<Tag> enderItems() {
+
+			List<Tag> items = new ArrayList<Tag>();
+			for (int slot = 0; slot < CHEST_SLOTS; slot++) {
+
+				List<Tag> pages = new ArrayList<Tag>();
+				for (int page = 0; page < 50; page++)
+					pages.add(new StringTag("", text(256, slot * 50 + page)));
+
+				Map<String, Tag> tag = new HashMap<String, Tag>();
+				tag.put("author", new StringTag("author", "Notch"));
+				tag.put("title", new StringTag("title", "Book " + slot));
+				tag.put("generation", new IntTag("generation", 0));
+				tag.put("resolved", new ByteTag("resolved", (byte) 1));
+				tag.put("pages", new ListTag("pages", StringTag.class, pages));
+
+				items.add(item(slot, "minecraft:written_book", 1, 0, tag));
+
+			}
+
+			return items;
+
+		}
+	},
+
+	/** 27 named, lored items with 10 enchantments each, and dyed leather armour */
+	HEAVY_ENCHANTS {
+		List<Tag> enderItems() {
+
+			List<Tag> items = new ArrayList<Tag>();
+			for (int slot = 0; slot < CHEST_SLOTS; slot++) {
+
+				List<Tag> enchants = new ArrayList<Tag>();
+				for (int i = 0; i < 10; i++) {
+					Map<String, Tag> enchant = new HashMap<String, Tag>();
+					enchant.put("id", new ShortTag("id", ENCHANT_IDS[(slot + i) % ENCHANT_IDS.length]));
+					enchant.put("lvl", new ShortTag("lvl", (short) (1 + i % 5)));
+					enchants.add(new CompoundTag("", enchant));
+				}
+
+				String id = LEATHER_ITEMS[slot % LEATHER_ITEMS.length];
+				boolean book = slot % 3 == 0;
+				if (book)
+					id = "minecraft:enchanted_book";
+				else if (slot % 3 == 1)
+					id = "minecraft:diamond_sword";
+
+				Map<String, Tag> display = new HashMap<String, Tag>();
+				display.put("Name", new StringTag("Name", "Item " + slot));
+				display.put("Lore", new ListTag("Lore", StringTag.class, Arrays.<Tag>asList(
+						new StringTag("", text(40, slot)),
+						new StringTag("", text(40, slot + 1)))));
+				if (id.startsWith("minecraft:leather_"))
+					display.put("color", new IntTag("color", 0x3366CC + slot));
+
+				Map<String, Tag> tag = new HashMap<String, Tag>();
+				tag.put("display", new CompoundTag("display", display));
+				tag.put(book ? "StoredEnchantments" : "ench", new ListTag(book ? "StoredEnchantments" : "ench", CompoundTag.class, enchants));
+				tag.put("RepairCost", new IntTag("RepairCost", 7));
+
+				items.add(item(slot, id, 1, slot, tag));
+
+			}
+
+			return items;
+
+		}
+	},
+
+	/** One item of each meta type, with and without each generic part of the meta, between empty slots */
+	MIXED_META {
+		List<Tag> enderItems() {
+
+			List<Tag> items = new ArrayList<Tag>();
+			items.add(item(0, "minecraft:stone", 64, 0, null));
+
+			// Book & Quill and Written Book
+			Map<String, Tag> quill = new HashMap<String, Tag>();
+			quill.put("pages", new ListTag("pages", StringTag.class, Arrays.<Tag>asList(new StringTag("", text(20, 1)), new StringTag("", ""))));
+			items.add(item(2, "minecraft:writable_book", 1, 0, quill));
+
+			Map<String, Tag> book = new HashMap<String, Tag>(quill);
+			book.put("author", new StringTag("author", "Notch"));
+			book.put("title", new StringTag("title", "Title"));
+			book.put("generation", new IntTag("generation", 2));
+			book.put("resolved", new ByteTag("resolved", (byte) 0));
+			items.add(item(3, "minecraft:written_book", 1, 0, book));
+
+			// Skulls, owned by name (pre-1.8) and by profile
+			Map<String, Tag> namedSkull = new HashMap<String, Tag>();
+			namedSkull.put("SkullOwner", new StringTag("SkullOwner", "Notch"));
+			items.add(item(5, "minecraft:skull", 1, 3, namedSkull));
+
+			Map<String, Tag> owner = new HashMap<String, Tag>();
+			owner.put("Id", new StringTag("Id", "069a79f4-44e9-4726-a5be-fca90e38aaf5"));
+			owner.put("Name", new StringTag("Name", "Notch"));
+			Map<String, Tag> profileSkull = new HashMap<String, Tag>();
+			profileSkull.put("SkullOwner", new CompoundTag("SkullOwner", owner));
+			items.add(item(6, "minecraft:skull", 2, 3, profileSkull));
+
+			// Leather armour, dyed and undyed but named
+			Map<String, Tag> dyed = new HashMap<String, Tag>();
+			dyed.put("color", new IntTag("color", 0xA06540));
+			Map<String, Tag> dyedTag = new HashMap<String, Tag>();
+			dyedTag.put("display", new CompoundTag("display", dyed));
+			items.add(item(9, "minecraft:leather_helmet", 1, 12, dyedTag));
+
+			Map<String, Tag> named = new HashMap<String, Tag>();
+			named.put("Name", new StringTag("Name", "Boots"));
+			Map<String, Tag> namedTag = new HashMap<String, Tag>();
+			namedTag.put("display", new CompoundTag("display", named));
+			items.add(item(10, "minecraft:leather_boots", 1, 0, namedTag));
+
+			// Enchanted book, with hidden flags
+			Map<String, Tag> stored = new HashMap<String, Tag>();
+			stored.put("StoredEnchantments", new ListTag("StoredEnchantments", CompoundTag.class, Arrays.<Tag>asList(enchant(16, 5), enchant(34, 3))));
+			stored.put("HideFlags", new IntTag("HideFlags", 32));
+			items.add(item(13, "minecraft:enchanted_book", 1, 0, stored));
+
+			// Enchanted, lored item with a repair cost, but no name
+			Map<String, Tag> lore = new HashMap<String, Tag>();
+			lore.put("Lore", new ListTag("Lore", StringTag.class, Arrays.<Tag>asList(new StringTag("", "First"), new StringTag("", text(60, 2)))));
+			Map<String, Tag> enchanted = new HashMap<String, Tag>();
+			enchanted.put("display", new CompoundTag("display", lore));
+			enchanted.put("ench", new ListTag("ench", CompoundTag.class, Arrays.<Tag>asList(enchant(16, 5), enchant(34, 3), enchant(19, 2))));
+			enchanted.put("RepairCost", new IntTag("RepairCost", 3));
+			items.add(item(20, "minecraft:diamond_sword", 1, 100, enchanted));
+
+			// An empty tag, and an empty enchantment list
+			items.add(item(24, "minecraft:golden_apple", 5, 1, new HashMap<String, Tag>()));
+
+			Map<String, Tag> noEnchants = new HashMap<String, Tag>();
+			noEnchants.put("ench", new ListTag("ench", CompoundTag.class, new ArrayList<Tag>()));
+			items.add(item(26, "minecraft:diamond_sword", 1, 0, noEnchants));
+
+			return items;
+
+		}
+	};
+
+	private static final int CHEST_SLOTS = 27;
+	private static final String[] PLAIN_ITEMS = {
+		"minecraft:stone", "minecraft:cobblestone", "minecraft:diamond", "minecraft:iron_ingot",
+		"minecraft:gold_ingot", "minecraft:redstone", "minecraft:log", "minecraft:planks", "minecraft:torch"
+	};
+	private static final String[] LEATHER_ITEMS = {
+		"minecraft:leather_helmet", "minecraft:leather_chestplate", "minecraft:leather_leggings", "minecraft:leather_boots"
+	};
+	private static final short[] ENCHANT_IDS = { 0, 1, 2, 3, 4, 5, 6, 7, 16, 17, 18, 19, 20, 21, 32, 33, 34, 35, 48, 49, 50, 51 };
+
+	/**
+	 * Gets the EnderItems of this fixture
+	 *
+	 * @return List of item tags
+	 */
+	abstract List<Tag> enderItems();
+
+	/**
+	 * Generates a gzipped player .dat file for this fixture
+	 *
+	 * @return Contents of the file
+	 * @throws IOException If the NBT could not be written
+	 */
+	public byte[] generate() throws IOException {
+
+		Map<String, Tag> root = new HashMap<String, Tag>();
+
+		List<Tag> inventory = new ArrayList<Tag>();
+		for (int slot = 0; slot < 36; slot++)
+			inventory.add(item(slot, PLAIN_ITEMS[slot % PLAIN_ITEMS.length], 32, 0, null));
+
+		List<Tag> attributes = new ArrayList<Tag>();
+		for (String name : new String[] { "generic.maxHealth", "generic.movementSpeed", "generic.attackDamage" }) {
+			Map<String, Tag> attribute = new HashMap<String, Tag>();
+			attribute.put("Name", new StringTag("Name", name));
+			attribute.put("Base", new DoubleTag("Base", 1d));
+			attribute.put("Modifiers", new ListTag("Modifiers", CompoundTag.class, new ArrayList<Tag>()));
+			attributes.add(new CompoundTag("", attribute));
+		}
+
+		root.put("Pos", new ListTag("Pos", DoubleTag.class, Arrays.<Tag>asList(
+				new DoubleTag("", 100.5), new DoubleTag("", 64d), new DoubleTag("", -200.5))));
+		root.put("Rotation", new ListTag("Rotation", FloatTag.class, Arrays.<Tag>asList(
+				new FloatTag("", 90f), new FloatTag("", 0f))));
+		root.put("Health", new ShortTag("Health", (short) 20));
+		root.put("XpLevel", new IntTag("XpLevel", 30));
+		root.put("Dimension", new IntTag("Dimension", 0));
+		root.put("Attributes", new ListTag("Attributes", CompoundTag.class, attributes));
+		root.put("Inventory", new ListTag("Inventory", CompoundTag.class, inventory));
+		root.put("EnderItems", new ListTag("EnderItems", CompoundTag.class, enderItems()));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (NBTOutputStream nbt = new NBTOutputStream(out, true)) {
+			nbt.writeTag(new CompoundTag("", root));
+		}
+
+		return out.toByteArray();
+
+	}
+
+	private static CompoundTag item(int slot, String id, int count, int damage, Map<String, Tag> tag) {
+
+		Map<String, Tag> item = new HashMap<String, Tag>();
+		item.put("Slot", new ByteTag("Slot", (byte) slot));
+		item.put("id", new StringTag("id", id));
+		item.put("Count", new ByteTag("Count", (byte) count));
+		item.put("Damage", new ShortTag("Damage", (short) damage));
+		if (tag != null)
+			item.put("tag", new CompoundTag("tag", tag));
+
+		return new CompoundTag("", item);
+
+	}
+
+	private static CompoundTag enchant(int id, int level) {
+
+		Map<String, Tag> enchant = new HashMap<String, Tag>();
+		enchant.put("id", new ShortTag("id", (short) id));
+		enchant.put("lvl", new ShortTag("lvl", (short) level));
+
+		return new CompoundTag("", enchant);
+
+	}
+
+	private static String text(int length, int seed) {
+
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+			sb.append((char) ('a' + (seed * 31 + i * 7) % 26));
+
+		return sb.toString();
+
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.defiancecraft.configure;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,13 +13,19 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import com.defiancecraft.configure.fleet.FleetRunner;
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.migrators.MigrationContext;
 import com.defiancecraft.configure.migrators.Migrator;
 import com.defiancecraft.configure.migrators.MigratorRegistry;
+import com.defiancecraft.configure.util.Answers;
+import com.defiancecraft.configure.util.Arguments;
 import com.defiancecraft.configure.util.Logger;
 
 public class DefianceConfigure {
 
 	private static final Options OPTIONS = new Options();
+	private static final int DEFAULT_METRICS_INTERVAL = 10;
 	
 	static {
 		OPTIONS.addOption("h", "help", false, "Shows help");
@@ -29,6 +37,167 @@ public class DefianceConfigure {
 			.build());
 		OPTIONS.addOption("l", "list-migrators", false, "Lists all available migrators");
 		OPTIONS.addOption("v", "verbose", false, "Enables verbose output");
+		OPTIONS.addOption(Option.builder("D")
+			.numberOfArgs(2)
+			.valueSeparator('=')
+			.argName("name=value")
+			.desc("Answers a migrator's question instead of prompting for it")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("config")
+			.hasArg()
+			.argName("file")
+			.desc("YAML or .properties file of answers to the migrator's questions")
+			.build());
+		OPTIONS.addOption("y", "yes", false, "Runs unattended: skips confirmation, and uses the default for unanswered questions");
+		OPTIONS.addOption(Option.builder()
+			.longOpt("fleet")
+			.hasArg()
+			.argName("manifest")
+			.desc("Runs the migrator for every server in a YAML fleet manifest at once, sharing one DB connection")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("fleet-write-budget")
+			.hasArg()
+			.argName("n")
+			.desc("Number of bulk write batches in flight across the whole fleet (default: " + FleetRunner.DEFAULT_WRITE_BUDGET + ")")
+			.build());
+		OPTIONS.addOption(Option.builder("t")
+			.longOpt("threads")
+			.hasArg()
+			.argName("n")
+			.desc("Number of worker threads used by migrators (default: 1)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("lookup-batch")
+			.hasArg()
+			.argName("n")
+			.desc("Number of users to resolve per DB round trip (default: 500)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("bulk-docs")
+			.hasArg()
+			.argName("n")
+			.desc("Flush bulk writes every n documents (default: 1000)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("bulk-kb")
+			.hasArg()
+			.argName("n")
+			.desc("Flush bulk writes every n kilobytes (default: 8192)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("bulk-in-flight")
+			.hasArg()
+			.argName("n")
+			.desc("Number of bulk writes which may execute at once (default: 2)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("write-concern")
+			.hasArg()
+			.argName("name")
+			.desc("Write concern for bulk writes, e.g. ACKNOWLEDGED (default: MAJORITY)")
+			.build());
+		OPTIONS.addOption(null, "defer-indexes", false, "Builds secondary indexes after the load rather than before; unique indexes are always built first");
+		OPTIONS.addOption(null, "remove-duplicates", false, "Removes all but the newest of the documents sharing the field of a unique index, so it can be built");
+		OPTIONS.addOption(Option.builder()
+			.longOpt("db-pool-size")
+			.hasArg()
+			.argName("n")
+			.desc("Maximum number of pooled DB connections (default: 100)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("db-connect-timeout")
+			.hasArg()
+			.argName("ms")
+			.desc("Timeout for opening a DB connection; 0 waits forever (default: 10000)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("db-socket-timeout")
+			.hasArg()
+			.argName("ms")
+			.desc("Timeout for reading a DB reply; 0 waits forever (default: 0)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("db-max-wait")
+			.hasArg()
+			.argName("ms")
+			.desc("How long to wait for a pooled DB connection to be free (default: 120000)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("read-preference")
+			.hasArg()
+			.argName("name")
+			.desc("Read preference for user lookups, e.g. secondaryPreferred (default: primary)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("journal")
+			.hasArg()
+			.argName("file")
+			.desc("Checkpoint journal of flushed work (default: <migrator>.journal)")
+			.build());
+		OPTIONS.addOption(null, "resume", false, "Skips work recorded in the checkpoint journal by a previous run");
+		OPTIONS.addOption(null, "incremental", false, "Only migrates player files which changed since the last incremental run");
+		OPTIONS.addOption(Option.builder()
+			.longOpt("manifest")
+			.hasArg()
+			.argName("file")
+			.desc("Manifest of migrated player files for --incremental (default: <migrator>.manifest)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("items-file")
+			.hasArg()
+			.argName("file")
+			.desc("Item ID table to use instead of the bundled one ('<id> <name>' lines, or items.json)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("sink")
+			.hasArg()
+			.argName("type")
+			.desc("Where documents are written: 'mongo' (default), or a dry run to 'jsonl', 'bson-file' or 'null'")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("sink-dir")
+			.hasArg()
+			.argName("dir")
+			.desc("Directory the jsonl and bson-file sinks write <collection>.jsonl/.bson to (default: .)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("player-lists")
+			.hasArg()
+			.argName("lists")
+			.desc("Item lists the playerstate migrator writes: any of inventory, armor, offhand and enderchest (default: all)")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("nbt-reader")
+			.hasArg()
+			.argName("reader")
+			.desc("How player files and chunks are parsed: 'streaming' only decodes the tags migrated (default), 'tree' reads them whole")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("bson-encoder")
+			.hasArg()
+			.argName("encoder")
+			.desc("How items are encoded: 'direct' writes BSON straight from the NBT (default), 'tree' builds DBObjects first")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("metrics")
+			.hasArg()
+			.argName("file")
+			.desc("Writes a JSON report of the run's stage timings, counters and peak heap to a file")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("metrics-snapshots")
+			.hasArg()
+			.argName("file")
+			.desc("Appends a JSON snapshot of the metrics to a file every --metrics-interval seconds")
+			.build());
+		OPTIONS.addOption(Option.builder()
+			.longOpt("metrics-interval")
+			.hasArg()
+			.argName("sec")
+			.desc("Seconds between metrics snapshots (default: 10)")
+			.build());
 	}
 	
 	public static void main(String[] args) {
@@ -67,13 +236,56 @@ public class DefianceConfigure {
 			}
 			
 			Logger.log("Found migrator %s!", true, migrator);
-			boolean success = mig.get().migrate(cmd);
+			
+			int interval;
+			Answers answers;
+			try {
+				interval = Arguments.getPositiveInt(cmd, "metrics-interval", DEFAULT_METRICS_INTERVAL);
+				answers = Answers.fromCommandLine(cmd);
+			} catch (IllegalArgumentException e) {
+				Logger.log("Error: %s", false, e.getMessage());
+				return;
+			} catch (IOException e) {
+				Logger.log("Error: could not read config file; %s", false, e.getMessage());
+				return;
+			}
+			
+			Metrics.reset();
+			if (cmd.hasOption("metrics-snapshots"))
+				Metrics.startSnapshots(new File(cmd.getOptionValue("metrics-snapshots")), interval);
+			
+			boolean success;
+			try {
+				/*
+				 * --fleet=<manifest>
+				 */
+				if (cmd.hasOption("fleet"))
+					success = FleetRunner.run(cmd, mig.get().getName(), answers);
+				else
+					success = mig.get().migrate(cmd, MigrationContext.standalone(answers));
+			} finally {
+				Metrics.stopSnapshots();
+			}
 			
 			if (!success)
 				Logger.log("Migration operation failed.");
 			else
 				Logger.log("Migration operation succeeded!");
 			
+			/*
+			 * --metrics=<file>
+			 */
+			Metrics.log();
+			if (cmd.hasOption("metrics")) {
+				File report = new File(cmd.getOptionValue("metrics"));
+				try {
+					Metrics.writeReport(report);
+					Logger.log("[*] Wrote metrics report to '%s'", false, report.getPath());
+				} catch (IOException e) {
+					Logger.log("[!] Could not write metrics report to '%s' (%s)", false, report.getPath(), e.getMessage());
+				}
+			}
+			
 		/*
 		 * --list-migrators 
 		 */
@@ -0,0 +1,324 @@
+package com.defiancecraft.configure.db;
+
+import java.util.Arrays;
+
+import org.bson.types.ObjectId;
+
+/**
+ * A growable buffer which BSON documents are written into element by
+ * element, without building a DBObject first. A buffer is meant to be
+ * reset and reused for every document, so that encoding allocates
+ * nothing but the copy taken of the finished document.
+ *
+ * Documents and arrays are opened with one of the start methods, which
+ * return the position to pass to {@link #end(int)} once their elements
+ * have been written. Element names are written as given, so must not
+ * repeat within a document. Buffers are not thread safe.
+ */
+public class BsonBuffer {
+
+	private static final byte TYPE_STRING   = 0x02;
+	private static final byte TYPE_DOCUMENT = 0x03;
+	private static final byte TYPE_ARRAY    = 0x04;
+	private static final byte TYPE_OBJECTID = 0x07;
+	private static final byte TYPE_NULL     = 0x0A;
+	private static final byte TYPE_INT32    = 0x10;
+
+	private byte[] buf;
+	private int size;
+
+	/**
+	 * Constructs an empty BsonBuffer
+	 *
+	 * @param capacity Initial capacity, in bytes
+	 */
+	public BsonBuffer(int capacity) {
+		this.buf = new byte[capacity];
+	}
+
+	/**
+	 * Empties the buffer, keeping its capacity
+	 */
+	public void reset() {
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of bytes written
+	 *
+	 * @return Size in bytes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Copies the bytes written
+	 *
+	 * @return Copy of the buffer's contents
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buf, size);
+	}
+
+	/**
+	 * Starts a top-level document
+	 *
+	 * @return Position of the document, for {@link #end(int)}
+	 */
+	public int startDocument() {
+
+		int start = size;
+		writeInt32(0);
+		return start;
+
+	}
+
+	/**
+	 * Starts an embedded document
+	 *
+	 * @param name Element name
+	 * @return Position of the document, for {@link #end(int)}
+	 */
+	public int startDocument(String name) {
+
+		writeHeader(TYPE_DOCUMENT, name);
+		return startDocument();
+
+	}
+
+	/**
+	 * Starts an embedded array; its elements must be named by
+	 * their index, e.g. with {@link #startDocument(int)}
+	 *
+	 * @param name Element name
+	 * @return Position of the array, for {@link #end(int)}
+	 */
+	public int startArray(String name) {
+
+		writeHeader(TYPE_ARRAY, name);
+		return startDocument();
+
+	}
+
+	/**
+	 * Starts a document as an element of an array
+	 *
+	 * @param index Index of the element
+	 * @return Position of the document, for {@link #end(int)}
+	 */
+	public int startDocument(int index) {
+
+		writeHeader(TYPE_DOCUMENT, index);
+		return startDocument();
+
+	}
+
+	/**
+	 * Ends a document or array, filling in its length
+	 *
+	 * @param start Position returned when it was started
+	 */
+	public void end(int start) {
+
+		write((byte) 0);
+		int length = size - start;
+		buf[start]     = (byte) length;
+		buf[start + 1] = (byte) (length >>> 8);
+		buf[start + 2] = (byte) (length >>> 16);
+		buf[start + 3] = (byte) (length >>> 24);
+
+	}
+
+	/**
+	 * Writes a 32-bit integer element
+	 *
+	 * @param name Element name
+	 * @param value Value
+	 */
+	public void putInt(String name, int value) {
+
+		writeHeader(TYPE_INT32, name);
+		writeInt32(value);
+
+	}
+
+	/**
+	 * Writes a string element, or a null element if
+	 * the string is null
+	 *
+	 * @param name Element name
+	 * @param value Value, or null
+	 */
+	public void putString(String name, String value) {
+
+		if (value == null) {
+			writeHeader(TYPE_NULL, name);
+			return;
+		}
+
+		writeHeader(TYPE_STRING, name);
+		writeString(value);
+
+	}
+
+	/**
+	 * Writes a string element of an array, or a null element
+	 * if the string is null
+	 *
+	 * @param index Index of the element
+	 * @param value Value, or null
+	 */
+	public void putString(int index, String value) {
+
+		if (value == null) {
+			writeHeader(TYPE_NULL, index);
+			return;
+		}
+
+		writeHeader(TYPE_STRING, index);
+		writeString(value);
+
+	}
+
+	/**
+	 * Writes an ObjectId element
+	 *
+	 * @param name Element name
+	 * @param value Value
+	 */
+	public void putObjectId(String name, ObjectId value) {
+
+		writeHeader(TYPE_OBJECTID, name);
+		byte[] id = value.toByteArray();
+		ensureCapacity(id.length);
+		System.arraycopy(id, 0, buf, size, id.length);
+		size += id.length;
+
+	}
+
+	/**
+	 * Writes the elements of an encoded document into the current
+	 * document, i.e. the document's bytes without its length and
+	 * terminator
+	 *
+	 * @param document Encoded document
+	 */
+	public void putElements(byte[] document) {
+
+		int length = document.length - 5;
+		ensureCapacity(length);
+		System.arraycopy(document, 4, buf, size, length);
+		size += length;
+
+	}
+
+	private void writeHeader(byte type, String name) {
+
+		write(type);
+		writeCString(name);
+
+	}
+
+	private void writeHeader(byte type, int index) {
+
+		write(type);
+
+		// Array indices as decimal strings, without allocating them
+		if (index == 0) {
+			write((byte) '0');
+		} else {
+			ensureCapacity(10);
+			int digits = 0;
+			for (int i = index; i > 0; i /= 10)
+				digits++;
+			for (int i = index, p = size + digits - 1; i > 0; i /= 10, p--)
+				buf[p] = (byte) ('0' + i % 10);
+			size += digits;
+		}
+
+		write((byte) 0);
+
+	}
+
+	private void writeString(String value) {
+
+		int start = size;
+		writeInt32(0);
+		writeUtf8(value);
+		write((byte) 0);
+
+		int length = size - start - 4;
+		buf[start]     = (byte) length;
+		buf[start + 1] = (byte) (length >>> 8);
+		buf[start + 2] = (byte) (length >>> 16);
+		buf[start + 3] = (byte) (length >>> 24);
+
+	}
+
+	private void writeCString(String value) {
+
+		writeUtf8(value);
+		write((byte) 0);
+
+	}
+
+	/**
+	 * Writes a string as UTF-8, by code point, as the driver's encoder
+	 * does (so an unpaired surrogate is written as three bytes)
+	 */
+	private void writeUtf8(String value) {
+
+		int length = value.length();
+		ensureCapacity(length * 3);
+
+		for (int i = 0; i < length; i++) {
+
+			char c = value.charAt(i);
+
+			if (c < 0x80) {
+				buf[size++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[size++] = (byte) (0xC0 | (c >> 6));
+				buf[size++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				buf[size++] = (byte) (0xF0 | (cp >> 18));
+				buf[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[size++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				buf[size++] = (byte) (0xE0 | (c >> 12));
+				buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[size++] = (byte) (0x80 | (c & 0x3F));
+			}
+
+		}
+
+	}
+
+	private void writeInt32(int value) {
+
+		ensureCapacity(4);
+		buf[size++] = (byte) value;
+		buf[size++] = (byte) (value >>> 8);
+		buf[size++] = (byte) (value >>> 16);
+		buf[size++] = (byte) (value >>> 24);
+
+	}
+
+	private void write(byte b) {
+
+		ensureCapacity(1);
+		buf[size++] = b;
+
+	}
+
+	private void ensureCapacity(int bytes) {
+
+		if (size + bytes > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + bytes));
+
+	}
+
+}
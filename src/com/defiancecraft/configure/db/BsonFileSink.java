@@ -0,0 +1,54 @@
+package com.defiancecraft.configure.db;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.bson.LazyBSONObject;
+
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+
+/**
+ * A LocalSink which writes documents as concatenated BSON, in the
+ * same format as mongodump, so the output can be loaded with mongorestore.
+ */
+public class BsonFileSink extends LocalSink {
+
+	private final OutputStream out;
+
+	// DefaultDBEncoder, unlike BasicBSONEncoder, encodes DBRefs
+	private final DefaultDBEncoder encoder = new DefaultDBEncoder();
+
+	/**
+	 * Constructs a BsonFileSink, truncating the file
+	 *
+	 * @param file File to write to
+	 * @param batchSize Number of documents after which to flush
+	 * @throws IOException If the file could not be opened
+	 */
+	public BsonFileSink(File file, int batchSize) throws IOException {
+		super(String.format("'%s'", file.getPath()), batchSize);
+		this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+	}
+
+	protected void write(DBObject document) throws IOException {
+
+		if (document instanceof LazyBSONObject)
+			((LazyBSONObject) document).pipe(out);
+		else
+			out.write(encoder.encode(document));
+
+	}
+
+	protected void flushOutput() throws IOException {
+		out.flush();
+	}
+
+	protected void closeOutput() throws IOException {
+		out.close();
+	}
+
+}
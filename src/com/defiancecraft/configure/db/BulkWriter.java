@@ -0,0 +1,472 @@
+package com.defiancecraft.configure.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.cli.CommandLine;
+import org.bson.BSONObject;
+import org.bson.LazyBSONObject;
+
+import com.defiancecraft.configure.metrics.Counter;
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.metrics.Timer;
+import com.defiancecraft.configure.util.Arguments;
+import com.defiancecraft.configure.util.Logger;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+
+/**
+ * Writes documents to a collection in bounded, unordered bulk
+ * operations, rather than queueing every document into a single
+ * BulkWriteOperation.
+ *
+ * A batch is flushed whenever it reaches a set number of documents
+ * or bytes, and is executed on a background thread so that the caller
+ * can keep converting documents. A limited number of batches may be in
+ * flight at once; adding documents blocks once that limit is reached.
+ *
+ * Documents should only be added from a single thread.
+ */
+public class BulkWriter implements DocumentSink {
+
+	private static final AtomicInteger WRITER_COUNT = new AtomicInteger();
+	private static final Timer FLUSH = Metrics.timer("flush");
+	private static final Counter DOCUMENTS_WRITTEN = Metrics.counter("documents.written");
+
+	private final DBCollection collection;
+	private final Settings settings;
+	private final ExecutorService executor;
+	private final Semaphore inFlight;
+	private FlushListener listener;
+
+	private List<Operation> batch = new ArrayList<Operation>();
+	private long batchBytes = 0;
+
+	private final AtomicReference<MongoException> failure = new AtomicReference<MongoException>();
+	private final AtomicInteger batches = new AtomicInteger();
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * Constructs a BulkWriter for the given collection
+	 *
+	 * @param collection Collection to write to
+	 * @param settings Flush thresholds and write concern
+	 */
+	public BulkWriter(DBCollection collection, Settings settings) {
+
+		this.collection = collection;
+		this.settings = settings;
+		this.inFlight = new Semaphore(settings.maxInFlight);
+
+		// Documents may be encoded already (see RawDBObject)
+		collection.setDBEncoderFactory(RawDBEncoder.FACTORY);
+
+		int writer = WRITER_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(settings.maxInFlight, (r) -> {
+			Thread t = new Thread(r, String.format("bulkwriter-%d-%d", writer, threadCount.incrementAndGet()));
+			t.setDaemon(true);
+			return t;
+		});
+
+	}
+
+	/**
+	 * Sets a listener to be notified, on a BulkWriter thread, with
+	 * the keys of each batch once it has been written.
+	 *
+	 * @param listener FlushListener, or null
+	 */
+	public void setListener(FlushListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Queues a document to be inserted
+	 *
+	 * @param document Document to insert
+	 * @throws MongoException If a previous batch failed
+	 */
+	public void insert(DBObject document) throws MongoException {
+		add(new Operation(null, document, null));
+	}
+
+	/**
+	 * Queues a document to replace the document matched by
+	 * `query`, or to be inserted if none matches (an upsert).
+	 *
+	 * @param query Query to match the document to replace
+	 * @param document Replacement document
+	 * @throws MongoException If a previous batch failed
+	 */
+	public void replaceOne(DBObject query, DBObject document) throws MongoException {
+		add(new Operation(query, document, null));
+	}
+
+	/**
+	 * Queues an upsert as per {@link #replaceOne(DBObject, DBObject)},
+	 * passing `key` to the FlushListener once it has been written.
+	 *
+	 * @param query Query to match the document to replace
+	 * @param document Replacement document
+	 * @param key Key identifying the document, e.g. a UUID
+	 * @throws MongoException If a previous batch failed
+	 */
+	public void replaceOne(DBObject query, DBObject document, String key) throws MongoException {
+		add(new Operation(query, document, key));
+	}
+
+	/**
+	 * Adds an operation to the current batch, flushing it
+	 * if it has reached either threshold.
+	 *
+	 * @param op Operation to add
+	 */
+	private void add(Operation op) {
+
+		checkFailure();
+
+		batch.add(op);
+		batchBytes += estimateSize(op.document);
+
+		if (batch.size() >= settings.maxDocuments || batchBytes >= settings.maxBytes)
+			flush();
+
+	}
+
+	/**
+	 * Estimates the encoded size of a value, without encoding it; the
+	 * driver encodes each document when the batch is executed, so it
+	 * is only measured exactly if it is encoded already.
+	 *
+	 * @param value Document or field value
+	 * @return Approximate size in bytes
+	 */
+	private static long estimateSize(Object value) {
+
+		if (value instanceof LazyBSONObject)
+			return ((LazyBSONObject) value).getBSONSize();
+
+		if (value instanceof BSONObject) {
+			long size = 5;
+			BSONObject document = (BSONObject) value;
+			for (String key : document.keySet())
+				size += key.length() + 2 + estimateSize(document.get(key));
+			return size;
+		}
+
+		if (value instanceof Map) {
+			long size = 5;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				size += String.valueOf(entry.getKey()).length() + 2 + estimateSize(entry.getValue());
+			return size;
+		}
+
+		if (value instanceof Iterable) {
+			long size = 5;
+			for (Object element : (Iterable<?>) value)
+				size += 4 + estimateSize(element);
+			return size;
+		}
+
+		if (value instanceof String)
+			return ((String) value).length() + 5;
+		if (value instanceof byte[])
+			return ((byte[]) value).length + 5;
+		if (value == null || value instanceof Boolean)
+			return 1;
+		if (value instanceof Integer)
+			return 4;
+
+		// Longs, doubles, dates, ObjectIds, etc.
+		return 12;
+
+	}
+
+	/**
+	 * Submits the current batch to be executed, blocking
+	 * if the maximum number of batches are already in flight.
+	 *
+	 * @throws MongoException If a previous batch failed
+	 */
+	public void flush() throws MongoException {
+
+		checkFailure();
+
+		if (batch.isEmpty())
+			return;
+
+		List<Operation> ops = batch;
+		long bytes = batchBytes;
+		int number = batches.incrementAndGet();
+
+		batch = new ArrayList<Operation>();
+		batchBytes = 0;
+
+		inFlight.acquireUninterruptibly();
+		if (settings.writeBudget != null)
+			settings.writeBudget.acquireUninterruptibly();
+		
+		executor.execute(() -> {
+
+			try {
+				execute(number, ops, bytes);
+			} catch (MongoException e) {
+				failure.compareAndSet(null, e);
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, new MongoException(String.format("batch %d failed", number), e));
+			} finally {
+				if (settings.writeBudget != null)
+					settings.writeBudget.release();
+				inFlight.release();
+			}
+
+		});
+
+	}
+
+	/**
+	 * Executes a batch of operations; called on the
+	 * executor threads.
+	 *
+	 * @param number Number of the batch, for logging
+	 * @param ops Operations in the batch
+	 * @param bytes Size of the batch's documents
+	 */
+	private void execute(int number, List<Operation> ops, long bytes) {
+
+		// Skip any remaining batches once one has failed
+		if (failure.get() != null)
+			return;
+
+		long start = System.nanoTime();
+		BulkWriteOperation bulkOperation = collection.initializeUnorderedBulkOperation();
+
+		for (Operation op : ops) {
+			if (op.query == null)
+				bulkOperation.insert(op.document);
+			else
+				bulkOperation.find(op.query).upsert().replaceOne(op.document);
+		}
+
+		bulkOperation.execute(settings.writeConcern);
+		FLUSH.stop(start);
+		long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		if (listener != null) {
+
+			List<String> keys = new ArrayList<String>(ops.size());
+			for (Operation op : ops)
+				if (op.key != null)
+					keys.add(op.key);
+
+			try {
+				listener.flushed(keys);
+			} catch (Exception e) {
+				throw new MongoException(String.format("flush listener failed after batch %d", number), e);
+			}
+
+		}
+
+		documents.addAndGet(ops.size());
+		DOCUMENTS_WRITTEN.add(ops.size());
+		totalLatency.addAndGet(latency);
+		maxLatency.accumulateAndGet(latency, Math::max);
+
+		Logger.log("[*] Flushed batch %d to '%s' (%d docs, %d KB) in %d ms", true,
+				number, collection.getName(), ops.size(), bytes / 1024, latency);
+
+	}
+
+	/**
+	 * Flushes the current batch, and waits for every batch
+	 * in flight to complete
+	 *
+	 * @throws MongoException If any batch failed
+	 */
+	public void sync() throws MongoException {
+
+		flush();
+
+		// Every permit is free once no batch is in flight
+		inFlight.acquireUninterruptibly(settings.maxInFlight);
+		inFlight.release(settings.maxInFlight);
+
+		checkFailure();
+
+	}
+
+	/**
+	 * Flushes any remaining documents and waits for all
+	 * batches to complete, then logs a summary of the writes.
+	 *
+	 * @throws MongoException If any batch failed
+	 */
+	public void close() throws MongoException {
+
+		try {
+			flush();
+		} finally {
+
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+		}
+
+		checkFailure();
+
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		int count = batches.get();
+		Logger.log(
+				"[*] Wrote %d documents to '%s' in %d batches (%.1f docs/sec; %d ms avg, %d ms max per batch)",
+				false,
+				documents.get(),
+				collection.getName(),
+				count,
+				seconds > 0 ? documents.get() / seconds : 0d,
+				count > 0 ? totalLatency.get() / count : 0,
+				maxLatency.get()
+		);
+
+	}
+
+	/**
+	 * Throws the failure of a previous batch, if any
+	 */
+	private void checkFailure() throws MongoException {
+
+		MongoException e = failure.get();
+		if (e != null)
+			throw e;
+
+	}
+
+	/**
+	 * Gets the number of documents written so far
+	 *
+	 * @return Number of documents written
+	 */
+	public long getDocumentsWritten() {
+		return documents.get();
+	}
+
+	private static class Operation {
+
+		private final DBObject query;
+		private final DBObject document;
+		private final String key;
+
+		Operation(DBObject query, DBObject document, String key) {
+			this.query = query;
+			this.document = document;
+			this.key = key;
+		}
+
+	}
+
+	/**
+	 * Flush thresholds, write concern and concurrency
+	 * settings for a BulkWriter.
+	 */
+	public static class Settings {
+
+		public static final int DEFAULT_MAX_DOCUMENTS = 1000;
+		public static final int DEFAULT_MAX_KILOBYTES = 8192;
+		public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+		private final int maxDocuments;
+		private final long maxBytes;
+		private final int maxInFlight;
+		private final WriteConcern writeConcern;
+		private final Semaphore writeBudget;
+
+		/**
+		 * Constructs Settings for a BulkWriter
+		 *
+		 * @param maxDocuments Number of documents after which to flush
+		 * @param maxBytes Number of bytes after which to flush
+		 * @param maxInFlight Number of batches which may be executing at once
+		 * @param writeConcern Write concern to execute batches with
+		 */
+		public Settings(int maxDocuments, long maxBytes, int maxInFlight, WriteConcern writeConcern) {
+			this(maxDocuments, maxBytes, maxInFlight, writeConcern, null);
+		}
+
+		private Settings(int maxDocuments, long maxBytes, int maxInFlight, WriteConcern writeConcern, Semaphore writeBudget) {
+			this.maxDocuments = maxDocuments;
+			this.maxBytes = maxBytes;
+			this.maxInFlight = maxInFlight;
+			this.writeConcern = writeConcern;
+			this.writeBudget = writeBudget;
+		}
+
+		/**
+		 * Gets a copy of these settings whose writers also take a permit
+		 * from `writeBudget` for each batch in flight, so that several
+		 * writers can share a limit on the batches executing at once
+		 *
+		 * @param writeBudget Semaphore shared by the writers
+		 * @return Settings
+		 */
+		public Settings withWriteBudget(Semaphore writeBudget) {
+			return new Settings(maxDocuments, maxBytes, maxInFlight, writeConcern, writeBudget);
+		}
+
+		/**
+		 * Gets the number of documents after which to flush
+		 *
+		 * @return Maximum documents per batch
+		 */
+		public int getMaxDocuments() {
+			return maxDocuments;
+		}
+
+		/**
+		 * Gets the number of batches which may be executing at once
+		 *
+		 * @return Maximum batches in flight
+		 */
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		/**
+		 * Reads settings from the --bulk-docs, --bulk-kb, --bulk-in-flight
+		 * and --write-concern options, falling back to the defaults.
+		 *
+		 * @param cmd CommandLine to read from
+		 * @return Settings
+		 * @throws IllegalArgumentException If an option is invalid
+		 */
+		public static Settings fromCommandLine(CommandLine cmd) {
+
+			return new Settings(
+				Arguments.getPositiveInt(cmd, "bulk-docs", DEFAULT_MAX_DOCUMENTS),
+				Arguments.getPositiveInt(cmd, "bulk-kb", DEFAULT_MAX_KILOBYTES) * 1024L,
+				Arguments.getPositiveInt(cmd, "bulk-in-flight", DEFAULT_MAX_IN_FLIGHT),
+				ConnectionFactory.getWriteConcern(cmd)
+			);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.defiancecraft.configure.db;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+
+import com.defiancecraft.configure.util.Arguments;
+import com.defiancecraft.configure.util.Asker;
+import com.defiancecraft.configure.util.Logger;
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+
+/**
+ * Creates the MongoClients migrators write with, from the dbHost, dbPort,
+ * dbUser, dbPass and dbDB answers and the pool options given on the
+ * command line (--db-pool-size, --db-connect-timeout, --db-socket-timeout,
+ * --db-max-wait, --read-preference and --write-concern).
+ *
+ * The 2.x driver opens pooled connections lazily, so a client can be
+ * warmed up (see {@link #warmUp(MongoClient, String, int)}) before the
+ * write stage, rather than the first batches paying for the connections.
+ */
+public class ConnectionFactory {
+
+	public static final int DEFAULT_POOL_SIZE = 100;
+	public static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+	public static final int DEFAULT_SOCKET_TIMEOUT_MS = 0;
+	public static final int DEFAULT_MAX_WAIT_MS = 120000;
+
+	private final MongoClientOptions options;
+
+	/**
+	 * Constructs a ConnectionFactory
+	 *
+	 * @param options Options for the clients' connection pools
+	 */
+	public ConnectionFactory(MongoClientOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Reads the pool options from the command line
+	 *
+	 * @param cmd CommandLine to read from
+	 * @return ConnectionFactory
+	 * @throws IllegalArgumentException If an option is invalid
+	 */
+	public static ConnectionFactory fromCommandLine(CommandLine cmd) {
+
+		ReadPreference readPreference = ReadPreference.primary();
+		if (cmd.hasOption("read-preference")) {
+			try {
+				readPreference = ReadPreference.valueOf(cmd.getOptionValue("read-preference"));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(String.format("unknown read preference '%s'", cmd.getOptionValue("read-preference")));
+			}
+		}
+
+		return new ConnectionFactory(MongoClientOptions.builder()
+				.description("dcconf")
+				.connectionsPerHost(Arguments.getPositiveInt(cmd, "db-pool-size", DEFAULT_POOL_SIZE))
+				.connectTimeout(Arguments.getNonNegativeInt(cmd, "db-connect-timeout", DEFAULT_CONNECT_TIMEOUT_MS))
+				.socketTimeout(Arguments.getNonNegativeInt(cmd, "db-socket-timeout", DEFAULT_SOCKET_TIMEOUT_MS))
+				.maxWaitTime(Arguments.getNonNegativeInt(cmd, "db-max-wait", DEFAULT_MAX_WAIT_MS))
+				.socketKeepAlive(true)
+				.readPreference(readPreference)
+				.writeConcern(getWriteConcern(cmd))
+				.build());
+
+	}
+
+	/**
+	 * Reads the write concern from the --write-concern option
+	 *
+	 * @param cmd CommandLine to read from
+	 * @return WriteConcern; MAJORITY by default
+	 * @throws IllegalArgumentException If the write concern is unknown
+	 */
+	public static WriteConcern getWriteConcern(CommandLine cmd) {
+
+		WriteConcern writeConcern = WriteConcern.MAJORITY;
+		if (cmd.hasOption("write-concern")
+				&& (writeConcern = WriteConcern.valueOf(cmd.getOptionValue("write-concern").toUpperCase())) == null)
+			throw new IllegalArgumentException(String.format("unknown write concern '%s'", cmd.getOptionValue("write-concern")));
+
+		return writeConcern;
+
+	}
+
+	/**
+	 * Connects to the DB given by an Asker's answers to the dbHost,
+	 * dbPort, dbUser, dbPass and dbDB questions
+	 *
+	 * @param asker Asker whose questions have been answered
+	 * @return MongoClient; the caller must close it
+	 * @throws UnknownHostException If the host is unknown
+	 * @throws NumberFormatException If the port is not a number
+	 */
+	public MongoClient connect(Asker asker) throws UnknownHostException {
+
+		Logger.log("[*] Attempting to connect to DB", true);
+		ServerAddress addr = new ServerAddress(asker.getAnswer("dbHost"), Integer.parseInt(asker.getAnswer("dbPort")));
+
+		if (!asker.getAnswer("dbPass").isEmpty()) {
+			MongoCredential cred = MongoCredential.createMongoCRCredential(
+					asker.getAnswer("dbUser"),
+					asker.getAnswer("dbDB"),
+					asker.getAnswer("dbPass").toCharArray());
+			return new MongoClient(addr, Arrays.asList(cred), options);
+		} else {
+			return new MongoClient(addr, options);
+		}
+
+	}
+
+	/**
+	 * Opens pooled connections ahead of time, by running a ping on each
+	 * of `connections` threads at once; connections already open are
+	 * reused. Also checks that the DB is reachable (and the credentials
+	 * valid) before any work is done.
+	 *
+	 * @param client Client to warm up
+	 * @param dbName Database to ping
+	 * @param connections Number of connections to open; capped at the pool size
+	 * @throws MongoException If a ping failed
+	 */
+	public void warmUp(MongoClient client, String dbName, int connections) throws MongoException {
+
+		int count = Math.max(1, Math.min(connections, options.getConnectionsPerHost()));
+		long start = System.nanoTime();
+		DB db = client.getDB(dbName);
+
+		// Every thread pings at once, so each needs its own connection
+		CyclicBarrier barrier = new CyclicBarrier(count);
+		ExecutorService executor = Executors.newFixedThreadPool(count, (r) -> {
+			Thread t = new Thread(r, "db-warmup");
+			t.setDaemon(true);
+			return t;
+		});
+
+		List<Future<?>> pings = new ArrayList<Future<?>>(count);
+		for (int i = 0; i < count; i++) {
+			pings.add(executor.submit(() -> {
+				barrier.await();
+				db.command("ping").throwOnError();
+				return null;
+			}));
+		}
+
+		executor.shutdown();
+
+		try {
+			for (Future<?> ping : pings)
+				ping.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MongoException("interrupted while warming up connections");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MongoException)
+				throw (MongoException) e.getCause();
+			throw new MongoException("could not warm up connections", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Logger.log("[*] Opened %d DB connection(s) in %d ms", false, count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+	}
+
+}
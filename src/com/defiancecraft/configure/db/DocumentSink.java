@@ -0,0 +1,68 @@
+package com.defiancecraft.configure.db;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.mongodb.DBObject;
+
+/**
+ * Somewhere converted documents are written to: a collection, via a
+ * {@link BulkWriter}, or a local file for dry runs.
+ *
+ * Documents should only be added from a single thread.
+ */
+public interface DocumentSink {
+
+	/**
+	 * Sets a listener to be notified with the keys of each
+	 * batch of documents once they have been written.
+	 *
+	 * @param listener FlushListener, or null
+	 */
+	public void setListener(FlushListener listener);
+
+	/**
+	 * Writes a document which replaces the document matched by `query`,
+	 * or is inserted if none matches, passing `key` to the FlushListener
+	 * once it has been written.
+	 *
+	 * @param query Query to match the document to replace
+	 * @param document Replacement document
+	 * @param key Key identifying the document, e.g. a UUID
+	 * @throws IOException If the document, or a previous batch, could not be written
+	 */
+	public void replaceOne(DBObject query, DBObject document, String key) throws IOException;
+
+	/**
+	 * Writes every document given so far, and waits until they have
+	 * been written; so that a document given afterwards is written after
+	 * them, e.g. to replace one of them.
+	 *
+	 * @throws IOException If the documents, or a previous batch, could not be written
+	 */
+	public void sync() throws IOException;
+
+	/**
+	 * Writes any remaining documents, then logs a summary of the writes.
+	 *
+	 * @throws IOException If the remaining documents could not be written
+	 */
+	public void close() throws IOException;
+
+	/**
+	 * Gets the number of documents written so far
+	 *
+	 * @return Number of documents written
+	 */
+	public long getDocumentsWritten();
+
+	/**
+	 * Notified with the keys of the documents in each batch once the
+	 * batch has been written; possibly on another thread.
+	 */
+	@FunctionalInterface
+	public static interface FlushListener {
+		void flushed(List<String> keys) throws Exception;
+	}
+
+}
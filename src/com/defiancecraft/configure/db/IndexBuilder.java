@@ -0,0 +1,218 @@
+package com.defiancecraft.configure.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.metrics.Timer;
+import com.defiancecraft.configure.util.Logger;
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * Creates the indexes migrators declare (see
+ * {@link com.defiancecraft.configure.migrators.Migrator#getIndexes()})
+ * around a load. Unique indexes are always created before the load;
+ * secondary indexes are too, unless they are deferred, in which case
+ * they are built after the load, which is quicker than maintaining them
+ * for every write of a large load.
+ *
+ * Indexes which already exist on the same key are left as they are.
+ * Before a unique index is built, the collection is checked for values
+ * of its field shared by more than one document (such as the duplicate
+ * banks older versions inserted), which would fail the build; they are
+ * either reported, or removed if asked to.
+ */
+public class IndexBuilder {
+
+	private static final Timer INDEX_BUILD = Metrics.timer("index.build");
+
+	private final List<IndexSpec> before = new ArrayList<IndexSpec>();
+	private final List<IndexSpec> after = new ArrayList<IndexSpec>();
+	private final boolean removeDuplicates;
+
+	/**
+	 * Constructs an IndexBuilder
+	 *
+	 * @param indexes Indexes to create; duplicates are created once
+	 * @param deferSecondary Whether to build secondary indexes after the load
+	 * @param removeDuplicates Whether to remove documents which share the
+	 * 						   field of a unique index, keeping the newest
+	 */
+	public IndexBuilder(List<IndexSpec> indexes, boolean deferSecondary, boolean removeDuplicates) {
+
+		this.removeDuplicates = removeDuplicates;
+
+		for (IndexSpec index : new LinkedHashSet<IndexSpec>(indexes)) {
+			if (deferSecondary && !index.isUnique())
+				after.add(index);
+			else
+				before.add(index);
+		}
+
+	}
+
+	/**
+	 * Creates the indexes needed before the load
+	 *
+	 * @param db Database to create them in
+	 * @throws MongoException If an index could not be created, e.g. as
+	 * 		   a unique field has duplicates which were not removed
+	 */
+	public void createBeforeLoad(DB db) throws MongoException {
+
+		long start = System.nanoTime();
+		int created = create(db, before);
+
+		if (created > 0)
+			Logger.log("[*] Created %d index(es) in %d ms", false, created, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		if (!after.isEmpty())
+			Logger.log("[*] Deferring %d secondary index(es) until the load has finished", false, after.size());
+
+	}
+
+	/**
+	 * Builds the deferred secondary indexes, once the load has finished
+	 *
+	 * @param db Database to build them in
+	 * @throws MongoException If an index could not be built
+	 */
+	public void createAfterLoad(DB db) throws MongoException {
+
+		if (after.isEmpty())
+			return;
+
+		Logger.log("[*] Building %d deferred index(es)", false, after.size());
+
+		long start = INDEX_BUILD.start();
+		int created = create(db, after);
+		INDEX_BUILD.stop(start);
+
+		Logger.log("[*] Built %d deferred index(es) in %.1f s", false, created, (System.nanoTime() - start) / 1e9d);
+
+	}
+
+	/**
+	 * Creates indexes which do not already exist
+	 *
+	 * @return Number of indexes created
+	 */
+	private int create(DB db, List<IndexSpec> indexes) throws MongoException {
+
+		int created = 0;
+
+		for (IndexSpec index : indexes) {
+
+			DBCollection collection = db.getCollection(index.getCollection());
+			DBObject existing = findIndex(collection, index.getField());
+
+			if (existing != null) {
+
+				if (index.isUnique() && !Boolean.TRUE.equals(existing.get("unique")))
+					Logger.log("[!] %s.%s is indexed, but not uniquely; leaving the existing index", false, index.getCollection(), index.getField());
+				else
+					Logger.log("[*] Index %s already exists", true, index);
+
+				continue;
+
+			}
+
+			if (index.isUnique())
+				checkDuplicates(collection, index.getField());
+
+			Logger.log("[*] Creating index %s", true, index);
+			collection.createIndex(index.getKeys(), new BasicDBObject("unique", index.isUnique()));
+			created++;
+
+		}
+
+		return created;
+
+	}
+
+	/**
+	 * Checks that no two documents of a collection share a value of
+	 * a field, removing all but the newest of each if asked to
+	 *
+	 * @throws MongoException If documents share a value, and were not removed
+	 */
+	private void checkDuplicates(DBCollection collection, String field) throws MongoException {
+
+		// Sorted by _id, so the last of each value's IDs is the newest
+		// for ObjectIds, which the driver generates for inserts
+		List<DBObject> pipeline = Arrays.<DBObject>asList(
+			new BasicDBObject("$sort", new BasicDBObject("_id", 1)),
+			new BasicDBObject("$group", new BasicDBObject("_id", "$" + field).append("ids", new BasicDBObject("$push", "$_id"))),
+			new BasicDBObject("$match", new BasicDBObject("ids.1", new BasicDBObject("$exists", true)))
+		);
+		AggregationOptions options = AggregationOptions.builder()
+				.outputMode(AggregationOptions.OutputMode.CURSOR)
+				.allowDiskUse(true)
+				.build();
+
+		int values = 0;
+		int removed = 0;
+		Cursor duplicates = collection.aggregate(pipeline, options);
+
+		try {
+			while (duplicates.hasNext()) {
+
+				List<?> ids = (List<?>) duplicates.next().get("ids");
+				values++;
+
+				if (removeDuplicates) {
+					List<?> older = ids.subList(0, ids.size() - 1);
+					collection.remove(new BasicDBObject("_id", new BasicDBObject("$in", older)));
+					removed += older.size();
+				}
+
+			}
+		} finally {
+			duplicates.close();
+		}
+
+		if (values == 0)
+			return;
+
+		if (!removeDuplicates)
+			throw new MongoException(String.format(
+					"%d value(s) of %s.%s are shared by more than one document, so its unique index cannot be built; "
+					+ "rerun with --remove-duplicates to keep only the newest document of each, or remove them yourself",
+					values, collection.getName(), field));
+
+		Logger.log("[!] Removed %d older document(s) sharing %d value(s) of %s.%s", false, removed, values, collection.getName(), field);
+
+	}
+
+	/**
+	 * Finds an existing ascending index on exactly one field
+	 *
+	 * @return The index's info, or null if there is none
+	 */
+	private static DBObject findIndex(DBCollection collection, String field) {
+
+		for (DBObject info : collection.getIndexInfo()) {
+
+			// The server may give the direction as 1, 1L or 1.0
+			if (!(info.get("key") instanceof DBObject))
+				continue;
+
+			DBObject key = (DBObject) info.get("key");
+			if (key.keySet().size() == 1 && key.get(field) instanceof Number && ((Number) key.get(field)).intValue() == 1)
+				return info;
+
+		}
+
+		return null;
+
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.defiancecraft.configure.db;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * An index which a migrator needs on a collection it reads or writes.
+ *
+ * Unique indexes are on the fields documents are upserted and looked up
+ * by, and must exist before the load starts (or every upsert scans the
+ * collection). Secondary indexes are only for the collection's readers,
+ * so may be built once the load has finished.
+ */
+public class IndexSpec {
+
+	private final String collection;
+	private final String field;
+	private final boolean unique;
+
+	private IndexSpec(String collection, String field, boolean unique) {
+		this.collection = collection;
+		this.field = field;
+		this.unique = unique;
+	}
+
+	/**
+	 * Gets a unique, ascending index on a key field
+	 *
+	 * @param collection Name of the collection
+	 * @param field Field documents are upserted or looked up by
+	 * @return IndexSpec
+	 */
+	public static IndexSpec unique(String collection, String field) {
+		return new IndexSpec(collection, field, true);
+	}
+
+	/**
+	 * Gets a non-unique, ascending index
+	 *
+	 * @param collection Name of the collection
+	 * @param field Field to index
+	 * @return IndexSpec
+	 */
+	public static IndexSpec secondary(String collection, String field) {
+		return new IndexSpec(collection, field, false);
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public boolean isUnique() {
+		return unique;
+	}
+
+	/**
+	 * Gets the index's key document, e.g. { uuid: 1 }
+	 *
+	 * @return Keys
+	 */
+	public DBObject getKeys() {
+		return new BasicDBObject(field, 1);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+
+		if (!(o instanceof IndexSpec))
+			return false;
+
+		IndexSpec other = (IndexSpec) o;
+		return collection.equals(other.collection) && field.equals(other.field) && unique == other.unique;
+
+	}
+
+	@Override
+	public int hashCode() {
+		return (collection.hashCode() * 31 + field.hashCode()) * 31 + (unique ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s.%s%s", collection, field, unique ? " (unique)" : "");
+	}
+
+}
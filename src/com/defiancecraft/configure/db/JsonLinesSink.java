@@ -0,0 +1,52 @@
+package com.defiancecraft.configure.db;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * A LocalSink which writes each document as a line
+ * of (MongoDB extended) JSON.
+ */
+public class JsonLinesSink extends LocalSink {
+
+	private final Writer writer;
+	private final StringBuilder line = new StringBuilder();
+
+	/**
+	 * Constructs a JsonLinesSink, truncating the file
+	 *
+	 * @param file File to write to
+	 * @param batchSize Number of documents after which to flush
+	 * @throws IOException If the file could not be opened
+	 */
+	public JsonLinesSink(File file, int batchSize) throws IOException {
+		super(String.format("'%s'", file.getPath()), batchSize);
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+	}
+
+	protected void write(DBObject document) throws IOException {
+
+		line.setLength(0);
+		JSON.serialize(document, line);
+		line.append('\n');
+		writer.append(line);
+
+	}
+
+	protected void flushOutput() throws IOException {
+		writer.flush();
+	}
+
+	protected void closeOutput() throws IOException {
+		writer.close();
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.defiancecraft.configure.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.defiancecraft.configure.metrics.Counter;
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.metrics.Timer;
+import com.defiancecraft.configure.util.Logger;
+import com.mongodb.DBObject;
+
+/**
+ * A DocumentSink which writes documents on the calling thread, for dry
+ * runs. Queries are ignored; every document is written as given. The
+ * FlushListener is notified every `batchSize` documents, once they have
+ * been flushed to the underlying output.
+ */
+public abstract class LocalSink implements DocumentSink {
+
+	private static final Timer FLUSH = Metrics.timer("flush");
+	private static final Counter DOCUMENTS_WRITTEN = Metrics.counter("documents.written");
+
+	private final String name;
+	private final int batchSize;
+	private final long startTime = System.nanoTime();
+	private FlushListener listener;
+
+	private List<String> keys = new ArrayList<String>();
+	private long documents = 0;
+
+	/**
+	 * Constructs a LocalSink
+	 *
+	 * @param name Name of the sink's output, for logging
+	 * @param batchSize Number of documents after which to flush
+	 */
+	protected LocalSink(String name, int batchSize) {
+		this.name = name;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Writes a single document to the output
+	 *
+	 * @param document Document to write
+	 * @throws IOException If the document could not be written
+	 */
+	protected abstract void write(DBObject document) throws IOException;
+
+	/**
+	 * Flushes the output
+	 *
+	 * @throws IOException If the output could not be flushed
+	 */
+	protected abstract void flushOutput() throws IOException;
+
+	/**
+	 * Closes the output
+	 *
+	 * @throws IOException If the output could not be closed
+	 */
+	protected abstract void closeOutput() throws IOException;
+
+	public void setListener(FlushListener listener) {
+		this.listener = listener;
+	}
+
+	public void replaceOne(DBObject query, DBObject document, String key) throws IOException {
+
+		write(document);
+		documents++;
+		DOCUMENTS_WRITTEN.increment();
+
+		if (key != null)
+			keys.add(key);
+
+		if (documents % batchSize == 0)
+			flush();
+
+	}
+
+	/**
+	 * Flushes the output, and notifies the listener of
+	 * the documents written since the last flush
+	 *
+	 * @throws IOException If the output could not be flushed
+	 */
+	public void flush() throws IOException {
+
+		long start = FLUSH.start();
+		flushOutput();
+		FLUSH.stop(start);
+
+		if (listener != null && !keys.isEmpty()) {
+			try {
+				listener.flushed(keys);
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("flush listener failed", e);
+			}
+		}
+
+		keys = new ArrayList<String>();
+
+	}
+
+	public void sync() throws IOException {
+		flush();
+	}
+
+	public void close() throws IOException {
+
+		try {
+			flush();
+		} finally {
+			closeOutput();
+		}
+
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		Logger.log(
+				"[*] Wrote %d documents to %s (%.1f docs/sec)",
+				false,
+				documents,
+				name,
+				seconds > 0 ? documents / seconds : 0d
+		);
+
+	}
+
+	public long getDocumentsWritten() {
+		return documents;
+	}
+
+}
@@ -0,0 +1,26 @@
+package com.defiancecraft.configure.db;
+
+import com.mongodb.DBObject;
+
+/**
+ * A LocalSink which discards every document, for
+ * timing the rest of a migration.
+ */
+public class NullSink extends LocalSink {
+
+	/**
+	 * Constructs a NullSink
+	 *
+	 * @param batchSize Number of documents after which to notify the listener
+	 */
+	public NullSink(int batchSize) {
+		super("nowhere (null sink)", batchSize);
+	}
+
+	protected void write(DBObject document) {}
+
+	protected void flushOutput() {}
+
+	protected void closeOutput() {}
+
+}
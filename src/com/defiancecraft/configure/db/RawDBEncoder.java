@@ -0,0 +1,42 @@
+package com.defiancecraft.configure.db;
+
+import java.io.IOException;
+
+import org.bson.BSONObject;
+import org.bson.LazyBSONObject;
+import org.bson.io.OutputBuffer;
+
+import com.mongodb.DBEncoder;
+import com.mongodb.DBEncoderFactory;
+import com.mongodb.DefaultDBEncoder;
+import com.mongodb.MongoException;
+
+/**
+ * A DefaultDBEncoder which writes documents that are already encoded
+ * (LazyBSONObjects, such as {@link RawDBObject}s) by copying their
+ * bytes, rather than by walking their fields. Every other document is
+ * encoded as DefaultDBEncoder would.
+ */
+public class RawDBEncoder extends DefaultDBEncoder {
+
+	public static final DBEncoderFactory FACTORY = new DBEncoderFactory() {
+		public DBEncoder create() {
+			return new RawDBEncoder();
+		}
+	};
+
+	@Override
+	public int writeObject(OutputBuffer buf, BSONObject o) {
+
+		if (!(o instanceof LazyBSONObject))
+			return super.writeObject(buf, o);
+
+		try {
+			return ((LazyBSONObject) o).pipe(buf);
+		} catch (IOException e) {
+			throw new MongoException("could not copy an encoded document", e);
+		}
+
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.defiancecraft.configure.db;
+
+import org.bson.LazyBSONCallback;
+
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBObject;
+
+/**
+ * A document which is already encoded, e.g. into a {@link BsonBuffer}.
+ * It is written by copying its bytes (see {@link RawDBEncoder}), and
+ * only decoded if its fields are read.
+ */
+public class RawDBObject extends LazyDBObject {
+
+	// Reads embedded {$ref, $id} documents back as DBRefs, as they were before encoding
+	private static final LazyBSONCallback CALLBACK = new LazyDBCallback(null);
+
+	private final byte[] document;
+
+	/**
+	 * Constructs a RawDBObject
+	 *
+	 * @param document BSON document; not copied, so must not be modified
+	 */
+	public RawDBObject(byte[] document) {
+		super(document, CALLBACK);
+		this.document = document;
+	}
+
+	/**
+	 * Gets the encoded document
+	 *
+	 * @return BSON document; must not be modified
+	 */
+	public byte[] getDocument() {
+		return document;
+	}
+
+}
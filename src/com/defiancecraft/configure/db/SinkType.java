@@ -0,0 +1,112 @@
+package com.defiancecraft.configure.db;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.cli.CommandLine;
+
+import com.mongodb.DBCollection;
+
+/**
+ * Where migrators write their documents, as chosen with --sink.
+ * Every sink but MONGO is a dry run, which does not connect to the DB.
+ */
+public enum SinkType {
+
+	MONGO("mongo", null),
+	JSONL("jsonl", "jsonl"),
+	BSON_FILE("bson-file", "bson"),
+	NULL("null", null);
+
+	private final String name;
+	private final String extension;
+
+	private SinkType(String name, String extension) {
+		this.name = name;
+		this.extension = extension;
+	}
+
+	/**
+	 * Reads the sink type from the --sink option
+	 *
+	 * @param cmd CommandLine to read from
+	 * @return SinkType; MONGO by default
+	 * @throws IllegalArgumentException If the sink is unknown
+	 */
+	public static SinkType fromCommandLine(CommandLine cmd) {
+
+		String value = cmd.getOptionValue("sink", MONGO.name);
+		for (SinkType type : values())
+			if (type.name.equalsIgnoreCase(value))
+				return type;
+
+		throw new IllegalArgumentException(String.format("--sink must be one of mongo, jsonl, bson-file or null (got '%s')", value));
+
+	}
+
+	/**
+	 * Gets whether this sink writes to the DB
+	 *
+	 * @return Whether this is MONGO
+	 */
+	public boolean isMongo() {
+		return this == MONGO;
+	}
+
+	/**
+	 * Creates a sink for a collection. File sinks write to
+	 * '&lt;collection&gt;.&lt;extension&gt;' in the --sink-dir directory.
+	 *
+	 * @param cmd CommandLine to read --sink-dir from
+	 * @param collection Collection to write to; only used by MONGO
+	 * @param collectionName Name of the collection
+	 * @param settings BulkWriter settings; local sinks only use the batch size
+	 * @return DocumentSink
+	 * @throws IOException If an output file could not be opened
+	 */
+	public DocumentSink create(CommandLine cmd, DBCollection collection, String collectionName, BulkWriter.Settings settings) throws IOException {
+
+		File file = extension == null ? null : new File(cmd.getOptionValue("sink-dir", "."), collectionName + "." + extension);
+		if (file != null && file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+
+		switch (this) {
+			case JSONL:
+				return new JsonLinesSink(file, settings.getMaxDocuments());
+			case BSON_FILE:
+				return new BsonFileSink(file, settings.getMaxDocuments());
+			case NULL:
+				return new NullSink(settings.getMaxDocuments());
+			default:
+				return new BulkWriter(collection, settings);
+		}
+
+	}
+
+	/**
+	 * Gets the file a migrator keeps state in (e.g. its journal), from
+	 * `option` if it is given. Dry runs default to a separate file from
+	 * real runs, so that they never cause a real run to skip work.
+	 *
+	 * @param cmd CommandLine to read from
+	 * @param option Option naming the file
+	 * @param migrator Name of the migrator
+	 * @param extension Extension of the default file
+	 * @return State file
+	 */
+	public File getStateFile(CommandLine cmd, String option, String migrator, String extension) {
+
+		String defaultName = isMongo()
+				? String.format("%s.%s", migrator, extension)
+				: String.format("%s-%s.%s", migrator, name, extension);
+
+		return new File(cmd.getOptionValue(option, defaultName));
+
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.defiancecraft.configure.fleet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+
+/**
+ * Decides which server of a fleet migrates each user, so that users
+ * who are on several servers are written once.
+ *
+ * Every server submits the users it found, keyed by UUID, and waits
+ * until every other server has too. A user is then migrated by the first
+ * server in the manifest which has them, merged with the other servers'
+ * copies; so the outcome does not depend on which server finished
+ * listing its users first.
+ */
+public class Deduplicator {
+
+	private final AtomicReferenceArray<Map<String, ?>> submissions;
+	private final CountDownLatch submitted;
+
+	/**
+	 * Constructs a Deduplicator
+	 *
+	 * @param servers Number of servers in the fleet
+	 */
+	public Deduplicator(int servers) {
+		this.submissions = new AtomicReferenceArray<Map<String, ?>>(servers);
+		this.submitted = new CountDownLatch(servers);
+	}
+
+	/**
+	 * Submits a server's users, waits for every other server's, and
+	 * returns the users which this server should migrate.
+	 *
+	 * @param server Index of the server in the manifest
+	 * @param items Server's users, keyed by UUID; not modified
+	 * @param merge Merges a later server's copy of a user into the
+	 * 		  first; copies are merged in manifest order
+	 * @return Users to migrate, in the order they were submitted
+	 * @throws InterruptedException If interrupted while waiting
+	 * @throws IllegalStateException If the server has already submitted
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Map<String, T> claim(int server, Map<String, T> items, BinaryOperator<T> merge) throws InterruptedException {
+
+		if (!submissions.compareAndSet(server, null, items))
+			throw new IllegalStateException(String.format("server %d already submitted its users", server));
+
+		submitted.countDown();
+		submitted.await();
+
+		Map<String, T> claimed = new LinkedHashMap<String, T>();
+
+		outer:
+		for (Entry<String, T> item : items.entrySet()) {
+
+			// Earlier servers take precedence
+			for (int i = 0; i < server; i++)
+				if (submissions.get(i).containsKey(item.getKey()))
+					continue outer;
+
+			T merged = item.getValue();
+			for (int i = server + 1; i < submissions.length(); i++) {
+				Map<String, T> other = (Map<String, T>) submissions.get(i);
+				if (other.containsKey(item.getKey()))
+					merged = merge.apply(merged, other.get(item.getKey()));
+			}
+
+			claimed.put(item.getKey(), merged);
+
+		}
+
+		return claimed;
+
+	}
+
+	/**
+	 * Submits no users for a server which did not claim any (e.g. as it
+	 * failed first), so that the other servers do not wait for it. Does
+	 * nothing if the server has already submitted.
+	 *
+	 * @param server Index of the server in the manifest
+	 */
+	public void release(int server) {
+
+		if (submissions.compareAndSet(server, null, new LinkedHashMap<String, Object>()))
+			submitted.countDown();
+
+	}
+
+}
@@ -0,0 +1,179 @@
+package com.defiancecraft.configure.fleet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.defiancecraft.configure.util.Answers;
+
+/**
+ * The servers of a fleet, as given by a YAML manifest such as:
+ *
+ *     defaults:
+ *       dbHost: mongo.internal
+ *       dbDB: minecraft
+ *     servers:
+ *       - name: lobby
+ *         root: /srv/lobby
+ *       - name: survival
+ *         root: /srv/survival
+ *         worlds: world,world_nether
+ *
+ * Every key of a server besides its name and root is an answer to the
+ * migrator's questions, overriding the defaults. Relative paths (such
+ * as the default "./world/playerdata") are resolved against the root.
+ * The fleet shares one connection, made from the defaults, so a server
+ * may not give its own dbHost, dbPort, dbUser or dbPass; it may give its
+ * own dbDB, for which the default credentials must also be valid.
+ * Servers are listed in order of precedence: a user on several servers
+ * is migrated by the first of them.
+ */
+public class FleetManifest {
+
+	// Answers the shared connection is made from, which servers cannot override
+	private static final List<String> CONNECTION_KEYS = Arrays.asList("dbHost", "dbPort", "dbUser", "dbPass");
+
+	private final Map<String, String> defaults;
+	private final List<Server> servers;
+
+	private FleetManifest(Map<String, String> defaults, List<Server> servers) {
+		this.defaults = defaults;
+		this.servers = servers;
+	}
+
+	/**
+	 * Loads a manifest
+	 *
+	 * @param file Manifest file
+	 * @return FleetManifest
+	 * @throws IOException If the file could not be read
+	 * @throws IllegalArgumentException If the manifest is invalid
+	 */
+	public static FleetManifest load(File file) throws IOException {
+
+		Object yaml;
+		try (InputStream in = new FileInputStream(file)) {
+			yaml = new Yaml().load(new InputStreamReader(in, StandardCharsets.UTF_8));
+		}
+
+		if (!(yaml instanceof Map) || !(((Map<?, ?>) yaml).get("servers") instanceof List))
+			throw new IllegalArgumentException(String.format("fleet manifest '%s' has no list of servers", file.getPath()));
+
+		Map<?, ?> manifest = (Map<?, ?>) yaml;
+		Map<String, String> defaults = manifest.get("defaults") instanceof Map
+				? Answers.toAnswers((Map<?, ?>) manifest.get("defaults"))
+				: Collections.<String, String>emptyMap();
+
+		List<Server> servers = new ArrayList<Server>();
+		Set<String> names = new HashSet<String>();
+
+		for (Object entry : (List<?>) manifest.get("servers")) {
+
+			if (!(entry instanceof Map))
+				throw new IllegalArgumentException(String.format("server %d of the fleet manifest is not a map", servers.size() + 1));
+
+			Map<String, String> own = Answers.toAnswers((Map<?, ?>) entry);
+			Map<String, String> answers = new HashMap<String, String>(defaults);
+			answers.putAll(own);
+
+			String name = answers.remove("name");
+			String root = answers.remove("root");
+
+			// Names are used in file names, e.g. <server>-userdata.journal
+			if (name == null || !name.matches("[A-Za-z0-9_.-]+"))
+				throw new IllegalArgumentException(String.format("server %d of the fleet manifest needs a name of letters, digits, '.', '_' and '-'", servers.size() + 1));
+			else if (!names.add(name))
+				throw new IllegalArgumentException(String.format("server '%s' is in the fleet manifest twice", name));
+			else if (root == null || root.isEmpty())
+				throw new IllegalArgumentException(String.format("server '%s' has no root", name));
+
+			for (String key : CONNECTION_KEYS)
+				if (own.containsKey(key))
+					throw new IllegalArgumentException(String.format(
+							"server '%s' sets %s, but the fleet shares one connection, made from the defaults; "
+							+ "give it in the defaults, or run servers on other clusters or with other credentials as a separate fleet", name, key));
+
+			servers.add(new Server(name, Paths.get(root), answers));
+
+		}
+
+		if (servers.isEmpty())
+			throw new IllegalArgumentException(String.format("fleet manifest '%s' has no servers", file.getPath()));
+
+		return new FleetManifest(defaults, servers);
+
+	}
+
+	/**
+	 * Gets the answers shared by every server
+	 *
+	 * @return Map of question name to answer
+	 */
+	public Map<String, String> getDefaults() {
+		return defaults;
+	}
+
+	/**
+	 * Gets the servers, in order of precedence
+	 *
+	 * @return List of servers
+	 */
+	public List<Server> getServers() {
+		return servers;
+	}
+
+	/**
+	 * A server of the fleet
+	 */
+	public static class Server {
+
+		private final String name;
+		private final Path root;
+		private final Map<String, String> answers;
+
+		Server(String name, Path root, Map<String, String> answers) {
+			this.name = name;
+			this.root = root;
+			this.answers = answers;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Path getRoot() {
+			return root;
+		}
+
+		/**
+		 * Gets the server's answers, including the defaults
+		 *
+		 * @return Map of question name to answer
+		 */
+		public Map<String, String> getAnswers() {
+			return answers;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.defiancecraft.configure.fleet;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.cli.CommandLine;
+
+import com.defiancecraft.configure.db.ConnectionFactory;
+import com.defiancecraft.configure.db.IndexBuilder;
+import com.defiancecraft.configure.db.SinkType;
+import com.defiancecraft.configure.fleet.FleetManifest.Server;
+import com.defiancecraft.configure.migrators.MigrationContext;
+import com.defiancecraft.configure.migrators.Migrator;
+import com.defiancecraft.configure.migrators.MigratorRegistry;
+import com.defiancecraft.configure.util.Answers;
+import com.defiancecraft.configure.util.Arguments;
+import com.defiancecraft.configure.util.Asker;
+import com.defiancecraft.configure.util.Logger;
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+
+/**
+ * Runs a migrator for every server of a fleet (see {@link FleetManifest})
+ * at once, in one process. The servers share a MongoClient, and a budget
+ * of bulk write batches which may be in flight across all of them; users
+ * who are on several servers are written once (see {@link Deduplicator}).
+ *
+ * Every server runs on its own thread, as each waits for the others
+ * to list their users before writing any; --threads applies to each.
+ */
+public class FleetRunner {
+
+	public static final int DEFAULT_WRITE_BUDGET = 8;
+
+	/**
+	 * Runs a migrator for every server in the --fleet manifest
+	 *
+	 * @param cmd CommandLine to read from
+	 * @param migratorName Name of the migrator to run
+	 * @param answers Answers given on the command line and environment;
+	 * 		  the manifest's take the place of the config file's
+	 * @return Whether the migration succeeded on every server
+	 */
+	public static boolean run(CommandLine cmd, String migratorName, Answers answers) {
+
+		FleetManifest manifest;
+		SinkType sinkType;
+		int writeBudget;
+		ConnectionFactory connections;
+
+		try {
+			manifest = FleetManifest.load(new File(cmd.getOptionValue("fleet")));
+			sinkType = SinkType.fromCommandLine(cmd);
+			writeBudget = Arguments.getPositiveInt(cmd, "fleet-write-budget", DEFAULT_WRITE_BUDGET);
+			connections = ConnectionFactory.fromCommandLine(cmd);
+		} catch (IOException e) {
+			Logger.log("Error: could not read fleet manifest; %s", false, e.getMessage());
+			return false;
+		} catch (IllegalArgumentException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
+
+		// Every server keeps its own state files
+		if (cmd.hasOption("journal") || cmd.hasOption("manifest") || cmd.hasOption("config")) {
+			Logger.log("Error: --journal, --manifest and --config cannot be used with --fleet; each server keeps <server>-<migrator>.journal/.manifest, and takes its answers from the fleet manifest");
+			return false;
+		}
+
+		List<Server> servers = manifest.getServers();
+		MongoClient client = null;
+		IndexBuilder indexes = null;
+		List<DB> databases = new ArrayList<DB>();
+
+		// Each server's answers, which may override the manifest's defaults
+		List<Answers> serverAnswers = new ArrayList<Answers>(servers.size());
+		for (Server server : servers)
+			serverAnswers.add(answers.unattended(server.getAnswers()));
+
+		try {
+
+			if (sinkType.isMongo()) {
+
+				Asker asker = new Asker(
+					"dbHost", "MongoDB Host", "localhost",
+					"dbPort", "MongoDB Port", "27017",
+					"dbUser", "MongoDB User", "",
+					"dbPass", "MongoDB Pass", "",
+					"dbDB", "MongoDB Database", "minecraft"
+				);
+
+				// Servers cannot give their own connection answers (see
+				// FleetManifest), so the defaults hold every server's
+				asker.setAnswers(answers.unattended(manifest.getDefaults()));
+				asker.askQuestions();
+
+				// Every batch of the budget, and every server's lookups, needs a connection
+				client = connections.connect(asker);
+				connections.warmUp(client, asker.getAnswer("dbDB"), writeBudget + servers.size());
+
+				// Servers which write to the same database share its
+				// collections, so each database's indexes are created once
+				Set<String> dbNames = new LinkedHashSet<String>();
+				for (Answers server : serverAnswers)
+					dbNames.add(server.get("dbDB") != null ? server.get("dbDB") : asker.getAnswer("dbDB"));
+
+				indexes = new IndexBuilder(MigratorRegistry.createMigrator(migratorName).get().getIndexes(), cmd.hasOption("defer-indexes"), cmd.hasOption("remove-duplicates"));
+				for (String dbName : dbNames) {
+					Logger.log("[*] Creating indexes in database '%s'", true, dbName);
+					DB db = client.getDB(dbName);
+					indexes.createBeforeLoad(db);
+					databases.add(db);
+				}
+
+			}
+
+			Deduplicator deduplicator = new Deduplicator(servers.size());
+			Semaphore budget = new Semaphore(writeBudget);
+			ExecutorService executor = Executors.newFixedThreadPool(servers.size(), (r) -> {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			});
+
+			Logger.log("[*] Running the %s migrator for %d servers, with %d bulk batches in flight at most", false, migratorName, servers.size(), writeBudget);
+
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(servers.size());
+			for (int i = 0; i < servers.size(); i++) {
+
+				Server server = servers.get(i);
+				Migrator migrator = MigratorRegistry.createMigrator(migratorName).get();
+				MigrationContext context = new MigrationContext(server.getName(), server.getRoot(), serverAnswers.get(i), client, budget, deduplicator, i);
+				int index = i;
+
+				results.add(executor.submit(() -> {
+
+					Thread.currentThread().setName("fleet-" + server.getName());
+					Logger.log("[*] [%s] Starting migration from '%s'", false, server.getName(), server.getRoot().toString());
+
+					boolean success = false;
+					try {
+						success = migrator.migrate(cmd, context);
+					} catch (RuntimeException e) {
+						Logger.log(Logger.Level.ERROR, e, "Error: [%s] migration failed; %s", server.getName(), e.toString());
+					} finally {
+						// Don't leave the other servers waiting for this one's users
+						deduplicator.release(index);
+					}
+
+					Logger.log(success ? "[*] [%s] Migration succeeded" : "[!] [%s] Migration failed", false, server.getName());
+					return success;
+
+				}));
+
+			}
+
+			executor.shutdown();
+
+			List<String> failed = new ArrayList<String>();
+			for (int i = 0; i < servers.size(); i++)
+				if (!results.get(i).get())
+					failed.add(servers.get(i).getName());
+
+			// Every server's load has finished, whether or not it succeeded
+			for (DB db : databases)
+				indexes.createAfterLoad(db);
+
+			Logger.log("[*] %d of %d servers migrated successfully", false, servers.size() - failed.size(), servers.size());
+			if (!failed.isEmpty())
+				Logger.log("[!] Failed servers: %s", false, String.join(", ", failed));
+
+			return failed.isEmpty();
+
+		} catch (UnknownHostException e) {
+			Logger.log("Error: unknown host");
+			return false;
+		} catch (NumberFormatException e) {
+			Logger.log("Error: invalid port");
+			return false;
+		} catch (MongoException e) {
+			Logger.log("Error: database error; %s", false, e.getMessage());
+			return false;
+		} catch (InterruptedException e) {
+			Logger.log("Error: interrupted while waiting for the fleet");
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			Logger.log(Logger.Level.ERROR, e.getCause(), "Error: %s", e.getCause().toString());
+			return false;
+		} finally {
+			if (client != null)
+				client.close();
+		}
+
+	}
+
+}
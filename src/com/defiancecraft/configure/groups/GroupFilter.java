@@ -0,0 +1,21 @@
+package com.defiancecraft.configure.groups;
+
+import java.util.List;
+
+/**
+ * A stage which decides which of a user's permission groups are
+ * migrated, and under what names.
+ *
+ * Implementations must be safe to share between threads.
+ */
+public interface GroupFilter {
+
+	/**
+	 * Filters (and possibly renames) a user's groups
+	 * 
+	 * @param groups The user's groups; not modified
+	 * @return Groups to migrate, in their original order
+	 */
+	public List<String> apply(List<String> groups);
+	
+}
@@ -0,0 +1,107 @@
+package com.defiancecraft.configure.groups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A GroupFilter which renames groups with a map of old to new names,
+ * and then keeps only the groups on a whitelist. Names are compared
+ * case-insensitively; the whitelist and map are case-folded once, on
+ * construction, so each group costs one or two hash lookups.
+ *
+ * Groups which are not renamed keep their original case. A group which
+ * appears twice after renaming is only kept once.
+ */
+public class WhitelistGroupFilter implements GroupFilter {
+
+	private final Set<String> whitelist;
+	private final Map<String, String> renames;
+	
+	/**
+	 * Constructs a WhitelistGroupFilter
+	 * 
+	 * @param whitelist Names of the groups to keep, after renaming
+	 * @param renames Map of old group name to new group name
+	 */
+	public WhitelistGroupFilter(Collection<String> whitelist, Map<String, String> renames) {
+		
+		Set<String> folded = new HashSet<String>();
+		for (String group : whitelist)
+			if (!group.trim().isEmpty())
+				folded.add(fold(group));
+		
+		Map<String, String> foldedRenames = new HashMap<String, String>();
+		for (Map.Entry<String, String> rename : renames.entrySet())
+			foldedRenames.put(fold(rename.getKey()), rename.getValue().trim());
+		
+		this.whitelist = Collections.unmodifiableSet(folded);
+		this.renames = Collections.unmodifiableMap(foldedRenames);
+		
+	}
+	
+	/**
+	 * Parses a WhitelistGroupFilter from the answers to the
+	 * migrator's questions
+	 * 
+	 * @param whitelist Comma-separated names of groups to keep
+	 * @param renames Comma-separated renames, as 'old=new'; may be empty
+	 * @return WhitelistGroupFilter
+	 * @throws IllegalArgumentException If a rename is not in the form 'old=new'
+	 */
+	public static WhitelistGroupFilter parse(String whitelist, String renames) {
+		
+		Map<String, String> renameMap = new HashMap<String, String>();
+		
+		for (String rename : renames.split(",")) {
+			
+			if (rename.trim().isEmpty())
+				continue;
+			
+			String[] parts = rename.split("=", -1);
+			if (parts.length != 2 || parts[0].trim().isEmpty() || parts[1].trim().isEmpty())
+				throw new IllegalArgumentException(String.format("group renames must be in the form 'old=new' (got '%s')", rename.trim()));
+			
+			renameMap.put(parts[0], parts[1]);
+			
+		}
+		
+		return new WhitelistGroupFilter(Arrays.asList(whitelist.split(",")), renameMap);
+		
+	}
+	
+	public List<String> apply(List<String> groups) {
+		
+		List<String> kept = new ArrayList<String>(groups.size());
+		Set<String> seen = groups.size() > 1 ? new HashSet<String>() : null;
+		
+		for (String group : groups) {
+			
+			String folded = fold(group);
+			String renamed = renames.get(folded);
+			if (renamed != null) {
+				group = renamed;
+				folded = fold(renamed);
+			}
+			
+			if (whitelist.contains(folded) && (seen == null || seen.add(folded)))
+				kept.add(group);
+			
+		}
+		
+		return kept;
+		
+	}
+	
+	private static String fold(String group) {
+		return group.trim().toLowerCase(Locale.ROOT);
+	}
+	
+}
@@ -0,0 +1,232 @@
+package com.defiancecraft.configure.items;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.ShortTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Converts item tags from player/chunk NBT into the serialized form
+ * Bukkit uses for ItemStacks, as DBObjects. Converters hold no mutable
+ * state, so one can be shared between threads.
+ */
+public class ItemConverter {
+
+	private static final String[] ENCHANTMENTS = new String[63];
+
+	static {
+
+		// Because everyone loves hardcoded enchantments!
+		ENCHANTMENTS[0] = "PROTECTION_ENVIRONMENTAL";
+		ENCHANTMENTS[1] = "PROTECTION_FIRE";
+		ENCHANTMENTS[2] = "PROTECTION_FALL";
+		ENCHANTMENTS[3] = "PROTECTION_EXPLOSIONS";
+		ENCHANTMENTS[4] = "PROTECTION_PROJECTILE";
+		ENCHANTMENTS[5] = "OXYGEN";
+		ENCHANTMENTS[6] = "WATER_WORKER";
+		ENCHANTMENTS[7] = "THORNS";
+		ENCHANTMENTS[8] = "DEPTH_STRIDER";
+		ENCHANTMENTS[16] = "DAMAGE_ALL";
+		ENCHANTMENTS[17] = "DAMAGE_UNDEAD";
+		ENCHANTMENTS[18] = "DAMAGE_ARTHROPODS";
+		ENCHANTMENTS[19] = "KNOCKBACK";
+		ENCHANTMENTS[20] = "FIRE_ASPECT";
+		ENCHANTMENTS[21] = "LOOT_BONUS_MOBS";
+		ENCHANTMENTS[32] = "DIG_SPEED";
+		ENCHANTMENTS[33] = "SILK_TOUCH";
+		ENCHANTMENTS[34] = "DURABILITY";
+		ENCHANTMENTS[35] = "LOOT_BONUS_BLOCKS";
+		ENCHANTMENTS[48] = "ARROW_DAMAGE";
+		ENCHANTMENTS[49] = "ARROW_KNOCKBACK";
+		ENCHANTMENTS[50] = "ARROW_FIRE";
+		ENCHANTMENTS[51] = "ARROW_INFINITE";
+		ENCHANTMENTS[61] = "LUCK";
+		ENCHANTMENTS[62] = "LURE";
+
+	}
+
+	private final ItemRegistry itemRegistry;
+
+	/**
+	 * Constructs an ItemConverter
+	 *
+	 * @param itemRegistry Registry to resolve string item IDs with
+	 */
+	public ItemConverter(ItemRegistry itemRegistry) {
+		this.itemRegistry = itemRegistry;
+	}
+
+	/**
+	 * Processes an item tag into a DBObject; the item tag should
+	 * be an item in the player's EnderItems/Inventory.
+	 *
+	 * Item tags take the structure shown here: {@link http://minecraft.gamepedia.com/Player.dat_format#Item_structure}
+	 * This structure is converted into serialized equivalents through
+	 * this method and the {@link #processMeta(MetaType, CompoundTag)} method.
+	 *
+	 * @param itemTag The item tag to process
+	 * @return A serialized DBObject
+	 */
+	public DBObject processItem(Tag itemTag) {
+
+		DBObject itemDBO = new BasicDBObject();
+		Map<String, Tag> item = ((CompoundTag) itemTag).getValue();
+
+		itemDBO.put("amount", (int)((ByteTag)item.get("Count")).getValue());
+		itemDBO.put("slot", (int)((ByteTag)item.get("Slot")).getValue());
+		itemDBO.put("damage", ((ShortTag)item.get("Damage")).getValue());
+
+		int itemId = getItemId(item.get("id"));
+
+		itemDBO.put("type", MaterialTable.getName(itemId));
+
+		// Process the meta using the material's meta type and the 'tag' tag.
+		Tag tag = item.get("tag");
+		if (tag != null)
+			itemDBO.put("meta", processMeta(MaterialTable.getMetaType(itemId), (CompoundTag)tag));
+
+		return itemDBO;
+
+	}
+
+	/**
+	 * Gets the numeric ID of an item from its 'id' tag
+	 *
+	 * @param idTag The 'id' tag
+	 * @return Numeric item ID
+	 */
+	public int getItemId(Tag idTag) {
+
+		// Apparently, IDs can be strings or shorts..
+		// Fucking Notch.
+		if (idTag instanceof StringTag)
+			return itemRegistry.getId(((StringTag)idTag).getValue());
+		else if (idTag instanceof ShortTag)
+			return ((ShortTag)idTag).getValue();
+
+		return 0;
+
+	}
+
+	/**
+	 * Processes meta for an individual item.
+	 *
+	 * @param metaType The MetaType of the item's material
+	 * @param tag The 'tag' tag on the item
+	 * @return A DBObject containing the metadata
+	 */
+	public DBObject processMeta(MetaType metaType, CompoundTag tag) {
+
+		DBObject metaDBO = new BasicDBObject();
+		Map<String, Tag> tagContents = tag.getValue();
+		metaDBO.put("==", "ItemMeta");
+		metaDBO.put("meta-type", metaType.getSerializedName());
+
+		metaType.serialize(this, tagContents, metaDBO);
+
+		// Serialize generic data too. This includes:
+		// Display names; lore; enchantments; repair cost; attributes; HideFlags.
+		Tag value;
+
+		if ((value = tagContents.get("display")) != null) {
+
+			Map<String, Tag> displayTag = ((CompoundTag)value).getValue();
+
+			// Item Display Names
+			if ((value = displayTag.get("Name")) != null)
+				metaDBO.put("display-name", ((StringTag)value).getValue());
+
+			// Item Lore
+			if ((value = displayTag.get("Lore")) != null) {
+				List<Tag> loreTags = ((ListTag)value).getValue();
+				List<String> lore = new ArrayList<String>(loreTags.size());
+				for (Tag loreTag : loreTags)
+					lore.add(((StringTag)loreTag).getValue());
+				metaDBO.put("lore", lore);
+			}
+
+		}
+
+		// Item Enchantments
+		if ((value = tagContents.get("ench")) != null)
+			metaDBO.put("enchants", serializeEnchantments(((ListTag)value).getValue()));
+
+		// Repair Cost
+		if ((value = tagContents.get("RepairCost")) != null)
+			metaDBO.put("repair-cost", ((IntTag)value).getValue());
+
+		// Hide Flags
+		if ((value = tagContents.get("HideFlags")) != null)
+			metaDBO.put("ItemFlags", ((IntTag)value).getValue());
+
+		return metaDBO;
+
+	}
+
+	/**
+	 * Serializes a colour integer value into a DBObject
+	 *
+	 * @param color Colour value
+	 * @return Serialized colour
+	 */
+	public DBObject serializeColor(int color) {
+
+		DBObject ret = new BasicDBObject(ConfigurationSerialization.SERIALIZED_TYPE_KEY, "Color");
+
+		ret.put("RED", color >> 16);
+		ret.put("GREEN", (color >> 8) & 0xFF);
+		ret.put("BLUE", color & 0xFF);
+
+		return ret;
+
+	}
+
+	/**
+	 * Serializes a list of enchantments into a DBObject
+	 *
+	 * @param enchants Enchants to serialize
+	 * @return DBObject
+	 */
+	public DBObject serializeEnchantments(List<Tag> enchants) {
+
+		DBObject ret = new BasicDBObject();
+
+		// Put enchants as key-value pairs (enchant => level)
+		for (Tag enchantTag : enchants) {
+			Map<String, Tag> enchant = ((CompoundTag)enchantTag).getValue();
+			int id = ((ShortTag)enchant.get("id")).getValue();
+			int lvl = ((ShortTag)enchant.get("lvl")).getValue();
+
+			ret.put(getEnchantmentName(id), lvl);
+		}
+
+		return ret;
+
+	}
+
+	/**
+	 * Because Bukkit is an arse and doesn't actually register
+	 * enchantments until Bukkit itself is loaded... BRING ON
+	 * THE HARDCODED ENCHANTMENTS.
+	 *
+	 * @param id ID of enchantment
+	 * @return Bukkit Enchantment name, or null if non-existent
+	 */
+	public static String getEnchantmentName(int id) {
+
+		return id >= 0 && id < ENCHANTMENTS.length ? ENCHANTMENTS[id] : null;
+
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.defiancecraft.configure.items;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.ShortTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import com.defiancecraft.configure.db.BsonBuffer;
+
+/**
+ * Encodes item tags from player/chunk NBT straight into BSON, producing
+ * the same documents as {@link ItemConverter} (field for field, in the
+ * same order, with the same types as the driver would encode them with),
+ * without building DBObjects along the way. Encoders hold no mutable
+ * state, so one can be shared between threads; the BsonBuffers written
+ * to cannot.
+ */
+public class ItemEncoder {
+
+	private final ItemConverter converter;
+
+	/**
+	 * Constructs an ItemEncoder
+	 *
+	 * @param converter ItemConverter to resolve item IDs with
+	 */
+	public ItemEncoder(ItemConverter converter) {
+		this.converter = converter;
+	}
+
+	/**
+	 * Encodes a list of item tags as an array of items
+	 *
+	 * @param name Name of the array
+	 * @param items Item tags, e.g. a player's EnderItems
+	 * @param out Buffer to write to
+	 * @see ItemConverter#processItem(Tag)
+	 */
+	public void encodeItems(String name, List<Tag> items, BsonBuffer out) {
+
+		int array = out.startArray(name);
+		for (int i = 0; i < items.size(); i++)
+			encodeItem(i, items.get(i), out);
+		out.end(array);
+
+	}
+
+	/**
+	 * Encodes an item tag as an element of an array
+	 *
+	 * @param index Index of the item in the array
+	 * @param itemTag The item tag to encode
+	 * @param out Buffer to write to
+	 * @see ItemConverter#processItem(Tag)
+	 */
+	public void encodeItem(int index, Tag itemTag, BsonBuffer out) {
+
+		Map<String, Tag> item = ((CompoundTag) itemTag).getValue();
+		int doc = out.startDocument(index);
+
+		out.putInt("amount", ((ByteTag)item.get("Count")).getValue());
+		out.putInt("slot", ((ByteTag)item.get("Slot")).getValue());
+		out.putInt("damage", ((ShortTag)item.get("Damage")).getValue());
+
+		int itemId = converter.getItemId(item.get("id"));
+
+		out.putString("type", MaterialTable.getName(itemId));
+
+		Tag tag = item.get("tag");
+		if (tag != null)
+			encodeMeta(MaterialTable.getMetaType(itemId), (CompoundTag)tag, out);
+
+		out.end(doc);
+
+	}
+
+	/**
+	 * Encodes an item's meta as its "meta" document
+	 *
+	 * @param metaType The MetaType of the item's material
+	 * @param tag The 'tag' tag on the item
+	 * @param out Buffer to write to
+	 * @see ItemConverter#processMeta(MetaType, CompoundTag)
+	 */
+	public void encodeMeta(MetaType metaType, CompoundTag tag, BsonBuffer out) {
+
+		Map<String, Tag> tagContents = tag.getValue();
+		int doc = out.startDocument("meta");
+		out.putString("==", "ItemMeta");
+		out.putString("meta-type", metaType.getSerializedName());
+
+		metaType.encode(this, tagContents, out);
+
+		Tag value;
+
+		if ((value = tagContents.get("display")) != null) {
+
+			Map<String, Tag> displayTag = ((CompoundTag)value).getValue();
+
+			if ((value = displayTag.get("Name")) != null)
+				out.putString("display-name", ((StringTag)value).getValue());
+
+			if ((value = displayTag.get("Lore")) != null)
+				encodeStrings("lore", ((ListTag)value).getValue(), out);
+
+		}
+
+		if ((value = tagContents.get("ench")) != null)
+			encodeEnchantments("enchants", ((ListTag)value).getValue(), out);
+
+		if ((value = tagContents.get("RepairCost")) != null)
+			out.putInt("repair-cost", ((IntTag)value).getValue());
+
+		if ((value = tagContents.get("HideFlags")) != null)
+			out.putInt("ItemFlags", ((IntTag)value).getValue());
+
+		out.end(doc);
+
+	}
+
+	/**
+	 * Encodes a list of string tags as an array of strings
+	 *
+	 * @param name Name of the array
+	 * @param strings String tags
+	 * @param out Buffer to write to
+	 */
+	public void encodeStrings(String name, List<Tag> strings, BsonBuffer out) {
+
+		int array = out.startArray(name);
+		for (int i = 0; i < strings.size(); i++)
+			out.putString(i, ((StringTag)strings.get(i)).getValue());
+		out.end(array);
+
+	}
+
+	/**
+	 * Encodes a colour integer value
+	 *
+	 * @param name Name of the colour document
+	 * @param color Colour value
+	 * @param out Buffer to write to
+	 * @see ItemConverter#serializeColor(int)
+	 */
+	public void encodeColor(String name, int color, BsonBuffer out) {
+
+		int doc = out.startDocument(name);
+		out.putString(ConfigurationSerialization.SERIALIZED_TYPE_KEY, "Color");
+		out.putInt("RED", color >> 16);
+		out.putInt("GREEN", (color >> 8) & 0xFF);
+		out.putInt("BLUE", color & 0xFF);
+		out.end(doc);
+
+	}
+
+	/**
+	 * Encodes a list of enchantments as a document of enchant => level.
+	 * As with {@link ItemConverter#serializeEnchantments(List)}, an
+	 * enchantment listed twice keeps its first position and last level.
+	 *
+	 * @param name Name of the enchantments document
+	 * @param enchants Enchants to encode
+	 * @param out Buffer to write to
+	 * @throws IllegalArgumentException If an enchantment is unknown
+	 */
+	public void encodeEnchantments(String name, List<Tag> enchants, BsonBuffer out) {
+
+		int doc = out.startDocument(name);
+
+		outer:
+		for (int i = 0; i < enchants.size(); i++) {
+
+			int id = getEnchantmentId(enchants.get(i));
+
+			// Lists are a handful of enchantments long, so
+			// looking for repeats is cheaper than a set
+			for (int j = 0; j < i; j++)
+				if (getEnchantmentId(enchants.get(j)) == id)
+					continue outer;
+
+			int lvl = getEnchantmentLevel(enchants.get(i));
+			for (int j = i + 1; j < enchants.size(); j++)
+				if (getEnchantmentId(enchants.get(j)) == id)
+					lvl = getEnchantmentLevel(enchants.get(j));
+
+			String enchantment = ItemConverter.getEnchantmentName(id);
+			if (enchantment == null)
+				throw new IllegalArgumentException(String.format("unknown enchantment %d", id));
+
+			out.putInt(enchantment, lvl);
+
+		}
+
+		out.end(doc);
+
+	}
+
+	private static int getEnchantmentId(Tag enchantTag) {
+		return ((ShortTag)((CompoundTag)enchantTag).getValue().get("id")).getValue();
+	}
+
+	private static int getEnchantmentLevel(Tag enchantTag) {
+		return ((ShortTag)((CompoundTag)enchantTag).getValue().get("lvl")).getValue();
+	}
+
+}
@@ -0,0 +1,189 @@
+package com.defiancecraft.configure.items;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * An immutable lookup of Minecraft item names (e.g. "minecraft:stone")
+ * to numeric item IDs.
+ *
+ * The default table is bundled in the jar as {@value #DEFAULT_RESOURCE};
+ * an alternative table can be loaded from a file in the same format, or
+ * from a JSON file in the format of minecraft-ids.grahamedgecombe.com's
+ * items.json.
+ *
+ * Every name is stored both with and without the "minecraft:" prefix,
+ * so a lookup is a single hash lookup with no per-call allocation.
+ */
+public final class ItemRegistry {
+
+	public static final String DEFAULT_RESOURCE = "/items.txt";
+	private static final String PREFIX = "minecraft:";
+
+	private final Map<String, Integer> ids;
+
+	private ItemRegistry(Map<String, Integer> ids) {
+		this.ids = Collections.unmodifiableMap(ids);
+	}
+
+	/**
+	 * Loads the item table bundled in the jar
+	 *
+	 * @return ItemRegistry
+	 * @throws IOException If the table could not be read
+	 */
+	public static ItemRegistry loadDefault() throws IOException {
+
+		InputStream in = ItemRegistry.class.getResourceAsStream(DEFAULT_RESOURCE);
+		if (in == null)
+			throw new IOException(String.format("bundled item table %s is missing", DEFAULT_RESOURCE));
+
+		try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			return loadTable(reader, DEFAULT_RESOURCE);
+		}
+
+	}
+
+	/**
+	 * Loads an item table from a file; files ending in .json are
+	 * read as items.json, and anything else as an "<id> <name>" table.
+	 *
+	 * @param file File to load
+	 * @return ItemRegistry
+	 * @throws IOException If the file could not be read, or is invalid
+	 */
+	public static ItemRegistry load(File file) throws IOException {
+
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			return file.getName().toLowerCase(Locale.ROOT).endsWith(".json")
+					? loadJson(reader, file.getPath())
+					: loadTable(reader, file.getPath());
+		}
+
+	}
+
+	/**
+	 * Reads an "<id> <name>" table, one pair per line. Blank lines and
+	 * lines beginning with '#' are ignored; later lines take precedence.
+	 */
+	private static ItemRegistry loadTable(Reader in, String source) throws IOException {
+
+		Map<String, Integer> ids = new HashMap<String, Integer>(1024);
+		BufferedReader reader = new BufferedReader(in);
+		String line;
+		int lineNumber = 0;
+
+		while ((line = reader.readLine()) != null) {
+
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.charAt(0) == '#')
+				continue;
+
+			int space = line.indexOf(' ');
+			if (space < 0)
+				throw new IOException(String.format("%s:%d: expected '<id> <name>'", source, lineNumber));
+
+			try {
+				put(ids, line.substring(space + 1).trim(), Integer.parseInt(line.substring(0, space)));
+			} catch (NumberFormatException e) {
+				throw new IOException(String.format("%s:%d: invalid item ID", source, lineNumber));
+			}
+
+		}
+
+		return new ItemRegistry(ids);
+
+	}
+
+	/**
+	 * Reads an items.json list of objects with `type` and
+	 * `text_type` fields.
+	 */
+	private static ItemRegistry loadJson(Reader reader, String source) throws IOException {
+
+		JsonItem[] items;
+		try {
+			items = new Gson().fromJson(reader, JsonItem[].class);
+		} catch (JsonParseException e) {
+			throw new IOException(String.format("%s: %s", source, e.getMessage()));
+		}
+
+		if (items == null)
+			throw new IOException(String.format("%s: empty item list", source));
+
+		Map<String, Integer> ids = new HashMap<String, Integer>(1024);
+		for (JsonItem item : items)
+			put(ids, item.text_type, item.type);
+
+		return new ItemRegistry(ids);
+
+	}
+
+	/**
+	 * Adds a name to the map, both with and without the prefix
+	 */
+	private static void put(Map<String, Integer> ids, String name, int id) {
+
+		name = name.toLowerCase(Locale.ROOT);
+		if (name.startsWith(PREFIX))
+			name = name.substring(PREFIX.length());
+
+		Integer boxed = id;
+		ids.put(name, boxed);
+		ids.put(PREFIX + name, boxed);
+
+	}
+
+	/**
+	 * Gets an item ID by name; the name may or may not have
+	 * the "minecraft:" prefix.
+	 *
+	 * @param name Name of item (Minecraft ID)
+	 * @return Item ID, or 0 (air) if it is unknown
+	 */
+	public int getId(String name) {
+
+		Integer id = ids.get(name);
+
+		// Names in player files are lower case already, so only
+		// fold the case if the exact name was not found.
+		if (id == null)
+			id = ids.get(name.toLowerCase(Locale.ROOT));
+
+		return id == null ? 0 : id;
+
+	}
+
+	/**
+	 * Gets the number of names in the registry (not
+	 * counting prefixed duplicates)
+	 *
+	 * @return Number of names
+	 */
+	public int size() {
+		return ids.size() / 2;
+	}
+
+	/**
+	 * An item as represented in items.json
+	 */
+	private static class JsonItem {
+		int type;
+		String text_type;
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.defiancecraft.configure.items;
+
+import org.bukkit.Material;
+
+/**
+ * Precomputed, array-indexed lookups from numeric item ID to
+ * Bukkit Material name and MetaType, built once from
+ * {@link Material#values()}.
+ */
+public final class MaterialTable {
+
+	private static final String[] NAMES;
+	private static final MetaType[] META_TYPES;
+
+	static {
+
+		int maxId = 0;
+		for (Material m : Material.values())
+			maxId = Math.max(maxId, getId(m));
+
+		NAMES = new String[maxId + 1];
+		META_TYPES = new MetaType[maxId + 1];
+
+		for (Material m : Material.values()) {
+			int id = getId(m);
+			if (id >= 0 && NAMES[id] == null) {
+				NAMES[id] = m.name();
+				META_TYPES[id] = MetaType.forMaterial(m.name());
+			}
+		}
+
+	}
+
+	private MaterialTable() {}
+
+	@SuppressWarnings("deprecation")
+	private static int getId(Material m) {
+		return m.getId();
+	}
+
+	/**
+	 * Gets the Bukkit Material name for an item ID
+	 *
+	 * @param id Item ID
+	 * @return Material name
+	 * @throws IllegalArgumentException If there is no Material with the ID
+	 */
+	public static String getName(int id) {
+
+		if (id < 0 || id >= NAMES.length || NAMES[id] == null)
+			throw new IllegalArgumentException(String.format("unknown item ID %d", id));
+
+		return NAMES[id];
+
+	}
+
+	/**
+	 * Gets the MetaType for an item ID
+	 *
+	 * @param id Item ID
+	 * @return MetaType; UNSPECIFIC for unknown IDs
+	 */
+	public static MetaType getMetaType(int id) {
+		return id >= 0 && id < META_TYPES.length && META_TYPES[id] != null ? META_TYPES[id] : MetaType.UNSPECIFIC;
+	}
+
+}
@@ -0,0 +1,223 @@
+package com.defiancecraft.configure.items;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import com.defiancecraft.configure.db.BsonBuffer;
+import com.mongodb.DBObject;
+
+/**
+ * The kinds of item meta which are serialized specially, each
+ * with a handler for the parts of the 'tag' tag specific to it.
+ * Generic parts of the tag (display name, lore, enchants, etc.)
+ * are handled by {@link ItemConverter#processMeta(MetaType, CompoundTag)}
+ * (or, when encoding straight to BSON, by {@link ItemEncoder}).
+ *
+ * To deserialize new tags or metadata, look through the source code for
+ * the following files/methods:
+ * - org.bukkit.craftbukkit.inventory.CraftItemStack#getItemMeta(ItemStack)
+ * - org.bukkit.craftbukkit.inventory.CraftMetaItem#CraftMetaItem(NBTTagCompound)
+ * - Any relevant class file as per the aforementioned getItemMeta() method.
+ */
+public enum MetaType {
+
+	// Written Book or Book & Quill
+	BOOK("BOOK") {
+		void serialize(ItemConverter converter, Map<String, Tag> tagContents, DBObject metaDBO) {
+
+			Tag tag;
+
+			if ((tag = tagContents.get("resolved")) != null)
+				metaDBO.put("resolved", ((ByteTag)tag).getValue());
+
+			if ((tag = tagContents.get("generation")) != null)
+				metaDBO.put("generation", ((IntTag)tag).getValue());
+
+			if ((tag = tagContents.get("author")) != null)
+				metaDBO.put("author", ((StringTag)tag).getValue());
+
+			if ((tag = tagContents.get("title")) != null)
+				metaDBO.put("title", ((StringTag)tag).getValue());
+
+			if ((tag = tagContents.get("pages")) != null) {
+				List<Tag> pageTags = ((ListTag)tag).getValue();
+				List<String> pages = new ArrayList<String>(pageTags.size());
+
+				for (Tag pageTag : pageTags)
+					pages.add(((StringTag)pageTag).getValue());
+
+				metaDBO.put("pages", pages);
+			}
+
+		}
+
+		void encode(ItemEncoder encoder, Map<String, Tag> tagContents, BsonBuffer out) {
+
+			Tag tag;
+
+			if ((tag = tagContents.get("resolved")) != null)
+				out.putInt("resolved", ((ByteTag)tag).getValue());
+
+			if ((tag = tagContents.get("generation")) != null)
+				out.putInt("generation", ((IntTag)tag).getValue());
+
+			if ((tag = tagContents.get("author")) != null)
+				out.putString("author", ((StringTag)tag).getValue());
+
+			if ((tag = tagContents.get("title")) != null)
+				out.putString("title", ((StringTag)tag).getValue());
+
+			if ((tag = tagContents.get("pages")) != null)
+				encoder.encodeStrings("pages", ((ListTag)tag).getValue(), out);
+
+		}
+	},
+
+	// Skull Item
+	SKULL("SKULL") {
+		void serialize(ItemConverter converter, Map<String, Tag> tagContents, DBObject metaDBO) {
+
+			// "skull-owner" is the only important part as of 1.8; there are more parts, however
+			Tag owner = tagContents.get("SkullOwner");
+			if (owner instanceof StringTag)
+				metaDBO.put("skull-owner", ((StringTag)owner).getValue());
+			else if (owner instanceof CompoundTag)
+				metaDBO.put("skull-owner", ((StringTag)((CompoundTag)owner).getValue().get("Name")).getValue());
+
+		}
+
+		void encode(ItemEncoder encoder, Map<String, Tag> tagContents, BsonBuffer out) {
+
+			Tag owner = tagContents.get("SkullOwner");
+			if (owner instanceof StringTag)
+				out.putString("skull-owner", ((StringTag)owner).getValue());
+			else if (owner instanceof CompoundTag)
+				out.putString("skull-owner", ((StringTag)((CompoundTag)owner).getValue().get("Name")).getValue());
+
+		}
+	},
+
+	// Leather Armour
+	LEATHER_ARMOR("LEATHER_ARMOR") {
+		void serialize(ItemConverter converter, Map<String, Tag> tagContents, DBObject metaDBO) {
+
+			// Checks for the existence of display -> color in NBT, and sets
+			// the color value on the metadata to a serialized version of this.
+			Tag display = tagContents.get("display");
+			if (display != null) {
+				Tag color = ((CompoundTag)display).getValue().get("color");
+				if (color != null)
+					metaDBO.put("color", converter.serializeColor(((IntTag)color).getValue()));
+			}
+
+		}
+
+		void encode(ItemEncoder encoder, Map<String, Tag> tagContents, BsonBuffer out) {
+
+			Tag display = tagContents.get("display");
+			if (display != null) {
+				Tag color = ((CompoundTag)display).getValue().get("color");
+				if (color != null)
+					encoder.encodeColor("color", ((IntTag)color).getValue(), out);
+			}
+
+		}
+	},
+
+	// Enchanted Books
+	ENCHANTED("ENCHANTED") {
+		void serialize(ItemConverter converter, Map<String, Tag> tagContents, DBObject metaDBO) {
+
+			Tag stored = tagContents.get("StoredEnchantments");
+			if (stored != null)
+				metaDBO.put("stored-enchants", converter.serializeEnchantments(((ListTag)stored).getValue()));
+
+		}
+
+		void encode(ItemEncoder encoder, Map<String, Tag> tagContents, BsonBuffer out) {
+
+			Tag stored = tagContents.get("StoredEnchantments");
+			if (stored != null)
+				encoder.encodeEnchantments("stored-enchants", ((ListTag)stored).getValue(), out);
+
+		}
+	},
+
+	// For everything else with meta...
+	UNSPECIFIC("UNSPECIFIC") {
+		void serialize(ItemConverter converter, Map<String, Tag> tagContents, DBObject metaDBO) {}
+		void encode(ItemEncoder encoder, Map<String, Tag> tagContents, BsonBuffer out) {}
+	};
+
+	private final String serializedName;
+
+	private MetaType(String serializedName) {
+		this.serializedName = serializedName;
+	}
+
+	/**
+	 * Gets the value of the serialized meta's "meta-type" key
+	 *
+	 * @return Serialized name
+	 */
+	public String getSerializedName() {
+		return serializedName;
+	}
+
+	/**
+	 * Gets the MetaType for a Bukkit Material name
+	 *
+	 * @param material The Bukkit Material name
+	 * @return MetaType
+	 */
+	static MetaType forMaterial(String material) {
+
+		switch (material) {
+			case "WRITTEN_BOOK":
+			case "BOOK_AND_QUILL":
+				return BOOK;
+			case "SKULL_ITEM":
+				return SKULL;
+			case "LEATHER_HELMET":
+			case "LEATHER_CHESTPLATE":
+			case "LEATHER_LEGGINGS":
+			case "LEATHER_BOOTS":
+				return LEATHER_ARMOR;
+			case "ENCHANTED_BOOK":
+				return ENCHANTED;
+			default:
+				return UNSPECIFIC;
+		}
+
+	}
+
+	/**
+	 * Serializes the parts of an item's 'tag' tag
+	 * specific to this MetaType
+	 *
+	 * @param converter ItemConverter, for nested serialization
+	 * @param tagContents Contents of the 'tag' tag
+	 * @param metaDBO DBObject to serialize into
+	 */
+	abstract void serialize(ItemConverter converter, Map<String, Tag> tagContents, DBObject metaDBO);
+
+	/**
+	 * Encodes the parts of an item's 'tag' tag specific to this
+	 * MetaType, as {@link #serialize(ItemConverter, Map, DBObject)}
+	 * serializes them
+	 *
+	 * @param encoder ItemEncoder, for nested encoding
+	 * @param tagContents Contents of the 'tag' tag
+	 * @param out Buffer to encode into, within the meta document
+	 */
+	abstract void encode(ItemEncoder encoder, Map<String, Tag> tagContents, BsonBuffer out);
+
+}
@@ -0,0 +1,50 @@
+package com.defiancecraft.configure.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count of events, safe to increment from any number of threads.
+ */
+public class Counter {
+
+	private final String name;
+	private final LongAdder count = new LongAdder();
+
+	Counter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Counts a single event
+	 */
+	public void increment() {
+		count.increment();
+	}
+
+	/**
+	 * Counts a number of events
+	 *
+	 * @param n Number of events
+	 */
+	public void add(long n) {
+		count.add(n);
+	}
+
+	/**
+	 * Gets the number of events counted since the last reset
+	 *
+	 * @return Number of events
+	 */
+	public long get() {
+		return count.sum();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	void reset() {
+		count.reset();
+	}
+
+}
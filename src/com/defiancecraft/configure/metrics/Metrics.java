@@ -0,0 +1,224 @@
+package com.defiancecraft.configure.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.defiancecraft.configure.util.Logger;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+/**
+ * Process-wide registry of counters and stage timers, in the same spirit
+ * as {@link Logger}: migrators look their metrics up by name once (e.g.
+ * in a static field), and record to them from any thread.
+ *
+ * At the end of a run, the metrics are logged and can be written as a
+ * JSON report; while it runs, snapshots can be appended to a file as
+ * JSON lines.
+ */
+public final class Metrics {
+
+	private static final long MB = 1024 * 1024;
+
+	private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<String, Timer>();
+	private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<String, Counter>();
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+	private static final Gson COMPACT_GSON = new Gson();
+
+	private static volatile long startTime = System.nanoTime();
+	private static ScheduledExecutorService snapshotter;
+
+	private Metrics() {}
+
+	/**
+	 * Gets (or creates) the timer for a stage
+	 *
+	 * @param name Name of the stage, e.g. "parse"
+	 * @return Timer
+	 */
+	public static Timer timer(String name) {
+		return TIMERS.computeIfAbsent(name, Timer::new);
+	}
+
+	/**
+	 * Gets (or creates) a counter
+	 *
+	 * @param name Name of the counter, e.g. "files.failed"
+	 * @return Counter
+	 */
+	public static Counter counter(String name) {
+		return COUNTERS.computeIfAbsent(name, Counter::new);
+	}
+
+	/**
+	 * Zeroes every metric and the heap peaks, and restarts the run clock
+	 */
+	public static void reset() {
+
+		for (Timer timer : TIMERS.values())
+			timer.reset();
+		for (Counter counter : COUNTERS.values())
+			counter.reset();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			pool.resetPeakUsage();
+
+		startTime = System.nanoTime();
+
+	}
+
+	/**
+	 * Takes a snapshot of every metric, with the elapsed time, the rate
+	 * of each counter and the current and peak heap usage
+	 *
+	 * @return JSON object
+	 */
+	public static JsonObject snapshot() {
+
+		long elapsed = System.nanoTime() - startTime;
+		double seconds = elapsed / 1e9;
+		JsonObject json = new JsonObject();
+		json.addProperty("timestamp", System.currentTimeMillis());
+		json.addProperty("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+		JsonObject counters = new JsonObject();
+		JsonObject rates = new JsonObject();
+		for (Counter counter : sorted(COUNTERS).values()) {
+			counters.addProperty(counter.getName(), counter.get());
+			rates.addProperty(counter.getName(), seconds > 0 ? counter.get() / seconds : 0d);
+		}
+		json.add("counters", counters);
+		json.add("ratesPerSec", rates);
+
+		JsonObject timers = new JsonObject();
+		for (Timer timer : sorted(TIMERS).values())
+			timers.add(timer.getName(), timer.toJson());
+		json.add("timers", timers);
+
+		// Peak usage of each heap pool; their sum bounds the peak heap
+		long used = 0, peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				used += pool.getUsage().getUsed();
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		JsonObject heap = new JsonObject();
+		heap.addProperty("usedMb", used / MB);
+		heap.addProperty("peakMb", peak / MB);
+		heap.addProperty("maxMb", Runtime.getRuntime().maxMemory() / MB);
+		json.add("heap", heap);
+
+		return json;
+
+	}
+
+	/**
+	 * Logs a summary of every timer and counter which recorded anything
+	 */
+	public static void log() {
+
+		JsonObject snapshot = snapshot();
+		double seconds = snapshot.get("elapsedMs").getAsLong() / 1000d;
+
+		Logger.log("[*] Metrics after %.1f s (timers are summed over threads):", false, seconds);
+
+		for (Timer timer : sorted(TIMERS).values()) {
+
+			if (timer.getCount() == 0)
+				continue;
+
+			Logger.log(
+					"[*]   %-12s %8d ms total, %8d calls, %8.1f us avg, %8.1f us p99",
+					false,
+					timer.getName(),
+					TimeUnit.NANOSECONDS.toMillis(timer.getTotal()),
+					timer.getCount(),
+					timer.getTotal() / 1000d / timer.getCount(),
+					timer.getPercentile(99) / 1000d
+			);
+
+		}
+
+		for (Counter counter : sorted(COUNTERS).values())
+			if (counter.get() > 0)
+				Logger.log("[*]   %-24s %10d (%.1f/sec)", false, counter.getName(), counter.get(), seconds > 0 ? counter.get() / seconds : 0d);
+
+		JsonObject heap = snapshot.getAsJsonObject("heap");
+		Logger.log("[*]   Peak heap: %d MB of %d MB", false, heap.get("peakMb").getAsLong(), heap.get("maxMb").getAsLong());
+
+	}
+
+	/**
+	 * Writes a snapshot of every metric to a file, as pretty-printed JSON
+	 *
+	 * @param file File to write to
+	 * @throws IOException If the file could not be written
+	 */
+	public static void writeReport(File file) throws IOException {
+
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			GSON.toJson(snapshot(), writer);
+		}
+
+	}
+
+	/**
+	 * Starts appending a snapshot to a file every `interval` seconds,
+	 * as one line of JSON each, until {@link #stopSnapshots()}
+	 *
+	 * @param file File to append to
+	 * @param interval Seconds between snapshots
+	 */
+	public static synchronized void startSnapshots(File file, long interval) {
+
+		stopSnapshots();
+
+		snapshotter = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "metrics-snapshots");
+			t.setDaemon(true);
+			return t;
+		});
+
+		snapshotter.scheduleAtFixedRate(() -> {
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+				writer.write(COMPACT_GSON.toJson(snapshot()));
+				writer.write('\n');
+			} catch (IOException e) {
+				Logger.log("[!] Could not write metrics snapshot to '%s' (%s)", false, file.getPath(), e.getMessage());
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+
+	}
+
+	/**
+	 * Stops appending snapshots, if started
+	 */
+	public static synchronized void stopSnapshots() {
+
+		if (snapshotter != null) {
+			snapshotter.shutdownNow();
+			snapshotter = null;
+		}
+
+	}
+
+	private static <T> Map<String, T> sorted(Map<String, T> map) {
+		return new TreeMap<String, T>(map);
+	}
+
+}
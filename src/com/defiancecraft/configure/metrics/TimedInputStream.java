@@ -0,0 +1,112 @@
+package com.defiancecraft.configure.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads another stream a block at a time, summing the time spent
+ * reading from it; e.g. to time the decompression of a GZIPInputStream
+ * separately from the parsing of what it decompresses.
+ *
+ * Reads are timed per block rather than per call, so that a caller
+ * reading a byte at a time does not pay for a clock read on each one.
+ * At most a block more than the caller reads is read from the stream.
+ *
+ * Streams must only be used by one thread.
+ */
+public class TimedInputStream extends InputStream {
+
+	private static final int BLOCK_SIZE = 2048;
+
+	private final InputStream in;
+	private final byte[] block = new byte[BLOCK_SIZE];
+	private int position;
+	private int limit;
+	private long nanos;
+
+	/**
+	 * Constructs a TimedInputStream
+	 *
+	 * @param in Stream to read and time; closed with this stream
+	 */
+	public TimedInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Gets the time spent reading from the wrapped stream so far
+	 *
+	 * @return Time in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public int read() throws IOException {
+
+		if (position == limit && !fill())
+			return -1;
+
+		return block[position++] & 0xFF;
+
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+
+		if (len == 0)
+			return 0;
+
+		if (position == limit) {
+
+			// Large reads skip the block
+			if (len >= BLOCK_SIZE) {
+				long start = System.nanoTime();
+				int read = in.read(b, off, len);
+				nanos += System.nanoTime() - start;
+				return read;
+			}
+
+			if (!fill())
+				return -1;
+
+		}
+
+		int read = Math.min(len, limit - position);
+		System.arraycopy(block, position, b, off, read);
+		position += read;
+
+		return read;
+
+	}
+
+	@Override
+	public int available() throws IOException {
+		return limit - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads the next block from the wrapped stream
+	 *
+	 * @return Whether anything was read, i.e. not at the end of the stream
+	 */
+	private boolean fill() throws IOException {
+
+		long start = System.nanoTime();
+		int read = in.read(block, 0, BLOCK_SIZE);
+		nanos += System.nanoTime() - start;
+
+		position = 0;
+		limit = Math.max(read, 0);
+
+		return read > 0;
+
+	}
+
+}
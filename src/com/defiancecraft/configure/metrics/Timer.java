@@ -0,0 +1,152 @@
+package com.defiancecraft.configure.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Records the latencies of a stage in a histogram, safe to record to
+ * from any number of threads. Recording never allocates or locks.
+ *
+ * Latencies are bucketed by powers of two (in nanoseconds), so
+ * percentiles are accurate to within a factor of two.
+ */
+public class Timer {
+
+	private static final int BUCKETS = 64;
+
+	private final String name;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+	Timer(String name) {
+
+		this.name = name;
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] = new LongAdder();
+
+	}
+
+	/**
+	 * Gets the current time, to pass to {@link #stop(long)}
+	 *
+	 * @return Current time in nanoseconds
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the time since `start`
+	 *
+	 * @param start Time the stage started, from {@link #start()}
+	 */
+	public void stop(long start) {
+		record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Records a single latency
+	 *
+	 * @param nanos Latency in nanoseconds
+	 */
+	public void record(long nanos) {
+
+		if (nanos < 0)
+			nanos = 0;
+
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+
+		// Bucket b holds latencies in [2^(b-1), 2^b)
+		buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+
+	}
+
+	/**
+	 * Gets the number of latencies recorded
+	 *
+	 * @return Number of latencies
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Gets the sum of the latencies recorded
+	 *
+	 * @return Total in nanoseconds
+	 */
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * Estimates a percentile, as the upper bound of the bucket
+	 * it falls into (or the maximum, if lower)
+	 *
+	 * @param percentile Percentile, between 0 and 100
+	 * @return Latency in nanoseconds
+	 */
+	public long getPercentile(double percentile) {
+
+		long[] counts = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += counts[i] = buckets[i].sum();
+
+		long rank = (long) Math.ceil(n * percentile / 100d);
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0)
+				return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+		}
+
+		return max.get();
+
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	void reset() {
+
+		count.reset();
+		total.reset();
+		max.reset();
+		for (LongAdder bucket : buckets)
+			bucket.reset();
+
+	}
+
+	/**
+	 * Serializes this timer's totals and percentiles
+	 *
+	 * @return JSON object
+	 */
+	JsonObject toJson() {
+
+		long n = getCount();
+		JsonObject json = new JsonObject();
+
+		json.addProperty("count", n);
+		json.addProperty("totalMs", TimeUnit.NANOSECONDS.toMillis(getTotal()));
+		json.addProperty("meanUs", n > 0 ? getTotal() / 1000d / n : 0d);
+		json.addProperty("p50Us", getPercentile(50) / 1000d);
+		json.addProperty("p90Us", getPercentile(90) / 1000d);
+		json.addProperty("p99Us", getPercentile(99) / 1000d);
+		json.addProperty("maxUs", max.get() / 1000d);
+
+		return json;
+
+	}
+
+}
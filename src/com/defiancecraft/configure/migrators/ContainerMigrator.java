@@ -0,0 +1,581 @@
+package com.defiancecraft.configure.migrators;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.cli.CommandLine;
+import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import com.defiancecraft.configure.db.BsonBuffer;
+import com.defiancecraft.configure.db.BulkWriter;
+import com.defiancecraft.configure.db.ConnectionFactory;
+import com.defiancecraft.configure.db.DocumentSink;
+import com.defiancecraft.configure.db.RawDBObject;
+import com.defiancecraft.configure.db.SinkType;
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.ItemEncoder;
+import com.defiancecraft.configure.metrics.Counter;
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.metrics.Timer;
+import com.defiancecraft.configure.nbt.NBTExtractor;
+import com.defiancecraft.configure.nbt.RegionFile;
+import com.defiancecraft.configure.util.Arguments;
+import com.defiancecraft.configure.util.Asker;
+import com.defiancecraft.configure.util.CheckpointJournal;
+import com.defiancecraft.configure.util.Logger;
+import com.defiancecraft.configure.util.WorkerPipeline;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+public class ContainerMigrator implements Migrator {
+
+	private static final int QUEUE_SIZE_PER_THREAD = 64;
+	private static final String TILE_ENTITIES = "Level/TileEntities";
+
+	private static final int JOURNAL_BATCH = 500;
+
+	// Indices of the run's counts
+	private static final int CHUNKS_READ = 0, CHUNKS_UNREADABLE = 1, WRITTEN = 2;
+
+	private static final Timer MAP        = Metrics.timer("map");
+	private static final Timer DECOMPRESS = Metrics.timer("decompress");
+	private static final Timer PARSE      = Metrics.timer("parse");
+	private static final Timer CONVERT    = Metrics.timer("convert");
+	private static final Timer WRITE      = Metrics.timer("write");
+	private static final Counter REGIONS_PROCESSED    = Metrics.counter("regions.processed");
+	private static final Counter REGIONS_FAILED       = Metrics.counter("regions.failed");
+	private static final Counter CHUNKS_PROCESSED     = Metrics.counter("chunks.processed");
+	private static final Counter CHUNKS_FAILED        = Metrics.counter("chunks.failed");
+	private static final Counter CONTAINERS_CONVERTED = Metrics.counter("containers.converted");
+	private static final Counter CONTAINERS_FAILED    = Metrics.counter("containers.failed");
+	private static final Counter ITEMS_CONVERTED      = Metrics.counter("items.converted");
+
+	// Each worker encodes its containers into its own buffer
+	private static final ThreadLocal<BsonBuffer> CONTAINER_BUFFERS = ThreadLocal.withInitial(() -> new BsonBuffer(16 * 1024));
+
+	// Created at the start of each migration; only read by the workers
+	private ItemConverter itemConverter;
+	private ItemEncoder itemEncoder;
+	private NBTExtractor extractor;
+	private String world;
+
+	public String getName() {
+		return "containers";
+	}
+
+	public String getDescription() {
+		return "Migrates the contents of chests, hoppers and other containers in region files to the database";
+	}
+
+	public boolean migrate(CommandLine cmd, MigrationContext context) {
+
+		boolean encodeDirectly;
+		int threads;
+		BulkWriter.Settings bulkSettings;
+		ConnectionFactory connections;
+		SinkType sinkType;
+
+		try {
+			MigratorSetup.rejectIncremental(cmd, this);
+			threads = Arguments.getPositiveInt(cmd, "threads", 1);
+			bulkSettings = context.applyWriteBudget(BulkWriter.Settings.fromCommandLine(cmd));
+			connections = ConnectionFactory.fromCommandLine(cmd);
+			extractor = MigratorSetup.createExtractor(cmd.getOptionValue("nbt-reader", "streaming"), TILE_ENTITIES);
+			encodeDirectly = MigratorSetup.isDirectEncoder(cmd.getOptionValue("bson-encoder", "direct"));
+			sinkType = SinkType.fromCommandLine(cmd);
+		} catch (IllegalArgumentException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
+
+		Asker asker = new Asker(
+			"region", "Where is the region directory?", "./world/region",
+			"world", "Name of the world", "world",
+			"dbHost", "MongoDB Host", "localhost",
+			"dbPort", "MongoDB Port", "27017",
+			"dbUser", "MongoDB User", "",
+			"dbPass", "MongoDB Pass", "",
+			"dbDB", "MongoDB Database", "minecraft"
+		);
+
+		asker.setAnswers(context.getAnswers());
+
+		try {
+			do {
+				asker.askQuestions();
+			} while (!asker.confirm());
+		} catch (IllegalStateException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
+
+		// Servers of a fleet may have worlds of the same name
+		world = context.qualify(asker.getAnswer("world"));
+
+		MigratorSetup.Target target = null;
+
+		try {
+
+			itemConverter = MigratorSetup.loadItems(cmd);
+			itemEncoder = encodeDirectly ? new ItemEncoder(itemConverter) : null;
+
+			// Containers are upserted by _id, so need no other index
+			target = MigratorSetup.connect(cmd, context, asker, connections, sinkType, bulkSettings, "containers");
+			DocumentSink sink = target.getSink();
+
+			/*
+			 * Try to open the region directory, and list its region files
+			 */
+			Path regionDirectory = context.resolve(asker.getAnswer("region"));
+			if (!Files.isDirectory(regionDirectory)) {
+				Logger.log("Error: region directory is non-existent/not a directory.");
+				return false;
+			}
+
+			List<Path> regionFiles = new ArrayList<Path>();
+			try (DirectoryStream<Path> listing = Files.newDirectoryStream(regionDirectory, (path) -> RegionFile.isRegionFile(path.getFileName().toString()))) {
+				for (Path regionFile : listing)
+					regionFiles.add(regionFile);
+			}
+			Collections.sort(regionFiles);
+
+			/*
+			 * Open the checkpoint journal of chunks; a chunk is journaled
+			 * once all of its containers have been written, and chunks
+			 * written by a previous run are skipped before being read
+			 */
+			CheckpointJournal journal = new CheckpointJournal(sinkType.getStateFile(cmd, "journal", context.qualify(getName()), "journal"), cmd.hasOption("resume"));
+			Map<String, Integer> unwritten = new ConcurrentHashMap<String, Integer>();
+			List<String> empty = new ArrayList<String>(JOURNAL_BATCH);
+
+			// Each container is written with its chunk's key; called on the sink's threads
+			sink.setListener((keys) -> {
+				List<String> written = new ArrayList<String>();
+				for (String key : keys)
+					if (unwritten.computeIfPresent(key, (chunk, remaining) -> remaining == 1 ? null : remaining - 1) == null)
+						written.add(key);
+				journal.record(written);
+			});
+
+			if (cmd.hasOption("resume"))
+				Logger.log("[*] Resuming from '%s'; skipping %d written chunks", false,
+						journal.getFile().getPath(), journal.getCompletedCount());
+
+			/*
+			 * Iterate over every chunk of every region; regions are mapped
+			 * on the pipeline's producer thread, chunks are decompressed
+			 * and converted on the worker threads (so chunks of several
+			 * regions are in flight at once), and containers are written
+			 * on this thread as the workers finish them.
+			 */
+			Logger.log("[*] Reading %d region file(s) using %d thread(s)...", false, regionFiles.size(), threads);
+
+			RegionChunks chunks = new RegionChunks(regionFiles, world, journal);
+			int[] counts = new int[3];
+			long started = System.currentTimeMillis();
+
+			WorkerPipeline<Chunk, List<Container>> pipeline = new WorkerPipeline<Chunk, List<Container>>(threads, threads * QUEUE_SIZE_PER_THREAD);
+			pipeline.run(
+				chunks,
+				(chunk) -> processChunk(chunk),
+				(chunk, containers) -> {
+
+					// Chunks without containers have nothing to flush, so
+					// are journaled straight away
+					if (containers.isEmpty()) {
+						empty.add(chunk.key);
+						if (empty.size() >= JOURNAL_BATCH) {
+							journal.record(empty);
+							empty.clear();
+						}
+					} else {
+						unwritten.put(chunk.key, containers.size());
+					}
+
+					long start = WRITE.start();
+					for (Container container : containers) {
+						sink.replaceOne(new BasicDBObject("_id", container.id), container.document, chunk.key);
+						counts[WRITTEN]++;
+					}
+					WRITE.stop(start);
+
+					CHUNKS_PROCESSED.increment();
+					counts[CHUNKS_READ]++;
+					chunk.region.containers += containers.size();
+					chunk.region.chunkDone();
+
+				},
+				(chunk, e) -> {
+					CHUNKS_FAILED.increment();
+					counts[CHUNKS_UNREADABLE]++;
+					Logger.log("[!] Could not read chunk %d,%d of %s (%s)", false,
+							chunk.region.file.getChunkX(chunk.index), chunk.region.file.getChunkZ(chunk.index),
+							chunk.region.file.getFile().getFileName(), e.toString());
+					Logger.trace(e);
+
+					chunk.region.failed++;
+					chunk.region.chunkDone();
+				}
+			);
+
+			long elapsed = System.currentTimeMillis() - started;
+			Logger.log(
+					"[*] Read %d chunks (%d failed) from %d region file(s) (%.1f MB) in %.1f s (%.1f chunks/sec, %.1f MB/sec)",
+					false,
+					counts[CHUNKS_READ],
+					counts[CHUNKS_UNREADABLE],
+					chunks.opened,
+					chunks.bytes / 1e6d,
+					elapsed / 1000d,
+					elapsed == 0 ? 0d : counts[CHUNKS_READ] * 1000d / elapsed,
+					elapsed == 0 ? 0d : chunks.bytes / 1e3d / elapsed
+			);
+
+			if (cmd.hasOption("resume"))
+				Logger.log("[*] Skipped %d chunks written by a previous run", false, chunks.skipped);
+			Logger.log("[*] Wrote %d containers", false, counts[WRITTEN]);
+
+			/*
+			 * Flush the remaining bulk writes
+			 */
+			Logger.log("[*] Flushing the remaining bulk writes to the DB");
+			sink.close();
+			journal.record(empty);
+			journal.close();
+			Logger.log("[*] Finished executing bulk writes! Woop woop!");
+
+			return true;
+
+		} catch (Exception e) {
+			MigratorSetup.logFailure(e);
+		} finally {
+			if (target != null)
+				target.close();
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Decompresses and parses a chunk, converting the items of each of
+	 * its containers (tile entities with an 'Items' list) into a
+	 * container document. This does not touch the DB, so it is safe to
+	 * call from multiple threads.
+	 *
+	 * Empty containers are skipped. A container which cannot be
+	 * converted is logged and skipped, rather than failing the chunk.
+	 *
+	 * @param chunk Chunk to process
+	 * @return The chunk's container documents
+	 * @throws IOException If the chunk could not be read or parsed
+	 */
+	private List<Container> processChunk(Chunk chunk) throws IOException {
+
+		long start = DECOMPRESS.start();
+		ByteBuffer nbt = chunk.region.file.readChunk(chunk.index);
+		DECOMPRESS.stop(start);
+
+		start = PARSE.start();
+		Map<String, Tag> tags = extractor.extract(new ByteArrayInputStream(nbt.array(), nbt.arrayOffset() + nbt.position(), nbt.remaining()));
+		PARSE.stop(start);
+
+		// Chunks which were never populated have no tile entities
+		if (!(tags.get(TILE_ENTITIES) instanceof ListTag))
+			return Collections.emptyList();
+
+		List<Container> containers = new ArrayList<Container>();
+		start = CONVERT.start();
+
+		for (Tag tileEntityTag : ((ListTag) tags.get(TILE_ENTITIES)).getValue()) {
+
+			Map<String, Tag> tileEntity = ((CompoundTag) tileEntityTag).getValue();
+			if (!(tileEntity.get("Items") instanceof ListTag))
+				continue;
+
+			List<Tag> items = ((ListTag) tileEntity.get("Items")).getValue();
+			if (items.isEmpty())
+				continue;
+
+			int x = ((IntTag) tileEntity.get("x")).getValue();
+			int y = ((IntTag) tileEntity.get("y")).getValue();
+			int z = ((IntTag) tileEntity.get("z")).getValue();
+			String type = tileEntity.get("id") instanceof StringTag ? ((StringTag) tileEntity.get("id")).getValue() : null;
+			String id = String.format("%s:%d,%d,%d", world, x, y, z);
+
+			try {
+				containers.add(new Container(id, createContainer(id, type, x, y, z, items)));
+				CONTAINERS_CONVERTED.increment();
+				ITEMS_CONVERTED.add(items.size());
+			} catch (RuntimeException e) {
+				CONTAINERS_FAILED.increment();
+				Logger.log("[!] Could not convert the %s at %d,%d,%d (%s)", false, type, x, y, z, e.toString());
+				Logger.trace(e);
+			}
+
+		}
+
+		CONVERT.stop(start);
+		return containers;
+
+	}
+
+	/**
+	 * Creates a container document, { _id, world, x, y, z, type,
+	 * items: [...] }; with the direct encoder, it is already encoded.
+	 *
+	 * @param id ID of the container; its world and position
+	 * @param type Tile entity ID, e.g. "Chest", or null
+	 * @param x Block x coordinate
+	 * @param y Block y coordinate
+	 * @param z Block z coordinate
+	 * @param items Item tags in the container
+	 * @return Container document
+	 */
+	private DBObject createContainer(String id, String type, int x, int y, int z, List<Tag> items) {
+
+		if (itemEncoder != null) {
+
+			BsonBuffer buffer = CONTAINER_BUFFERS.get();
+			buffer.reset();
+			int doc = buffer.startDocument();
+			buffer.putString("_id", id);
+			buffer.putString("world", world);
+			buffer.putInt("x", x);
+			buffer.putInt("y", y);
+			buffer.putInt("z", z);
+			buffer.putString("type", type);
+			itemEncoder.encodeItems("items", items, buffer);
+			buffer.end(doc);
+			return new RawDBObject(buffer.toByteArray());
+
+		}
+
+		List<DBObject> containerItems = new ArrayList<DBObject>(items.size());
+		for (Tag itemTag : items)
+			containerItems.add(itemConverter.processItem(itemTag));
+
+		DBObject containerDBO = new BasicDBObject();
+		containerDBO.put("_id", id);
+		containerDBO.put("world", world);
+		containerDBO.put("x", x);
+		containerDBO.put("y", y);
+		containerDBO.put("z", z);
+		containerDBO.put("type", type);
+		containerDBO.put("items", containerItems);
+		return containerDBO;
+
+	}
+
+	/**
+	 * Iterates over the chunks of region files, mapping each file as its
+	 * chunks are reached. Files which cannot be opened are logged and
+	 * skipped, as are chunks in the journal. Only used by the pipeline's
+	 * producer.
+	 */
+	private static class RegionChunks implements Iterator<Chunk> {
+
+		private final List<Path> files;
+		private final String world;
+		private final CheckpointJournal journal;
+		private int nextFile;
+
+		private Region region;
+		private int[] chunks;
+		private int nextChunk;
+
+		// Regions opened, their total size, and chunks skipped; read once the pipeline has finished
+		private volatile int opened;
+		private volatile long bytes;
+		private volatile int skipped;
+
+		RegionChunks(List<Path> files, String world, CheckpointJournal journal) {
+			this.files = files;
+			this.world = world;
+			this.journal = journal;
+		}
+
+		public boolean hasNext() {
+
+			while (region == null || nextChunk == chunks.length) {
+
+				if (nextFile == files.size())
+					return false;
+
+				Path file = files.get(nextFile++);
+
+				try {
+
+					long start = MAP.start();
+					RegionFile regionFile = RegionFile.open(file);
+					MAP.stop(start);
+
+					chunks = getUnwritten(regionFile);
+					nextChunk = 0;
+					region = new Region(regionFile, chunks.length, nextFile, files.size());
+					opened++;
+					bytes += regionFile.getSize();
+
+					// Regions with no chunks are done as soon as they are opened
+					if (chunks.length == 0)
+						region.done();
+
+				} catch (IOException e) {
+					REGIONS_FAILED.increment();
+					Logger.log("[!] Could not open region file %s (%s)", false, file.getFileName(), e.toString());
+					Logger.trace(e);
+				}
+
+			}
+
+			return true;
+
+		}
+
+		public Chunk next() {
+
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			int index = chunks[nextChunk++];
+			return new Chunk(region, index, getKey(region.file, index));
+
+		}
+
+		/**
+		 * Gets the indices of a region's chunks which are not in the journal
+		 */
+		private int[] getUnwritten(RegionFile regionFile) {
+
+			int[] all = regionFile.getChunks();
+			int[] unwritten = new int[all.length];
+			int count = 0;
+
+			for (int index : all)
+				if (!journal.isCompleted(getKey(regionFile, index)))
+					unwritten[count++] = index;
+
+			skipped += all.length - count;
+			return Arrays.copyOf(unwritten, count);
+
+		}
+
+		/**
+		 * Gets the journal key of a chunk; its world and chunk coordinates
+		 */
+		private String getKey(RegionFile regionFile, int index) {
+			return String.format("%s:chunk:%d,%d", world, regionFile.getChunkX(index), regionFile.getChunkZ(index));
+		}
+
+	}
+
+	/**
+	 * A region being migrated, and its progress. Once it is opened,
+	 * it is only updated on the writing thread.
+	 */
+	private static class Region {
+
+		private final RegionFile file;
+		private final int chunks;
+		private final int number;
+		private final int total;
+		private final long started = System.nanoTime();
+
+		private int remaining;
+		private int containers;
+		private int failed;
+
+		Region(RegionFile file, int chunks, int number, int total) {
+			this.file = file;
+			this.chunks = chunks;
+			this.number = number;
+			this.total = total;
+			this.remaining = chunks;
+		}
+
+		/**
+		 * Marks one of the region's chunks as written or failed
+		 */
+		void chunkDone() {
+
+			if (--remaining == 0)
+				done();
+
+		}
+
+		/**
+		 * Logs the region's progress and throughput, once all
+		 * of its chunks are done
+		 */
+		void done() {
+
+			REGIONS_PROCESSED.increment();
+
+			double seconds = (System.nanoTime() - started) / 1e9d;
+			Logger.log(
+					"[*] Region %s (%d/%d): %d chunks, %d containers, %d failed; %.1f MB in %.2f s (%.1f chunks/sec)",
+					false,
+					file.getFile().getFileName(),
+					number,
+					total,
+					chunks,
+					containers,
+					failed,
+					file.getSize() / 1e6d,
+					seconds,
+					seconds == 0 ? 0d : chunks / seconds
+			);
+
+		}
+
+	}
+
+	/**
+	 * A chunk of a region, waiting to be read
+	 */
+	private static class Chunk {
+
+		private final Region region;
+		private final int index;
+		private final String key;
+
+		Chunk(Region region, int index, String key) {
+			this.region = region;
+			this.index = index;
+			this.key = key;
+		}
+
+	}
+
+	/**
+	 * A converted container, waiting to be written to the DB
+	 */
+	private static class Container {
+
+		private final String id;
+		private final DBObject document;
+
+		Container(String id, DBObject document) {
+			this.id = id;
+			this.document = document;
+		}
+
+	}
+
+}
@@ -1,86 +1,80 @@
 package com.defiancecraft.configure.migrators;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.cli.CommandLine;
-import org.bukkit.Material;
-import org.bukkit.configuration.serialization.ConfigurationSerialization;
-import org.jnbt.ByteTag;
-import org.jnbt.CompoundTag;
-import org.jnbt.IntTag;
+import org.bson.types.ObjectId;
 import org.jnbt.ListTag;
-import org.jnbt.NBTInputStream;
-import org.jnbt.ShortTag;
-import org.jnbt.StringTag;
 import org.jnbt.Tag;
 
+import com.defiancecraft.configure.db.BsonBuffer;
+import com.defiancecraft.configure.db.BulkWriter;
+import com.defiancecraft.configure.db.ConnectionFactory;
+import com.defiancecraft.configure.db.DocumentSink;
+import com.defiancecraft.configure.db.IndexBuilder;
+import com.defiancecraft.configure.db.IndexSpec;
+import com.defiancecraft.configure.db.RawDBObject;
+import com.defiancecraft.configure.db.SinkType;
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.ItemEncoder;
+import com.defiancecraft.configure.metrics.Counter;
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.metrics.TimedInputStream;
+import com.defiancecraft.configure.metrics.Timer;
+import com.defiancecraft.configure.nbt.NBTExtractor;
+import com.defiancecraft.configure.util.Arguments;
 import com.defiancecraft.configure.util.Asker;
+import com.defiancecraft.configure.util.CheckpointJournal;
+import com.defiancecraft.configure.util.FileManifest;
 import com.defiancecraft.configure.util.Logger;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.defiancecraft.configure.util.PlayerFileScanner;
+import com.defiancecraft.configure.util.WorkerPipeline;
 import com.mongodb.BasicDBObject;
-import com.mongodb.BulkWriteOperation;
 import com.mongodb.DB;
-import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.DBRef;
-import com.mongodb.MongoClient;
-import com.mongodb.MongoCredential;
 import com.mongodb.MongoException;
-import com.mongodb.ServerAddress;
-import com.mongodb.WriteConcern;
 
 public class EnderChestMigrator implements Migrator {
 
-	private static final String ITEMS_JSON_URL = "http://minecraft-ids.grahamedgecombe.com/items.json";
-	private static final String USER_AGENT 	   = "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/41.0.2272.89 Safari/537.36";
-	private static final int BUFFER_SIZE       = 8192;
-	private static final Map<Integer, String> ENCHANTMENTS = new HashMap<Integer, String>();
+	private static final int QUEUE_SIZE_PER_THREAD = 64;
+	private static final int DEFAULT_LOOKUP_BATCH  = 500;
+	private static final String ENDER_ITEMS = "EnderItems";
 	
-	static {
-		
-		// Because everyone loves hardcoded enchantments!
-		ENCHANTMENTS.put(0, "PROTECTION_ENVIRONMENTAL");
-		ENCHANTMENTS.put(1, "PROTECTION_FIRE");
-		ENCHANTMENTS.put(2, "PROTECTION_FALL");
-		ENCHANTMENTS.put(3, "PROTECTION_EXPLOSIONS");
-		ENCHANTMENTS.put(4, "PROTECTION_PROJECTILE");
-		ENCHANTMENTS.put(5, "OXYGEN");
-		ENCHANTMENTS.put(6, "WATER_WORKER");
-		ENCHANTMENTS.put(7, "THORNS");
-		ENCHANTMENTS.put(8, "DEPTH_STRIDER");
-		ENCHANTMENTS.put(16, "DAMAGE_ALL");
-		ENCHANTMENTS.put(17, "DAMAGE_UNDEAD");
-		ENCHANTMENTS.put(18, "DAMAGE_ARTHROPODS");
-		ENCHANTMENTS.put(19, "KNOCKBACK");
-		ENCHANTMENTS.put(20, "FIRE_ASPECT");
-		ENCHANTMENTS.put(21, "LOOT_BONUS_MOBS");
-		ENCHANTMENTS.put(32, "DIG_SPEED");
-		ENCHANTMENTS.put(33, "SILK_TOUCH");
-		ENCHANTMENTS.put(34, "DURABILITY");
-		ENCHANTMENTS.put(35, "LOOT_BONUS_BLOCKS");
-		ENCHANTMENTS.put(48, "ARROW_DAMAGE");
-		ENCHANTMENTS.put(49, "ARROW_KNOCKBACK");
-		ENCHANTMENTS.put(50, "ARROW_FIRE");
-		ENCHANTMENTS.put(51, "ARROW_INFINITE");
-		ENCHANTMENTS.put(61, "LUCK");
-		ENCHANTMENTS.put(62, "LURE");
-		
-	}
+	private static final Timer READ       = Metrics.timer("read");
+	private static final Timer DECOMPRESS = Metrics.timer("decompress");
+	private static final Timer PARSE      = Metrics.timer("parse");
+	private static final Timer CONVERT    = Metrics.timer("convert");
+	private static final Timer LOOKUP     = Metrics.timer("lookup");
+	private static final Timer WRITE      = Metrics.timer("write");
+	private static final Counter FILES_PROCESSED = Metrics.counter("files.processed");
+	private static final Counter FILES_FAILED    = Metrics.counter("files.failed");
+	private static final Counter ITEMS_CONVERTED = Metrics.counter("items.converted");
+	
+	// Each worker encodes its players' items into its own buffer
+	private static final ThreadLocal<BsonBuffer> ITEM_BUFFERS = ThreadLocal.withInitial(() -> new BsonBuffer(16 * 1024));
+	
+	// Created at the start of each migration; only read by the workers
+	private ItemConverter itemConverter;
+	private ItemEncoder itemEncoder;
+	private NBTExtractor extractor;
+	
+	// Only used by the writing thread
+	private BsonBuffer bankBuffer;
 	
 	public String getName() {
 		return "enderchest";
@@ -90,8 +84,36 @@ public class EnderChestMigrator implements Migrator {
 		return "Migrates enderchest data to the database for the EnderStorage module";
 	}
 	
-	public boolean migrate(CommandLine cmd) {
+	public List<IndexSpec> getIndexes() {
+		return Arrays.asList(
+			IndexSpec.unique("users", "uuid"),
+			IndexSpec.unique("banks", "user")
+		);
+	}
+	
+	public boolean migrate(CommandLine cmd, MigrationContext context) {
 
+		boolean incremental = cmd.hasOption("incremental");
+		boolean encodeDirectly;
+		int threads;
+		int lookupBatch;
+		BulkWriter.Settings bulkSettings;
+		ConnectionFactory connections;
+		SinkType sinkType;
+		
+		try {
+			threads = Arguments.getPositiveInt(cmd, "threads", 1);
+			lookupBatch = Arguments.getPositiveInt(cmd, "lookup-batch", DEFAULT_LOOKUP_BATCH);
+			bulkSettings = context.applyWriteBudget(BulkWriter.Settings.fromCommandLine(cmd));
+			connections = ConnectionFactory.fromCommandLine(cmd);
+			extractor = MigratorSetup.createExtractor(cmd.getOptionValue("nbt-reader", "streaming"), ENDER_ITEMS);
+			encodeDirectly = MigratorSetup.isDirectEncoder(cmd.getOptionValue("bson-encoder", "direct"));
+			sinkType = SinkType.fromCommandLine(cmd);
+		} catch (IllegalArgumentException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
+		
 		Asker asker = new Asker(
 			"playerData", "Where is the playerdata directory?", "./world/playerdata",
 			"dbHost", "MongoDB Host", "localhost",
@@ -101,122 +123,211 @@ public class EnderChestMigrator implements Migrator {
 			"dbDB", "MongoDB Database", "minecraft"
 		);
 		
-		do {
-			asker.askQuestions();
-		} while (!asker.confirm());
+		asker.setAnswers(context.getAnswers());
+		
+		try {
+			do {
+				asker.askQuestions();
+			} while (!asker.confirm());
+		} catch (IllegalStateException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
 		
-		ServerAddress addr;
-		MongoClient client;
-		DB db;
+		MigratorSetup.Target target = null;
+		IndexBuilder indexes = null;
+		DB db = null;
 		
 		try {
 			
-			/*
-			 * Get the item list
-			 */
-			Logger.log("[*] Obtaining the list of items...", true);
-			JsonItem[] jsonItems = getListOfItems();
-			JsonItem.registerItems(jsonItems);
-				
-			/*
-			 * Attempt to connect to DB
-			 */
-			Logger.log("[*] Attempting to connect to DB", true);
+			itemConverter = MigratorSetup.loadItems(cmd);
+			itemEncoder = encodeDirectly ? new ItemEncoder(itemConverter) : null;
+			bankBuffer = new BsonBuffer(16 * 1024);
 			
-			addr = new ServerAddress(asker.getAnswer("dbHost"), Integer.parseInt(asker.getAnswer("dbPort")));
-		
-			if (!asker.getAnswer("dbPass").isEmpty()) {
-				MongoCredential cred = MongoCredential.createMongoCRCredential(
-						asker.getAnswer("dbUser"),
-						asker.getAnswer("dbDB"),
-						asker.getAnswer("dbPass").toCharArray());
-				client = new MongoClient(addr, Arrays.asList(cred));
+			target = MigratorSetup.connect(cmd, context, asker, connections, sinkType, bulkSettings, "banks");
+			DocumentSink sink = target.getSink();
+			UserResolver resolver;
+			
+			if (target.getDB() != null) {
+				
+				db = target.getDB();
+				
+				// Users are looked up, and banks upserted, by these;
+				// a fleet creates them once, for every server
+				if (!context.isFleet()) {
+					indexes = new IndexBuilder(getIndexes(), cmd.hasOption("defer-indexes"), cmd.hasOption("remove-duplicates"));
+					indexes.createBeforeLoad(db);
+				}
+				
+				resolver = new UserResolver(db, db.getCollection("users"));
+				
 			} else {
-				client = new MongoClient(addr);
+				
+				// Dry run; users get synthetic IDs
+				resolver = UserResolver.offline("users");
+				
 			}
 			
-			db = client.getDB(asker.getAnswer("dbDB"));
-			
-			/*
-			 * Get collections, and generate bulk operation
-			 */
-			DBCollection usersDBC = db.getCollection("users");
-			DBCollection banksDBC = db.getCollection("banks");
-			
-			// Create the bulk op.
-			BulkWriteOperation bulkOperation = banksDBC.initializeUnorderedBulkOperation();
-			
-			Logger.log("[*] Created connection to database", true);
-			
 			/*
 			 * Try to open playerData directory
 			 */
-			File playerDataDirectory = new File(asker.getAnswer("playerData"));
-			if (!playerDataDirectory.isDirectory()) {
+			Path playerDataDirectory = context.resolve(asker.getAnswer("playerData"));
+			if (!Files.isDirectory(playerDataDirectory)) {
 				Logger.log("Error: playerdata directory is non-existent/not a directory.");
 				return false;
 			}
 			
-			// List playerdata files if they are in UUID format
-			File[] playerFiles = playerDataDirectory.listFiles(new FilenameFilter() {
-				public boolean accept(File dir, String name) {
-					return name.matches("^[a-zA-Z0-9]{8}-(?:[a-zA-Z0-9]{4}-){3}[a-zA-Z0-9]{12}\\.dat$");
-				}
-			});
+			/*
+			 * Open the checkpoint journal; players that were
+			 * completed by a previous run are skipped
+			 */
+			CheckpointJournal journal = new CheckpointJournal(sinkType.getStateFile(cmd, "journal", context.qualify(getName()), "journal"), cmd.hasOption("resume"));
+			sink.setListener(journal::record);
+			
+			if (cmd.hasOption("resume"))
+				Logger.log("[*] Resuming from '%s'", false, journal.getFile().getPath());
 			
 			/*
-			 * Iterate over player files
+			 * In incremental mode, load the manifest from the previous
+			 * run; files whose size and mtime are unchanged are skipped
+			 * without reading them.
 			 */
+			File manifestFile = sinkType.getStateFile(cmd, "manifest", context.qualify(getName()), "manifest");
+			FileManifest previousManifest = incremental ? FileManifest.load(manifestFile) : null;
+			FileManifest manifest = new FileManifest();
+			int[] counts = new int[FileStatus.values().length];
 			
-			Logger.log("[*] Beginning iteration over player files...", false);
-			int processed = 0;
+			/*
+			 * Iterate over player files as they are listed; files are parsed
+			 * and converted on the worker threads, and banks are written on
+			 * this thread as the workers finish them. The filter runs on the
+			 * pipeline's producer thread.
+			 */
+			AtomicInteger completed = new AtomicInteger();
+			AtomicInteger stillPresent = new AtomicInteger();
+			Queue<String> journaled = new ConcurrentLinkedQueue<String>();
+			Set<String> claimed = context.isFleet() ? claimPlayerFiles(playerDataDirectory, context) : null;
 			
-			for (File playerFile : playerFiles) {
-
-				// Process the player!
-				try {
-					Logger.log("[*] Processing user file '%s'", true, playerFile.getName());
-					processPlayerFile(db, usersDBC, bulkOperation, playerFile);
-				} catch (Exception e) {
-					Logger.log("[!] Invalid userdata file: %s", false, playerFile.getName());
-					//[DEBUG]
-					e.printStackTrace();
-					//[/DEBUG]
+			// Files are processed as they are listed, so a listing of
+			// their names alone gives the total for the progress log
+			int total = PlayerFileScanner.count(playerDataDirectory, (uuid) -> (claimed == null || claimed.contains(uuid)) && !journal.isCompleted(uuid));
+			
+			Logger.log("[*] Beginning iteration over player files using %d thread(s)...", false, threads);
+			int[] processed = new int[1];
+			List<PlayerBank> pending = new ArrayList<PlayerBank>(lookupBatch);
+			List<String> empty = new ArrayList<String>(lookupBatch);
+			
+			try (PlayerFileScanner scanner = new PlayerFileScanner(playerDataDirectory, (uuid) -> {
+				if (claimed != null && !claimed.contains(uuid))
+					return false;
+				if (incremental && previousManifest.get(uuid + ".dat") != null)
+					stillPresent.incrementAndGet();
+				if (journal.isCompleted(uuid)) {
+					completed.incrementAndGet();
+					if (incremental)
+						journaled.add(uuid + ".dat");
+					return false;
 				}
+				return true;
+			})) {
 				
-				// Log the number of processed users, and percent completed
-				if (++processed % 100 == 0)
-					Logger.log(
-							"[*] (%d%%) Processed %d users",
-							false,
-							(int)((double)processed / playerFiles.length * 100),
-							processed
-					);
+				WorkerPipeline<Path, PlayerBank> pipeline = new WorkerPipeline<Path, PlayerBank>(threads, threads * QUEUE_SIZE_PER_THREAD);
+				pipeline.run(
+					scanner,
+					(playerFile) -> {
+						Logger.log("[*] Processing user file '%s'", true, playerFile.getFileName());
+						return processPlayerFile(playerFile, previousManifest);
+					},
+					(playerFile, bank) -> {
+						counts[bank.status.ordinal()]++;
+						if (bank.manifestEntry != null)
+							manifest.put(playerFile.getFileName().toString(), bank.manifestEntry);
+						
+						// Items are null for unchanged players and players with
+						// no ender items; they have nothing to flush, so are
+						// journaled straight away.
+						if (bank.items != null)
+							pending.add(bank);
+						else
+							empty.add(bank.uuid);
+						
+						if (pending.size() >= lookupBatch)
+							writeBanks(resolver, sink, pending);
+						if (empty.size() >= lookupBatch) {
+							journal.record(empty);
+							empty.clear();
+						}
+						
+						FILES_PROCESSED.increment();
+						logProgress(++processed[0], total);
+					},
+					(playerFile, e) -> {
+						// Keep the old manifest entry so the file is retried next run
+						String name = playerFile.getFileName().toString();
+						if (incremental && previousManifest.get(name) != null)
+							manifest.put(name, previousManifest.get(name));
+						
+						FILES_FAILED.increment();
+						Logger.log("[!] Invalid userdata file: %s (%s)", false, name, e.toString());
+						Logger.trace(e);
+						logProgress(++processed[0], total);
+					}
+				);
 				
 			}
 			
+			if (cmd.hasOption("resume"))
+				Logger.log("[*] Skipped %d player files completed by a previous run", false, completed.get());
+			
+			// Files skipped by the journal were not read, so keep their old
+			// manifest entries; the manifest is only written on this thread,
+			// so they are added once the pipeline has finished
+			for (String name : journaled)
+				if (previousManifest.get(name) != null)
+					manifest.put(name, previousManifest.get(name));
+			
+			writeBanks(resolver, sink, pending);
+			journal.record(empty);
+			Logger.log(
+					"[*] Resolved %d users (%d created) in %d round trips; saved %d round trips",
+					false,
+					resolver.getResolved(),
+					resolver.getCreated(),
+					resolver.getRoundTrips(),
+					resolver.getRoundTripsSaved()
+			);
+			
 			/*
-			 * Execute bulk write operation
+			 * Flush the remaining bulk writes
 			 */
-			Logger.log("[*] Executing the bulk write operation on the DB (warning: this could take a while)");
-			bulkOperation.execute(WriteConcern.MAJORITY);
-			Logger.log("[*] Finished executing bulk write operation! Woop woop!");
+			Logger.log("[*] Flushing the remaining bulk writes to the DB");
+			sink.close();
+			journal.close();
+			Logger.log("[*] Finished executing bulk writes! Woop woop!");
+			
+			if (indexes != null)
+				indexes.createAfterLoad(db);
+			
+			// Only save the manifest once everything has been flushed
+			if (incremental) {
+				manifest.save(manifestFile);
+				Logger.log(
+						"[*] Incremental summary: %d new, %d changed, %d unchanged, %d deleted players",
+						false,
+						counts[FileStatus.NEW.ordinal()],
+						counts[FileStatus.CHANGED.ordinal()],
+						counts[FileStatus.UNCHANGED.ordinal()],
+						previousManifest.size() - stillPresent.get()
+				);
+			}
 			
 			return true;
 			
-		} catch (MongoException e) {
-			Logger.log("Error: database error; %s.", false, e.getMessage());
-		} catch (NumberFormatException e) {
-			Logger.log("Error: invalid port.");
-		} catch (UnknownHostException e) {
-			Logger.log("Error: unknown host.");
-		} catch (MalformedURLException e) {
-			Logger.log("Error: malformed URL.");
-		} catch (IOException e) {
-			Logger.log("Error: IOException; stack trace below");
-			e.printStackTrace();
 		} catch (Exception e) {
-			Logger.log("Error: shit. Apparently, it's a '%s'; stack trace below", false, e.getClass().getSimpleName());
+			MigratorSetup.logFailure(e);
+		} finally {
+			if (target != null)
+				target.close();
 		}
 		
 		return false;
@@ -224,396 +335,274 @@ public class EnderChestMigrator implements Migrator {
 	}
 	
 	/**
-	 * Processes a single player file, adding their bank to
-	 * the DB via `bulkOperation`, and, if necessary, creating
-	 * the user via `users`.
-	 *
-	 * @param db Database object to use
-	 * @param users Users DBCollection
-	 * @param bulkOperation BulkWriteOperation to use to add user's bank
-	 * @param playerFile Player file to process
-	 * @throws IOException If an IO error occurs
-	 * @throws MongoException If a DB error occurs
+	 * Lists every player file, and claims them from the rest of the fleet;
+	 * a player on several servers is migrated from the first server in
+	 * the manifest which has a player file for them.
+	 * 
+	 * @param playerDataDirectory Directory of player files
+	 * @param context Context of the migration
+	 * @return UUIDs of the players this server migrates
+	 * @throws IOException If the directory could not be listed
+	 * @throws InterruptedException If interrupted while waiting for the fleet
 	 */
-	private void processPlayerFile(DB db, DBCollection users, BulkWriteOperation bulkOperation, File playerFile) throws IOException, MongoException {
-		
-		NBTInputStream in = new NBTInputStream(new FileInputStream(playerFile), true);
-		CompoundTag root = (CompoundTag) in.readTag();
-		in.close();
-		
-		ListTag items = (ListTag) root.getValue().get("EnderItems");
-		
-		// Skip player if they have no ender items
-		if (items.getValue().size() == 0)
-			return;
-
-		DBObject bankDBO = new BasicDBObject();
-		List<DBObject> bankItems = new ArrayList<DBObject>();
-		
-		// Iterate over player's EnderItems, adding to the
-		// list of bankItems the processed [serialized] item.
-		for (Tag itemTag : items.getValue())
-			bankItems.add(processItem(itemTag));
+	static Set<String> claimPlayerFiles(Path playerDataDirectory, MigrationContext context) throws IOException, InterruptedException {
 		
-		// Attempt to obtain a reference to the user.
-		String uuid = playerFile.getName().replace(".dat", "");
-		DBRef userRef = getReferenceToUser(db, users, uuid);
+		Map<String, Path> files = new LinkedHashMap<String, Path>();
+		try (PlayerFileScanner listing = new PlayerFileScanner(playerDataDirectory, (uuid) -> true)) {
+			while (listing.hasNext()) {
+				Path playerFile = listing.next();
+				files.put(PlayerFileScanner.getUUID(playerFile), playerFile);
+			}
+		}
 		
-		bankDBO.put("items", bankItems);
-		bankDBO.put("user", userRef);
+		Set<String> claimed = context.deduplicate(files, (first, later) -> first).keySet();
+		Logger.log("[*] %d of %d player files are migrated by an earlier server in the fleet", false, files.size() - claimed.size(), files.size());
 		
-		// Finally, insert the DBObject!
-		bulkOperation.insert(bankDBO);
+		return claimed;
 		
 	}
-
+	
 	/**
-	 * Processes an item tag into a DBObject; the item tag should
-	 * be an item in the player's EnderItems/Inventory.
-	 * 
-	 * Item tags take the structure shown here: {@link http://minecraft.gamepedia.com/Player.dat_format#Item_structure}
-	 * This structure is converted into serialized equivalents through
-	 * this method and the {@link #processMeta(String, CompoundTag)} method.
-	 * 
-	 * To deserialize new tags or metadata, look through the source code for
-	 * the following files/methods:
-	 * - org.bukkit.craftbukkit.inventory.CraftItemStack#getItemMeta(ItemStack)
-	 * - org.bukkit.craftbukkit.inventory.CraftMetaItem#CraftMetaItem(NBTTagCompound)
-	 * - Any relevant class file as per the aforementioned getItemMeta() method. 
+	 * Logs the number and percentage of processed users every 100 users.
 	 * 
-	 * @param itemTag The item tag to process
-	 * @return A serialized DBObject
+	 * @param processed Number of processed users
+	 * @param total Total number of users
 	 */
-	@SuppressWarnings("deprecation")
-	private DBObject processItem(Tag itemTag) {
-		
-		DBObject itemDBO = new BasicDBObject();
-		CompoundTag item = (CompoundTag) itemTag;
-		
-		itemDBO.put("amount", (int)((ByteTag)item.getValue().get("Count")).getValue());
-		itemDBO.put("slot", (int)((ByteTag)item.getValue().get("Slot")).getValue());
-		itemDBO.put("damage", ((ShortTag)item.getValue().get("Damage")).getValue());
-		
-		// Apparently, IDs can be strings or shorts..
-		// Fucking Notch.
-		int itemId = 0;
-		
-		if (item.getValue().get("id") instanceof StringTag) {
-			String minecraftId = ((StringTag)item.getValue().get("id")).getValue();
-			itemId = JsonItem.getIdFromName(minecraftId);
-		} else if (item.getValue().get("id") instanceof ShortTag) {
-			itemId = ((ShortTag)item.getValue().get("id")).getValue();
-		}
+	private void logProgress(int processed, int total) {
 		
-		String bukkitId = Material.getMaterial(itemId).name().toUpperCase();
-		
-		itemDBO.put("type", bukkitId);
-		
-		// Process the meta using the material name and the 'tag' tag.
-		if (item.getValue().containsKey("tag"))
-			itemDBO.put("meta", processMeta(bukkitId, (CompoundTag)item.getValue().get("tag")));
-			
-		
-		return itemDBO;
+		if (processed % 100 == 0)
+			Logger.log(
+					"[*] (%d%%) Processed %d users",
+					false,
+					// Files may be added during the run
+					Math.min(100, (int)((double)processed / total * 100)),
+					processed
+			);
 		
 	}
-
+	
 	/**
-	 * Processes meta for an individual item; material should
-	 * be the Bukkit name for the item.
+	 * Processes a single player file, converting their ender
+	 * items into a list of serialized items. This does not touch
+	 * the DB, so it is safe to call from multiple threads.
 	 * 
-	 * @param material The Bukkit Material name
-	 * @param tag The 'tag' tag on the item
-	 * @return A DBObject containing the metadata
+	 * If `previousManifest` is given, files whose size and mtime match
+	 * the manifest are skipped without being read. Otherwise the file's
+	 * contents are hashed and compared with the manifest; the file is only
+	 * decompressed and converted if it is new or its contents have changed.
+	 *
+	 * @param playerFile Player file to process
+	 * @param previousManifest Manifest from the previous run, or null
+	 * 						   if not running incrementally
+	 * @return The player's bank; its items are null if there is nothing
+	 * 		   to write for the player
+	 * @throws IOException If an IO error occurs
 	 */
-	private DBObject processMeta(String material, CompoundTag tag) {
-		
-		DBObject metaDBO = new BasicDBObject();
-		Map<String, Tag> tagContents = tag.getValue();
-		metaDBO.put("==", "ItemMeta");
-		
-		switch (material) {
-		
-			// Written Book or Book & Quill
-			case "WRITTEN_BOOK":
-			case "BOOK_AND_QUILL": {
-			
-				if (material.equalsIgnoreCase("WRITTEN_BOOK"))
-					metaDBO.put("meta-type", "BOOK");
-				else
-					metaDBO.put("meta-type", "BOOK");
-				
-				if (tagContents.containsKey("resolved"))
-					metaDBO.put("resolved", ((ByteTag)tagContents.get("resolved")).getValue());
-				
-				if (tagContents.containsKey("generation"))
-					metaDBO.put("generation", ((IntTag)tagContents.get("generation")).getValue());
-				
-				if (tagContents.containsKey("author"))
-					metaDBO.put("author", ((StringTag)tagContents.get("author")).getValue());
-				
-				if (tagContents.containsKey("title"))
-					metaDBO.put("title", ((StringTag)tagContents.get("title")).getValue());
-				
-				if (tagContents.containsKey("pages")) {
-					List<String> pages = new ArrayList<String>();
-					
-					for (Tag pageTag : ((ListTag)tagContents.get("pages")).getValue())
-						pages.add(((StringTag)pageTag).getValue());
-					
-					metaDBO.put("pages", pages);
-				}
-				
-				break;
-			}
-			
-			// Skull Item
-			case "SKULL_ITEM": {
-				
-				// "skull-owner" is the only important part as of 1.8; there are more parts, however
-				metaDBO.put("meta-type", "SKULL");
-				if (tagContents.containsKey("SkullOwner") && tagContents.get("SkullOwner") instanceof StringTag)
-					metaDBO.put("skull-owner", ((StringTag)tagContents.get("SkullOwner")).getValue());
-				else if (tagContents.containsKey("SkullOwner") && tagContents.get("SkullOwner") instanceof CompoundTag)
-					metaDBO.put("skull-owner", ((StringTag)((CompoundTag)tagContents.get("SkullOwner")).getValue().get("Name")).getValue());
-				
-				break;
-				
-			}
-			
-			// Leather Armour
-			case "LEATHER_HELMET":
-			case "LEATHER_CHESTPLATE":
-			case "LEATHER_LEGGINGS":
-			case "LEATHER_BOOTS": {
-				
-				metaDBO.put("meta-type", "LEATHER_ARMOR");
-				
-				// Warning: ugly casts ahead.
-				// But seriously, there didn't seem to be a cleaner way to do this. It
-				// just checks for the existence of display -> color in NBT, and sets
-				// the color value on the metadata to a serialized version of this.
-				if (tagContents.containsKey("display"))
-					if (((CompoundTag)tagContents.get("display")).getValue().containsKey("color"))
-						metaDBO.put("color", serializeColor(((IntTag)((CompoundTag)tagContents.get("display")).getValue().get("color")).getValue()));
-				
-				break;
-				
-			}
-			
-			// Enchanted Books
-			case "ENCHANTED_BOOK": {
-				
-				metaDBO.put("meta-type", "ENCHANTED");
-				
-				if (tagContents.containsKey("StoredEnchantments"))
-					metaDBO.put("stored-enchants", serializeEnchantments(((ListTag)tagContents.get("StoredEnchantments")).getValue()));
-				
-				break;
-				
-			}
-			
-			// For everything else with meta...
-			default:
-				metaDBO.put("meta-type", "UNSPECIFIC");
-			
-		}
-		
-		// Serialize generic data too. This includes:
-		// Display names; lore; enchantments; repair cost; attributes; HideFlags.  
-		
-		if (tagContents.containsKey("display")) {
-			
-			Map<String, Tag> displayTag = ((CompoundTag)tagContents.get("display")).getValue();
-			
-			// Item Display Names
-			if (displayTag.containsKey("Name"))
-				metaDBO.put("display-name", ((StringTag)displayTag.get("Name")).getValue());
-			
-			// Item Lore
-			if (displayTag.containsKey("Lore")) {
-				List<String> lore = new ArrayList<String>();
-				for (Tag loreTag : ((ListTag)displayTag.get("Lore")).getValue())
-					lore.add(((StringTag)loreTag).getValue());
-				metaDBO.put("lore", lore);
-			}
-			
+	private PlayerBank processPlayerFile(Path playerFile, FileManifest previousManifest) throws IOException {
+		
+		// Stat before reading, so a concurrent modification
+		// is picked up by the next run.
+		long start = READ.start();
+		BasicFileAttributes attributes = Files.readAttributes(playerFile, BasicFileAttributes.class);
+		long size = attributes.size();
+		long mtime = attributes.lastModifiedTime().toMillis();
+		String uuid = PlayerFileScanner.getUUID(playerFile);
+		FileManifest.Entry previous = previousManifest == null ? null : previousManifest.get(playerFile.getFileName().toString());
+		
+		if (previous != null && previous.matches(size, mtime)) {
+			READ.stop(start);
+			return new PlayerBank(uuid, null, FileStatus.UNCHANGED, previous);
 		}
 		
-		// Item Enchantments
-		if (tagContents.containsKey("ench"))
-			metaDBO.put("enchants", serializeEnchantments(((ListTag)tagContents.get("ench")).getValue()));
+		ByteBuffer data = PlayerFileScanner.read(playerFile, size);
+		READ.stop(start);
 		
-		// Repair Cost
-		if (tagContents.containsKey("RepairCost"))
-			metaDBO.put("repair-cost", ((IntTag)tagContents.get("RepairCost")).getValue());
+		if (previousManifest == null)
+			return new PlayerBank(uuid, processPlayerData(data, false), FileStatus.NEW, null);
 		
-		// Hide Flags
-		if (tagContents.containsKey("HideFlags"))
-			metaDBO.put("ItemFlags", ((IntTag)tagContents.get("HideFlags")).getValue());
+		FileManifest.Entry entry = new FileManifest.Entry(size, mtime, FileManifest.hash(data));
 		
-		return metaDBO;
+		if (previous == null)
+			return new PlayerBank(uuid, processPlayerData(data, false), FileStatus.NEW, entry);
+		else if (previous.getHash().equals(entry.getHash()))
+			return new PlayerBank(uuid, null, FileStatus.UNCHANGED, entry);
+		else
+			// Write changed banks even if they are now empty, to
+			// replace the bank from the previous run.
+			return new PlayerBank(uuid, processPlayerData(data, true), FileStatus.CHANGED, entry);
 		
 	}
 	
 	/**
-	 * Serializes a colour integer value into a DBObject
+	 * Decompresses and parses a player file's contents, converting
+	 * their ender items into a document holding the list of serialized
+	 * items as its 'items' field; with the direct encoder, the document
+	 * is already encoded.
 	 * 
-	 * @param color Colour value
-	 * @return Serialized colour
+	 * @param data Contents of the player file; a heap buffer
+	 * @param keepEmpty Whether to return an empty list, rather than
+	 * 					null, if the player has no ender items
+	 * @return Document of the serialized items, or null
+	 * @throws IOException If the file could not be parsed
 	 */
-	private DBObject serializeColor(int color) {
+	private DBObject processPlayerData(ByteBuffer data, boolean keepEmpty) throws IOException {
 		
-		DBObject ret = new BasicDBObject(ConfigurationSerialization.SERIALIZED_TYPE_KEY, "Color");
+		long start = PARSE.start();
+		Map<String, Tag> tags;
 		
-		ret.put("RED", color >> 16);
-		ret.put("GREEN", (color >> 8) & 0xFF);
-		ret.put("BLUE", color & 0xFF);
-
-		return ret;
+		// The file is decompressed as it is parsed, so the extractor can
+		// stop early; decompression is timed apart from the parse time
+		try (TimedInputStream in = new TimedInputStream(PlayerFileScanner.decompress(data))) {
+			tags = extractor.extract(in);
+			DECOMPRESS.record(in.getNanos());
+			PARSE.record(System.nanoTime() - start - in.getNanos());
+		}
 		
-	}
-	
-	/**
-	 * Serializes a list of enchantments into a DBObject
-	 * 
-	 * @param enchants Enchants to serialize
-	 * @return DBObject
-	 */
-	private DBObject serializeEnchantments(List<Tag> enchants) {
+		if (!(tags.get(ENDER_ITEMS) instanceof ListTag))
+			throw new IOException("no EnderItems list");
 		
-		DBObject ret = new BasicDBObject();
+		ListTag items = (ListTag) tags.get(ENDER_ITEMS);
 		
-		// Put enchants as key-value pairs (enchant => level)
-		for (Tag enchantTag : enchants) {
-			Map<String, Tag> enchant = ((CompoundTag)enchantTag).getValue();
-			int id = ((ShortTag)enchant.get("id")).getValue();
-			int lvl = ((ShortTag)enchant.get("lvl")).getValue();
+		// Skip player if they have no ender items
+		if (items.getValue().size() == 0 && !keepEmpty)
+			return null;
 
-			ret.put(getEnchantmentName(id), lvl);
+		start = CONVERT.start();
+		
+		// Encode the items straight from their tags into this
+		// worker's buffer, keeping only a copy of the bytes.
+		if (itemEncoder != null) {
+			BsonBuffer buffer = ITEM_BUFFERS.get();
+			buffer.reset();
+			int doc = buffer.startDocument();
+			itemEncoder.encodeItems("items", items.getValue(), buffer);
+			buffer.end(doc);
+			CONVERT.stop(start);
+			ITEMS_CONVERTED.add(items.getValue().size());
+			return new RawDBObject(buffer.toByteArray());
 		}
 		
-		return ret;
+		List<DBObject> bankItems = new ArrayList<DBObject>();
+		
+		// Iterate over player's EnderItems, adding to the
+		// list of bankItems the processed [serialized] item.
+		for (Tag itemTag : items.getValue())
+			bankItems.add(itemConverter.processItem(itemTag));
+		CONVERT.stop(start);
+		ITEMS_CONVERTED.add(bankItems.size());
+		
+		return new BasicDBObject("items", bankItems);
 		
 	}
 	
 	/**
-	 * Obtains a reference to a user in the DB by
-	 * their UUID. If the user does not exist, they
-	 * will be created.
+	 * Adds a chunk of players' banks to the DB via `sink`,
+	 * resolving (and, if necessary, creating) all of their users at
+	 * once via `resolver`. The list of banks is cleared afterwards.
+	 * 
+	 * Banks are upserted by user, so replaying a chunk which was
+	 * partially written by a previous run does not duplicate them.
 	 * 
-	 * @param uuid UUID of user
-	 * @return DB Reference to user.
+	 * @param resolver UserResolver to obtain user references from
+	 * @param sink DocumentSink to use to add users' banks
+	 * @param banks The banks to add
+	 * @throws MongoException If a DB error occurs
+	 * @throws IOException If a bank could not be written to the sink
 	 */
-	private DBRef getReferenceToUser(DB db, DBCollection users, String uuid) {
+	private void writeBanks(UserResolver resolver, DocumentSink sink, List<PlayerBank> banks) throws MongoException, IOException {
 		
-		DBObject user = users.findOne(new BasicDBObject("uuid", uuid));
-		
-		// Insert the user if they don't exist
-		if (user == null) {
-			Logger.log("[*] Creating user '%s'", false, uuid);
-			user = new BasicDBObject("uuid", uuid);
-			users.insert(user);
-		}
+		if (banks.isEmpty())
+			return;
 		
-		return new DBRef(db, users.getName(), user.get("_id"));
+		List<String> uuids = new ArrayList<String>(banks.size());
+		for (PlayerBank bank : banks)
+			uuids.add(bank.uuid);
 		
-	}
-	
-	/**
-	 * Gets a list of JsonItems so that their ID can be obtained
-	 * from their Minecraft ID.
-	 * 
-	 * @return JsonItem[] list
-	 * @throws IOException If the list could not be retrieved
-	 */
-	private JsonItem[] getListOfItems() throws IOException {
+		// Attempt to obtain references to the users.
+		long start = LOOKUP.start();
+		Map<String, DBRef> userRefs = resolver.resolve(uuids);
+		LOOKUP.stop(start);
 		
-		// Connect to URL
-		URLConnection conn = new URL(ITEMS_JSON_URL).openConnection();
-		conn.setRequestProperty("User-Agent", USER_AGENT);
-		String json = readStream(conn.getInputStream());
+		start = WRITE.start();
+		for (PlayerBank bank : banks) {
+			
+			DBRef user = userRefs.get(bank.uuid);
+			DBObject bankDBO = createBank(bank.items, user, bankBuffer);
+			
+			// Finally, upsert the DBObject!
+			sink.replaceOne(new BasicDBObject("user", user), bankDBO, bank.uuid);
+			
+		}
+		WRITE.stop(start);
 		
-		// Parse json
-		Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-		return gson.fromJson(json, JsonItem[].class);
+		banks.clear();
 		
 	}
 	
 	/**
-	 * Because Bukkit is an arse and doesn't actually register
-	 * enchantments until Bukkit itself is loaded... BRING ON
-	 * THE HARDCODED ENCHANTMENTS.
+	 * Creates a bank document, { items: [...], user: DBRef }, from the
+	 * document of a player's items. Items which were encoded directly
+	 * are copied into an encoded bank, rather than decoded.
+	 * 
+	 * Public so that the benchmarks measure the same path.
 	 * 
-	 * @param id ID of enchantment
-	 * @return Bukkit Enchantment name, or null if non-existent
+	 * @param items Document of the player's items
+	 * @param user Reference to the player's user
+	 * @param buffer Buffer to encode the bank in; reset first
+	 * @return Bank document
 	 */
-	private String getEnchantmentName(int id) {
+	public static DBObject createBank(DBObject items, DBRef user, BsonBuffer buffer) {
 		
-		return ENCHANTMENTS.containsKey(id) ? ENCHANTMENTS.get(id) : null;
+		if (items instanceof RawDBObject && user.getId() instanceof ObjectId) {
+			
+			buffer.reset();
+			int doc = buffer.startDocument();
+			buffer.putElements(((RawDBObject) items).getDocument());
+			
+			// Encoded as the driver encodes a DBRef
+			int ref = buffer.startDocument("user");
+			buffer.putString("$ref", user.getRef());
+			buffer.putObjectId("$id", (ObjectId) user.getId());
+			buffer.end(ref);
+			
+			buffer.end(doc);
+			return new RawDBObject(buffer.toByteArray());
+			
+		}
+		
+		DBObject bankDBO = new BasicDBObject();
+		bankDBO.put("items", items.get("items"));
+		bankDBO.put("user", user);
+		return bankDBO;
 		
 	}
-	
+
 	/**
-	 * Reads an InputStream to a String
-	 * 
-	 * @param in InputStream to read
-	 * @return UTF-8 String
-	 * @throws IOException If an IO error occurred
+	 * A player's converted ender items, waiting to be written
+	 * to the DB.
 	 */
-	private String readStream(InputStream in) throws IOException {
-		
-		byte[] buffer = new byte[BUFFER_SIZE];
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		int bytesRead = 0;
-		
-		while ((bytesRead = in.read(buffer)) > -1)
-			out.write(buffer, 0, bytesRead);
-		
-		return out.toString();
+	private static class PlayerBank {
+		
+		private final String uuid;
+		private final DBObject items;
+		private final FileStatus status;
+		private final FileManifest.Entry manifestEntry;
+		
+		PlayerBank(String uuid, DBObject items, FileStatus status, FileManifest.Entry manifestEntry) {
+			this.uuid = uuid;
+			this.items = items;
+			this.status = status;
+			this.manifestEntry = manifestEntry;
+		}
 		
 	}
 	
 	/**
-	 * A class representing a JsonItem as represented in the URL {@link EnderChestMigrator#ITEMS_JSON_URL}.
+	 * Status of a player file compared with the previous
+	 * run's manifest
 	 */
-	public static class JsonItem {
-		
-		public int type;
-		public int meta;
-		public String name;
-		public String text_type;
-		
-		private static Map<String, Integer> itemMap = new HashMap<String, Integer>();
-		
-		/**
-		 * Registers items so that they can be retrieved
-		 * using #getByName(String)
-		 * 
-		 * @param items Items to register
-		 */
-		public static void registerItems(JsonItem[] items) {
-			
-			for (JsonItem item : items)
-				itemMap.put(item.text_type.toLowerCase(), item.type);
-			
-		}
-
-		/**
-		 * Gets a registered item by name
-		 * 
-		 * @param name Name of item (Minecraft ID)
-		 * @return JsonItem
-		 */
-		public static int getIdFromName(String name) {
-		
-			if (name.startsWith("minecraft:"))
-				name = name.substring(10);
-			
-			return itemMap.containsKey(name.toLowerCase()) ? itemMap.get(name.toLowerCase()) : 0;
-			
-		}
-		
+	private static enum FileStatus {
+		NEW, CHANGED, UNCHANGED
 	}
 	
 }
@@ -0,0 +1,140 @@
+package com.defiancecraft.configure.migrators;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.BinaryOperator;
+
+import com.defiancecraft.configure.db.BulkWriter;
+import com.defiancecraft.configure.fleet.Deduplicator;
+import com.defiancecraft.configure.util.Answers;
+import com.mongodb.MongoClient;
+
+/**
+ * What a single migration runs against: its answers, and, when it is
+ * one server of a fleet, the server's root directory and the resources
+ * shared with the rest of the fleet (the MongoClient, the write budget
+ * and the deduplication of users between servers).
+ */
+public class MigrationContext {
+
+	private final String server;
+	private final Path root;
+	private final Answers answers;
+	private final MongoClient client;
+	private final Semaphore writeBudget;
+	private final Deduplicator deduplicator;
+	private final int serverIndex;
+
+	/**
+	 * Constructs a MigrationContext
+	 *
+	 * @param server Name of the server, or null when not part of a fleet
+	 * @param root Directory relative paths are resolved against, or null
+	 * @param answers Answers to the migrator's questions
+	 * @param client Shared MongoClient, or null for the migrator to connect itself
+	 * @param writeBudget Bulk write batches which may be in flight across the fleet, or null
+	 * @param deduplicator Deduplicator shared by the fleet, or null
+	 * @param serverIndex Index of the server in the fleet
+	 */
+	public MigrationContext(String server, Path root, Answers answers, MongoClient client, Semaphore writeBudget, Deduplicator deduplicator, int serverIndex) {
+		this.server = server;
+		this.root = root;
+		this.answers = answers;
+		this.client = client;
+		this.writeBudget = writeBudget;
+		this.deduplicator = deduplicator;
+		this.serverIndex = serverIndex;
+	}
+
+	/**
+	 * Creates the context of a single migration, run on its own
+	 *
+	 * @param answers Answers to the migrator's questions
+	 * @return MigrationContext
+	 */
+	public static MigrationContext standalone(Answers answers) {
+		return new MigrationContext(null, null, answers, null, null, null, 0);
+	}
+
+	/**
+	 * Gets the answers to the migrator's questions
+	 *
+	 * @return Answers
+	 */
+	public Answers getAnswers() {
+		return answers;
+	}
+
+	/**
+	 * Gets the MongoClient shared by the fleet
+	 *
+	 * @return MongoClient, or null if the migrator should connect itself
+	 */
+	public MongoClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Gets whether this migration is one server of a fleet
+	 *
+	 * @return Whether there is a server name
+	 */
+	public boolean isFleet() {
+		return server != null;
+	}
+
+	/**
+	 * Resolves a path given in an answer against the server's root
+	 *
+	 * @param path Path, e.g. "./world/playerdata"
+	 * @return Resolved path
+	 */
+	public Path resolve(String path) {
+		return root == null ? Paths.get(path) : root.resolve(path).normalize();
+	}
+
+	/**
+	 * Qualifies a name with the server's, so that files written by
+	 * the servers of a fleet (journals, dry run output) do not clash
+	 *
+	 * @param name Name, e.g. "enderchest"
+	 * @return "&lt;server&gt;-&lt;name&gt;", or the name as is outside a fleet
+	 */
+	public String qualify(String name) {
+		return server == null ? name : server + "-" + name;
+	}
+
+	/**
+	 * Applies the fleet's write budget, if any, to BulkWriter settings
+	 *
+	 * @param settings Settings from the command line
+	 * @return Settings sharing the write budget
+	 */
+	public BulkWriter.Settings applyWriteBudget(BulkWriter.Settings settings) {
+		return writeBudget == null ? settings : settings.withWriteBudget(writeBudget);
+	}
+
+	/**
+	 * Removes the items which another server of the fleet will migrate,
+	 * and merges this server's items with the other servers' copies;
+	 * outside a fleet, the items are returned as they are. Every server
+	 * of a fleet must call this once, as it waits for all of them.
+	 *
+	 * @param items Items keyed by UUID
+	 * @param merge Merges another server's copy of an item into this server's
+	 * @return Items this server should migrate
+	 * @throws InterruptedException If interrupted while waiting for the fleet
+	 * @see Deduplicator#claim(int, Map, BinaryOperator)
+	 */
+	public <T> Map<String, T> deduplicate(Map<String, T> items, BinaryOperator<T> merge) throws InterruptedException {
+		return deduplicator == null ? items : deduplicator.claim(serverIndex, items, merge);
+	}
+
+	@Override
+	public String toString() {
+		return server == null ? "standalone" : server;
+	}
+
+}
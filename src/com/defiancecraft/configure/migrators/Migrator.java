@@ -1,7 +1,12 @@
 package com.defiancecraft.configure.migrators;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.commons.cli.CommandLine;
 
+import com.defiancecraft.configure.db.IndexSpec;
+
 public interface Migrator {
 
 	/**
@@ -18,13 +23,25 @@ public interface Migrator {
 	 */
 	public String getDescription();
 	
+	/**
+	 * Gets the indexes this Migrator's reads and writes need;
+	 * they are created before the migration writes anything.
+	 * 
+	 * @return Indexes to create
+	 */
+	public default List<IndexSpec> getIndexes() {
+		return Collections.emptyList();
+	}
+	
 	/**
 	 * Performs the migration operation.
 	 * 
 	 * @param cmd CommandLine object with arguments that may
 	 * 			  be required for the Migrator.
+	 * @param context What the migration runs against; its
+	 * 				  answers, and the fleet it is part of, if any
 	 * @return Whether the operation was successful.
 	 */
-	public boolean migrate(CommandLine cmd);
+	public boolean migrate(CommandLine cmd, MigrationContext context);
 	
 }
@@ -1,21 +1,27 @@
 package com.defiancecraft.configure.migrators;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class MigratorRegistry {
 
 	private static List<Migrator> migrators = new ArrayList<Migrator>();
+	private static Map<String, Supplier<Migrator>> factories = new LinkedHashMap<String, Supplier<Migrator>>();
 	
 	/**
 	 * Registers a Migrator with the registry
 	 * 
-	 * @param m Migrator
+	 * @param factory Creates a new instance of the Migrator
 	 */
-	static void registerMigrator(Migrator m) {
+	static void registerMigrator(Supplier<Migrator> factory) {
+		Migrator m = factory.get();
 		migrators.add(m);
+		factories.put(m.getName().toLowerCase(), factory);
 	}
 	
 	/**
@@ -34,6 +40,20 @@ public class MigratorRegistry {
 		
 	}
 	
+	/**
+	 * Creates a new instance of a Migrator by name, for when several
+	 * migrations run at once (migrators keep per-migration state)
+	 * 
+	 * @param name Name of Migrator
+	 * @return Optional Migrator object; empty if it was not found
+	 */
+	public static Optional<Migrator> createMigrator(String name) {
+		
+		Supplier<Migrator> factory = factories.get(name.toLowerCase());
+		return factory == null ? Optional.empty() : Optional.of(factory.get());
+		
+	}
+	
 	/**
 	 * Gets a list of all Migrators
 	 * 
@@ -44,8 +64,10 @@ public class MigratorRegistry {
 	}
 	
 	static {
-		registerMigrator(new UserDataMigrator());
-		registerMigrator(new EnderChestMigrator());
+		registerMigrator(UserDataMigrator::new);
+		registerMigrator(EnderChestMigrator::new);
+		registerMigrator(ContainerMigrator::new);
+		registerMigrator(PlayerStateMigrator::new);
 	}
 	
 }
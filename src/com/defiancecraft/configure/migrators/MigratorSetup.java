@@ -0,0 +1,240 @@
+package com.defiancecraft.configure.migrators;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.UnknownHostException;
+
+import org.apache.commons.cli.CommandLine;
+
+import com.defiancecraft.configure.db.BulkWriter;
+import com.defiancecraft.configure.db.ConnectionFactory;
+import com.defiancecraft.configure.db.DocumentSink;
+import com.defiancecraft.configure.db.SinkType;
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.ItemRegistry;
+import com.defiancecraft.configure.nbt.NBTExtractor;
+import com.defiancecraft.configure.nbt.StreamingNBTExtractor;
+import com.defiancecraft.configure.nbt.TreeNBTExtractor;
+import com.defiancecraft.configure.util.Asker;
+import com.defiancecraft.configure.util.Logger;
+import com.defiancecraft.configure.util.Logger.Level;
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+
+/**
+ * The setup the migrators share: reading the --nbt-reader, --bson-encoder
+ * and --items-file options, connecting to the DB (or using the fleet's
+ * client) and creating the sink, and logging why a migration failed.
+ */
+final class MigratorSetup {
+
+	private MigratorSetup() {}
+
+	/**
+	 * Creates the NBTExtractor for the --nbt-reader option
+	 *
+	 * @param reader Name of the reader; 'streaming' or 'tree'
+	 * @param paths Paths of the tags to extract
+	 * @return NBTExtractor for the paths
+	 * @throws IllegalArgumentException If the reader is unknown
+	 */
+	static NBTExtractor createExtractor(String reader, String... paths) {
+
+		switch (reader) {
+			case "streaming":
+				return new StreamingNBTExtractor(paths);
+			case "tree":
+				return new TreeNBTExtractor(paths);
+			default:
+				throw new IllegalArgumentException(String.format("--nbt-reader must be 'streaming' or 'tree' (got '%s')", reader));
+		}
+
+	}
+
+	/**
+	 * Gets whether the --bson-encoder option selects the direct encoder
+	 *
+	 * @param encoder Name of the encoder; 'direct' or 'tree'
+	 * @return Whether items are encoded straight to BSON
+	 * @throws IllegalArgumentException If the encoder is unknown
+	 */
+	static boolean isDirectEncoder(String encoder) {
+
+		switch (encoder) {
+			case "direct":
+				return true;
+			case "tree":
+				return false;
+			default:
+				throw new IllegalArgumentException(String.format("--bson-encoder must be 'direct' or 'tree' (got '%s')", encoder));
+		}
+
+	}
+
+	/**
+	 * Rejects the --incremental option, for migrators which do not
+	 * keep a manifest of the files they read
+	 *
+	 * @param cmd Command line
+	 * @param migrator Migrator being run
+	 * @throws IllegalArgumentException If --incremental was given
+	 */
+	static void rejectIncremental(CommandLine cmd, Migrator migrator) {
+
+		if (cmd.hasOption("incremental"))
+			throw new IllegalArgumentException(String.format("--incremental is not supported by the '%s' migrator; use --resume to skip work done by a previous run", migrator.getName()));
+
+	}
+
+	/**
+	 * Loads the list of items given by --items-file, or the bundled
+	 * list, and creates an ItemConverter for it
+	 *
+	 * @param cmd Command line
+	 * @return ItemConverter
+	 * @throws IOException If the list could not be read, or is invalid
+	 */
+	static ItemConverter loadItems(CommandLine cmd) throws IOException {
+
+		ItemRegistry itemRegistry;
+		if (cmd.hasOption("items-file")) {
+			Logger.log("[*] Loading the list of items from '%s'", true, cmd.getOptionValue("items-file"));
+			itemRegistry = ItemRegistry.load(new File(cmd.getOptionValue("items-file")));
+		} else {
+			Logger.log("[*] Loading the bundled list of items", true);
+			itemRegistry = ItemRegistry.loadDefault();
+		}
+
+		return new ItemConverter(itemRegistry);
+
+	}
+
+	/**
+	 * Creates the sink documents are written to. For a MongoDB sink,
+	 * this connects to the DB given by the answers, unless the fleet
+	 * shares a client; for any other sink, it is a dry run.
+	 *
+	 * @param cmd Command line
+	 * @param context Context of the migration
+	 * @param asker Asker holding the DB answers
+	 * @param connections ConnectionFactory to connect with
+	 * @param sinkType Type of sink to create
+	 * @param bulkSettings Settings of the sink's writes
+	 * @param collection Name of the collection documents are written to
+	 * @return Target holding the sink, and the DB if there is one
+	 * @throws UnknownHostException If the host is unknown
+	 * @throws NumberFormatException If the port is invalid
+	 * @throws MongoException If the DB could not be reached
+	 * @throws IOException If the sink could not be created
+	 */
+	static Target connect(CommandLine cmd, MigrationContext context, Asker asker, ConnectionFactory connections,
+			SinkType sinkType, BulkWriter.Settings bulkSettings, String collection) throws UnknownHostException, IOException {
+
+		if (!sinkType.isMongo()) {
+			Logger.log("[*] Dry run; writing %s to the '%s' sink instead of the DB", false, collection, sinkType);
+			return new Target(null, null, sinkType.create(cmd, null, context.qualify(collection), bulkSettings));
+		}
+
+		// Use the fleet's client, if it shares one
+		MongoClient client = context.getClient();
+		MongoClient ownClient = null;
+
+		try {
+
+			if (client == null) {
+
+				// Throws UnknownHostException, NumberFormatException
+				client = ownClient = connections.connect(asker);
+
+				// Open the bulk writer's connections up front; throws MongoException
+				connections.warmUp(client, asker.getAnswer("dbDB"), bulkSettings.getMaxInFlight() + 1);
+
+			}
+
+			DB db = client.getDB(asker.getAnswer("dbDB"));
+			DocumentSink sink = sinkType.create(cmd, db.getCollection(collection), context.qualify(collection), bulkSettings);
+
+			Logger.log("[*] Created connection to database", true);
+			return new Target(ownClient, db, sink);
+
+		} catch (IOException | RuntimeException e) {
+			if (ownClient != null)
+				ownClient.close();
+			throw e;
+		}
+
+	}
+
+	/**
+	 * Logs why a migration failed
+	 *
+	 * @param e Exception the migration failed with
+	 */
+	static void logFailure(Exception e) {
+
+		if (e instanceof MongoException) {
+			Logger.log("Error: database error; %s.", false, e.getMessage());
+		} else if (e instanceof NumberFormatException) {
+			Logger.log("Error: invalid port.");
+		} else if (e instanceof UnknownHostException) {
+			Logger.log("Error: unknown host.");
+		} else if (e instanceof IOException) {
+			Logger.log(Level.ERROR, e, "Error: IOException; stack trace below");
+		} else if (e instanceof InterruptedException) {
+			Logger.log("Error: interrupted while waiting for the rest of the fleet");
+			Thread.currentThread().interrupt();
+		} else {
+			Logger.log(Level.ERROR, e, "Error: shit. Apparently, it's a '%s'; stack trace below", e.getClass().getSimpleName());
+		}
+
+	}
+
+	/**
+	 * Where a migration writes its documents: a sink, and the DB
+	 * it writes to, if any
+	 */
+	static class Target {
+
+		private final MongoClient ownClient;
+		private final DB db;
+		private final DocumentSink sink;
+
+		private Target(MongoClient ownClient, DB db, DocumentSink sink) {
+			this.ownClient = ownClient;
+			this.db = db;
+			this.sink = sink;
+		}
+
+		/**
+		 * Gets the DB documents are written to
+		 *
+		 * @return DB, or null for a dry run
+		 */
+		DB getDB() {
+			return db;
+		}
+
+		/**
+		 * Gets the sink to write documents to
+		 *
+		 * @return DocumentSink
+		 */
+		DocumentSink getSink() {
+			return sink;
+		}
+
+		/**
+		 * Closes the client, if this migration connected its own;
+		 * a fleet's shared client is closed by the fleet
+		 */
+		void close() {
+
+			if (ownClient != null)
+				ownClient.close();
+
+		}
+
+	}
+
+}
@@ -0,0 +1,449 @@
+package com.defiancecraft.configure.migrators;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.cli.CommandLine;
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.ListTag;
+import org.jnbt.Tag;
+
+import com.defiancecraft.configure.db.BsonBuffer;
+import com.defiancecraft.configure.db.BulkWriter;
+import com.defiancecraft.configure.db.ConnectionFactory;
+import com.defiancecraft.configure.db.DocumentSink;
+import com.defiancecraft.configure.db.IndexBuilder;
+import com.defiancecraft.configure.db.IndexSpec;
+import com.defiancecraft.configure.db.RawDBObject;
+import com.defiancecraft.configure.db.SinkType;
+import com.defiancecraft.configure.items.ItemConverter;
+import com.defiancecraft.configure.items.ItemEncoder;
+import com.defiancecraft.configure.metrics.Counter;
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.metrics.TimedInputStream;
+import com.defiancecraft.configure.metrics.Timer;
+import com.defiancecraft.configure.nbt.NBTExtractor;
+import com.defiancecraft.configure.util.Arguments;
+import com.defiancecraft.configure.util.Asker;
+import com.defiancecraft.configure.util.CheckpointJournal;
+import com.defiancecraft.configure.util.Logger;
+import com.defiancecraft.configure.util.PlayerFileScanner;
+import com.defiancecraft.configure.util.WorkerPipeline;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+
+public class PlayerStateMigrator implements Migrator {
+
+	private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+	private static final Timer READ       = Metrics.timer("read");
+	private static final Timer DECOMPRESS = Metrics.timer("decompress");
+	private static final Timer PARSE      = Metrics.timer("parse");
+	private static final Timer CONVERT    = Metrics.timer("convert");
+	private static final Timer WRITE      = Metrics.timer("write");
+	private static final Counter FILES_PROCESSED = Metrics.counter("files.processed");
+	private static final Counter FILES_FAILED    = Metrics.counter("files.failed");
+	private static final Counter ITEMS_CONVERTED = Metrics.counter("items.converted");
+
+	// Each worker encodes its players' state into its own buffer
+	private static final ThreadLocal<BsonBuffer> STATE_BUFFERS = ThreadLocal.withInitial(() -> new BsonBuffer(32 * 1024));
+
+	// Created at the start of each migration; only read by the workers
+	private ItemConverter itemConverter;
+	private ItemEncoder itemEncoder;
+	private NBTExtractor extractor;
+	private Set<ItemList> lists;
+	private String[] tagNames;
+
+	public String getName() {
+		return "playerstate";
+	}
+
+	public String getDescription() {
+		return "Migrates players' inventories, armour, off-hands and ender chests to the database";
+	}
+
+	public List<IndexSpec> getIndexes() {
+		return Arrays.asList(
+			IndexSpec.unique("players", "uuid")
+		);
+	}
+
+	public boolean migrate(CommandLine cmd, MigrationContext context) {
+
+		boolean encodeDirectly;
+		int threads;
+		BulkWriter.Settings bulkSettings;
+		ConnectionFactory connections;
+		SinkType sinkType;
+
+		try {
+			MigratorSetup.rejectIncremental(cmd, this);
+			threads = Arguments.getPositiveInt(cmd, "threads", 1);
+			bulkSettings = context.applyWriteBudget(BulkWriter.Settings.fromCommandLine(cmd));
+			connections = ConnectionFactory.fromCommandLine(cmd);
+			lists = ItemList.parse(cmd.getOptionValue("player-lists", "inventory,armor,offhand,enderchest"));
+			tagNames = ItemList.getTagNames(lists);
+			extractor = MigratorSetup.createExtractor(cmd.getOptionValue("nbt-reader", "streaming"), tagNames);
+			encodeDirectly = MigratorSetup.isDirectEncoder(cmd.getOptionValue("bson-encoder", "direct"));
+			sinkType = SinkType.fromCommandLine(cmd);
+		} catch (IllegalArgumentException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
+
+		Asker asker = new Asker(
+			"playerData", "Where is the playerdata directory?", "./world/playerdata",
+			"dbHost", "MongoDB Host", "localhost",
+			"dbPort", "MongoDB Port", "27017",
+			"dbUser", "MongoDB User", "",
+			"dbPass", "MongoDB Pass", "",
+			"dbDB", "MongoDB Database", "minecraft"
+		);
+
+		asker.setAnswers(context.getAnswers());
+
+		try {
+			do {
+				asker.askQuestions();
+			} while (!asker.confirm());
+		} catch (IllegalStateException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
+
+		MigratorSetup.Target target = null;
+		IndexBuilder indexes = null;
+		DB db = null;
+
+		try {
+
+			itemConverter = MigratorSetup.loadItems(cmd);
+			itemEncoder = encodeDirectly ? new ItemEncoder(itemConverter) : null;
+
+			target = MigratorSetup.connect(cmd, context, asker, connections, sinkType, bulkSettings, "players");
+			DocumentSink sink = target.getSink();
+
+			// Players are upserted by UUID; a fleet
+			// creates the index once, for every server
+			if (target.getDB() != null && !context.isFleet()) {
+				db = target.getDB();
+				indexes = new IndexBuilder(getIndexes(), cmd.hasOption("defer-indexes"), cmd.hasOption("remove-duplicates"));
+				indexes.createBeforeLoad(db);
+			}
+
+			/*
+			 * Try to open playerData directory
+			 */
+			Path playerDataDirectory = context.resolve(asker.getAnswer("playerData"));
+			if (!Files.isDirectory(playerDataDirectory)) {
+				Logger.log("Error: playerdata directory is non-existent/not a directory.");
+				return false;
+			}
+
+			/*
+			 * Open the checkpoint journal; players that were
+			 * completed by a previous run are skipped
+			 */
+			CheckpointJournal journal = new CheckpointJournal(sinkType.getStateFile(cmd, "journal", context.qualify(getName()), "journal"), cmd.hasOption("resume"));
+			sink.setListener(journal::record);
+
+			if (cmd.hasOption("resume"))
+				Logger.log("[*] Resuming from '%s'", false, journal.getFile().getPath());
+
+			/*
+			 * Iterate over player files as they are listed; each file is
+			 * decompressed and parsed once, for all of its lists, on the
+			 * worker threads, and players are written on this thread as
+			 * the workers finish them.
+			 */
+			AtomicInteger completed = new AtomicInteger();
+			Set<String> claimed = context.isFleet() ? EnderChestMigrator.claimPlayerFiles(playerDataDirectory, context) : null;
+
+			Logger.log("[*] Migrating %s of each player using %d thread(s)...", false, lists, threads);
+			int[] processed = new int[1];
+
+			try (PlayerFileScanner scanner = new PlayerFileScanner(playerDataDirectory, (uuid) -> {
+				if (claimed != null && !claimed.contains(uuid))
+					return false;
+				if (journal.isCompleted(uuid)) {
+					completed.incrementAndGet();
+					return false;
+				}
+				return true;
+			})) {
+
+				WorkerPipeline<Path, DBObject> pipeline = new WorkerPipeline<Path, DBObject>(threads, threads * QUEUE_SIZE_PER_THREAD);
+				pipeline.run(
+					scanner,
+					(playerFile) -> {
+						Logger.log("[*] Processing user file '%s'", true, playerFile.getFileName());
+						return processPlayerFile(playerFile);
+					},
+					(playerFile, playerDBO) -> {
+						String uuid = PlayerFileScanner.getUUID(playerFile);
+
+						long start = WRITE.start();
+						sink.replaceOne(new BasicDBObject("uuid", uuid), playerDBO, uuid);
+						WRITE.stop(start);
+
+						FILES_PROCESSED.increment();
+						if (++processed[0] % 100 == 0)
+							Logger.log("[*] Processed %d players", false, processed[0]);
+					},
+					(playerFile, e) -> {
+						FILES_FAILED.increment();
+						Logger.log("[!] Invalid userdata file: %s (%s)", false, playerFile.getFileName(), e.toString());
+						Logger.trace(e);
+					}
+				);
+
+			}
+
+			if (cmd.hasOption("resume"))
+				Logger.log("[*] Skipped %d player files completed by a previous run", false, completed.get());
+			Logger.log("[*] Processed %d players", false, processed[0]);
+
+			/*
+			 * Flush the remaining bulk writes
+			 */
+			Logger.log("[*] Flushing the remaining bulk writes to the DB");
+			sink.close();
+			journal.close();
+			Logger.log("[*] Finished executing bulk writes! Woop woop!");
+
+			if (indexes != null)
+				indexes.createAfterLoad(db);
+
+			return true;
+
+		} catch (Exception e) {
+			MigratorSetup.logFailure(e);
+		} finally {
+			if (target != null)
+				target.close();
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Reads, decompresses and parses a player file once, converting
+	 * each of the item lists being migrated into a field of the
+	 * player's document; with the direct encoder, the document is
+	 * already encoded. This does not touch the DB, so it is safe to
+	 * call from multiple threads.
+	 *
+	 * @param playerFile Player file to process
+	 * @return The player's document, { uuid, inventory: [...], ... }
+	 * @throws IOException If the file could not be read or parsed
+	 */
+	private DBObject processPlayerFile(Path playerFile) throws IOException {
+
+		long start = READ.start();
+		ByteBuffer data = PlayerFileScanner.read(playerFile, Files.size(playerFile));
+		READ.stop(start);
+
+		start = PARSE.start();
+		Map<String, Tag> tags;
+
+		// The file is decompressed as it is parsed, so the extractor can
+		// stop early; decompression is timed apart from the parse time
+		try (TimedInputStream in = new TimedInputStream(PlayerFileScanner.decompress(data))) {
+			tags = extractor.extract(in);
+			DECOMPRESS.record(in.getNanos());
+			PARSE.record(System.nanoTime() - start - in.getNanos());
+		}
+
+		// A missing list is empty, but anything else is not a list
+		for (String tagName : tagNames)
+			if (tags.containsKey(tagName) && !(tags.get(tagName) instanceof ListTag))
+				throw new IOException(String.format("%s is not a list", tagName));
+
+		start = CONVERT.start();
+		String uuid = PlayerFileScanner.getUUID(playerFile);
+
+		if (itemEncoder != null) {
+
+			// Encode the lists straight from their tags into this
+			// worker's buffer, keeping only a copy of the bytes.
+			BsonBuffer buffer = STATE_BUFFERS.get();
+			buffer.reset();
+			int doc = buffer.startDocument();
+			buffer.putString("uuid", uuid);
+			for (ItemList list : lists) {
+				List<Tag> items = list.getItems(tags);
+				itemEncoder.encodeItems(list.getName(), items, buffer);
+				ITEMS_CONVERTED.add(items.size());
+			}
+			buffer.end(doc);
+
+			CONVERT.stop(start);
+			return new RawDBObject(buffer.toByteArray());
+
+		}
+
+		DBObject playerDBO = new BasicDBObject("uuid", uuid);
+		for (ItemList list : lists) {
+
+			List<DBObject> listItems = new ArrayList<DBObject>();
+			for (Tag itemTag : list.getItems(tags))
+				listItems.add(itemConverter.processItem(itemTag));
+
+			playerDBO.put(list.getName(), listItems);
+			ITEMS_CONVERTED.add(listItems.size());
+
+		}
+
+		CONVERT.stop(start);
+		return playerDBO;
+
+	}
+
+	/**
+	 * An item list of a player's state, and the tag it is read from;
+	 * armour and the off-hand are slots of the Inventory list.
+	 */
+	private static enum ItemList {
+
+		INVENTORY("inventory", "Inventory"),
+		ARMOR("armor", "Inventory"),
+		OFFHAND("offhand", "Inventory"),
+		ENDERCHEST("enderchest", "EnderItems");
+
+		private static final int ARMOR_FIRST_SLOT = 100;
+		private static final int ARMOR_LAST_SLOT  = 103;
+		private static final int OFFHAND_SLOT     = -106;
+
+		private final String name;
+		private final String tagName;
+
+		ItemList(String name, String tagName) {
+			this.name = name;
+			this.tagName = tagName;
+		}
+
+		/**
+		 * Gets the name of the list's field in a player's document
+		 *
+		 * @return Field name
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the items of this list from a player's extracted tags
+		 *
+		 * @param tags Player's tags, by name
+		 * @return Item tags, in the order of the player file; empty
+		 * 		   if the player has no such list
+		 */
+		List<Tag> getItems(Map<String, Tag> tags) {
+
+			if (tags.get(tagName) == null)
+				return Collections.emptyList();
+
+			List<Tag> all = ((ListTag) tags.get(tagName)).getValue();
+			if (this == ENDERCHEST)
+				return all;
+
+			List<Tag> items = new ArrayList<Tag>();
+			for (Tag itemTag : all)
+				if (getList(itemTag) == this)
+					items.add(itemTag);
+
+			return items;
+
+		}
+
+		/**
+		 * Gets which list an item of the Inventory list belongs to,
+		 * by its slot
+		 */
+		private static ItemList getList(Tag itemTag) {
+
+			int slot = ((ByteTag) ((CompoundTag) itemTag).getValue().get("Slot")).getValue();
+
+			if (slot >= ARMOR_FIRST_SLOT && slot <= ARMOR_LAST_SLOT)
+				return ARMOR;
+			else if (slot == OFFHAND_SLOT)
+				return OFFHAND;
+
+			return INVENTORY;
+
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+		/**
+		 * Parses the --player-lists option
+		 *
+		 * @param names Comma-separated names of lists
+		 * @return Lists, in declaration order
+		 * @throws IllegalArgumentException If a list is unknown, or none are given
+		 */
+		static Set<ItemList> parse(String names) {
+
+			Set<ItemList> lists = EnumSet.noneOf(ItemList.class);
+
+			outer:
+			for (String name : names.split(",")) {
+
+				if (name.trim().isEmpty())
+					continue;
+
+				for (ItemList list : values()) {
+					if (list.name.equalsIgnoreCase(name.trim())) {
+						lists.add(list);
+						continue outer;
+					}
+				}
+
+				throw new IllegalArgumentException(String.format("--player-lists must be a list of inventory, armor, offhand or enderchest (got '%s')", name.trim()));
+
+			}
+
+			if (lists.isEmpty())
+				throw new IllegalArgumentException("--player-lists must name at least one list");
+
+			return lists;
+
+		}
+
+		/**
+		 * Gets the distinct tags a set of lists are read from
+		 *
+		 * @param lists Lists
+		 * @return Tag names
+		 */
+		static String[] getTagNames(Set<ItemList> lists) {
+
+			Set<String> tagNames = new LinkedHashSet<String>();
+			for (ItemList list : lists)
+				tagNames.add(list.tagName);
+
+			return tagNames.toArray(new String[tagNames.size()]);
+
+		}
+
+	}
+
+}
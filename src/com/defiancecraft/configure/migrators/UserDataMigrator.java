@@ -1,33 +1,78 @@
 package com.defiancecraft.configure.migrators;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.net.UnknownHostException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.reader.UnicodeReader;
 
+import com.defiancecraft.configure.db.BulkWriter;
+import com.defiancecraft.configure.db.ConnectionFactory;
+import com.defiancecraft.configure.db.DocumentSink;
+import com.defiancecraft.configure.db.IndexBuilder;
+import com.defiancecraft.configure.db.IndexSpec;
+import com.defiancecraft.configure.db.SinkType;
+import com.defiancecraft.configure.groups.GroupFilter;
+import com.defiancecraft.configure.groups.WhitelistGroupFilter;
+import com.defiancecraft.configure.metrics.Counter;
+import com.defiancecraft.configure.metrics.Metrics;
+import com.defiancecraft.configure.metrics.Timer;
+import com.defiancecraft.configure.util.Arguments;
 import com.defiancecraft.configure.util.Asker;
+import com.defiancecraft.configure.util.CheckpointJournal;
 import com.defiancecraft.configure.util.Logger;
+import com.defiancecraft.configure.util.WorkerPipeline;
+import com.defiancecraft.configure.util.YamlKeyScanner;
+import com.defiancecraft.configure.util.YamlMapStream;
 import com.mongodb.BasicDBObject;
-import com.mongodb.BulkWriteOperation;
 import com.mongodb.DB;
-import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
-import com.mongodb.MongoClient;
-import com.mongodb.MongoCredential;
-import com.mongodb.MongoException;
-import com.mongodb.ServerAddress;
-import com.mongodb.WriteConcern;
 
 public class UserDataMigrator implements Migrator {
 
+	private static final int QUEUE_SIZE_PER_THREAD = 64;
+	
+	// Yaml instances are not thread-safe, so each worker gets its own
+	private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(Yaml::new);
+	private static final YamlKeyScanner ESSENTIALS_KEYS = new YamlKeyScanner("lastAccountName", "money");
+	
+	private static final Timer MERGE = Metrics.timer("merge");
+	private static final Timer READ  = Metrics.timer("read");
+	private static final Timer PARSE = Metrics.timer("parse");
+	private static final Timer WRITE = Metrics.timer("write");
+	private static final Counter USERS_PROCESSED  = Metrics.counter("users.processed");
+	private static final Counter USERS_FAILED     = Metrics.counter("users.failed");
+	private static final Counter ESSENTIALS_FILES = Metrics.counter("essentials.read");
+	private static final Counter FULL_PARSES      = Metrics.counter("essentials.fullParse");
+	
+	// Read from the answers at the start of each migration; only read by the workers
+	private File userDataFolder;
+	private GroupFilter groupFilter;
+	private boolean customMeta;
+
 	public String getName() {
 		return "userdata";
 	}
@@ -35,14 +80,36 @@ public class UserDataMigrator implements Migrator {
 	public String getDescription() {
 		return "Moves user data from Essentials and bPermissions to the database.";
 	}
+	
+	public List<IndexSpec> getIndexes() {
+		return Arrays.asList(
+			IndexSpec.unique("users", "uuid"),
+			IndexSpec.secondary("users", "name")
+		);
+	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	public boolean migrate(CommandLine cmd) {
+	public boolean migrate(CommandLine cmd, MigrationContext context) {
+		
+		int threads;
+		BulkWriter.Settings bulkSettings;
+		ConnectionFactory connections;
+		SinkType sinkType;
+		
+		try {
+			threads = Arguments.getPositiveInt(cmd, "threads", 1);
+			bulkSettings = context.applyWriteBudget(BulkWriter.Settings.fromCommandLine(cmd));
+			connections = ConnectionFactory.fromCommandLine(cmd);
+			sinkType = SinkType.fromCommandLine(cmd);
+		} catch (IllegalArgumentException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
 		
 		Asker asker = new Asker(
 			"userData", "Essentials userdata folder", "./plugins/Essentials/userdata",
 			"bPerms", "bPermissions folder", "./plugins/bPermissions",
 			"whitelistGroups", "User groups to whitelist", "hero,stone,diamond,iron",
+			"groupRenames", "User groups to rename (old=new,...)", "",
 			"worlds", "Worlds to get permission data from", "world",
 			"customMeta", "Transfer custom prefixes/suffixes", "N",
 			"dbHost", "MongoDB Host", "localhost",
@@ -52,182 +119,549 @@ public class UserDataMigrator implements Migrator {
 			"dbDB", "MongoDB Database", "minecraft"
 		);
 		
+		asker.setAnswers(context.getAnswers());
+		
 		// Continue to ask questions until the
 		// user confirms them.
-		do {
-			asker.askQuestions();
-		} while (!asker.confirm());	
-
-		ServerAddress addr;
-		MongoClient client;
-		DB db;
+		try {
+			do {
+				asker.askQuestions();
+			} while (!asker.confirm());
+		} catch (IllegalStateException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
 		
 		try {
+			groupFilter = WhitelistGroupFilter.parse(asker.getAnswer("whitelistGroups"), asker.getAnswer("groupRenames"));
+		} catch (IllegalArgumentException e) {
+			Logger.log("Error: %s", false, e.getMessage());
+			return false;
+		}
+		
+		userDataFolder = context.resolve(asker.getAnswer("userData")).toFile();
+		customMeta     = asker.getAnswer("customMeta").equalsIgnoreCase("y");
 
+		MigratorSetup.Target target = null;
+		IndexBuilder indexes = null;
+		DB db = null;
+		
+		try {
+			
+			target = MigratorSetup.connect(cmd, context, asker, connections, sinkType, bulkSettings, "users");
+			DocumentSink sink = target.getSink();
+			
+			// A fleet creates the indexes once, for every server
+			if (target.getDB() != null && !context.isFleet()) {
+				db = target.getDB();
+				indexes = new IndexBuilder(getIndexes(), cmd.hasOption("defer-indexes"), cmd.hasOption("remove-duplicates"));
+				indexes.createBeforeLoad(db);
+			}
+			
 			/*
-			 * Attempt to connect to DB
+			 * Open permissions file(s)
 			 */
-			Logger.log("[*] Attempting to connect to DB", true);
-			
-			// Throws UnknownHostException, NumberFormatException
-			addr = new ServerAddress(asker.getAnswer("dbHost"), Integer.parseInt(asker.getAnswer("dbPort")));
-		
-			// Throws MongoException
-			if (!asker.getAnswer("dbPass").isEmpty()) {
-				MongoCredential cred = MongoCredential.createMongoCRCredential(
-						asker.getAnswer("dbUser"),
-						asker.getAnswer("dbDB"),
-						asker.getAnswer("dbPass").toCharArray());
-				client = new MongoClient(addr, Arrays.asList(cred));
-			} else {
-				client = new MongoClient(addr);
-			}
+			Logger.log("[*] Loading permissions from files", true);
 			
-			// Throws MongoException
-			db = client.getDB(asker.getAnswer("dbDB"));
-			DBCollection usersDBC = db.getCollection("users");
+			File bPermsFolder = context.resolve(asker.getAnswer("bPerms")).toFile();
+			int[] processed = new int[1];
+			long started = System.currentTimeMillis();
 			
-			// Create the bulk op.
-			BulkWriteOperation bulkOperation = usersDBC.initializeUnorderedBulkOperation();
+			/*
+			 * Open the checkpoint journal
+			 */
+			CheckpointJournal journal = new CheckpointJournal(sinkType.getStateFile(cmd, "journal", context.qualify(getName()), "journal"), cmd.hasOption("resume"));
+			sink.setListener(journal::record);
 			
-			Logger.log("[*] Created connection to database", true);
+			if (cmd.hasOption("resume"))
+				Logger.log("[*] Resuming from '%s'; skipping %d completed users", false,
+						journal.getFile().getPath(), journal.getCompletedCount());
 			
 			/*
-			 * Open permissions file(s)
+			 * Stream the first world's users.yml, so each user is parsed
+			 * as the pipeline pulls them and only the users in flight are
+			 * held in memory. Users are merged with their entries in the
+			 * other worlds, which are read up front, so each user is
+			 * processed and written exactly once.
 			 */
-			Logger.log("[*] Loading permissions from files", true);
+			String[] worlds = asker.getAnswer("worlds").split(",");
+			Map<String, UserPermissions> merged = new LinkedHashMap<String, UserPermissions>();
+			int entries = 0;
+			
+			long start = MERGE.start();
+			for (int i = context.isFleet() ? 0 : 1; i < worlds.length; i++)
+				entries += readWorld(bPermsFolder, worlds[i], merged, null);
+			MERGE.stop(start);
+			
+			UserStream users;
+			
+			/*
+			 * In a fleet, users on several servers are written once, by
+			 * the first server they are on, with their groups merged;
+			 * which needs every user, so no world is streamed.
+			 */
+			if (context.isFleet()) {
+				Logger.log("[*] Merged %d entries from %d world(s) into %d users", false, entries, worlds.length, merged.size());
+				int found = merged.size();
+				merged = context.deduplicate(merged, UserPermissions::merge);
+				Logger.log("[*] %d of %d users are migrated by an earlier server in the fleet", false, found - merged.size(), found);
+				users = new UserStream(null, null, merged, journal);
+			} else {
+				users = new UserStream(openWorld(bPermsFolder, worlds[0]), worlds[0], merged, journal);
+			}
 			
-			File bPermsFolder = new File(asker.getAnswer("bPerms"));
-			int processed = 0;
+			/*
+			 * Iterate over all users; users are read (on the pipeline's
+			 * producer thread), built (and their Essentials files parsed)
+			 * on the worker threads, and written on this thread as the
+			 * workers finish them, which is not the order they were read in.
+			 */
+			Logger.log("[*] Processing users using %d thread(s)", false, threads);
+			WorkerPipeline<UserPermissions, DBObject> pipeline = new WorkerPipeline<UserPermissions, DBObject>(threads, threads * QUEUE_SIZE_PER_THREAD);
+			try {
+				pipeline.run(
+					users,
+					(user) -> processUser(user),
+					(user, userDBO) -> {
+						/*
+						 * Finally, add them to the DB (via an upsert)!
+						 */
+						long writeStart = WRITE.start();
+						sink.replaceOne(new BasicDBObject("uuid", user.uuid), userDBO, user.uuid);
+						WRITE.stop(writeStart);
+						USERS_PROCESSED.increment();
+						
+						// Print out some progress
+						if (++processed[0] % 100 == 0)
+							Logger.log("[*] Processed %d users", false, processed[0]);
+					},
+					(user, e) -> {
+						USERS_FAILED.increment();
+						Logger.log("[!] Could not process user '%s' (%s)", false, user.uuid, e.toString());
+						Logger.trace(e);
+					}
+				);
+			} finally {
+				users.close();
+			}
 			
-			for (String worldName : asker.getAnswer("worlds").split(",")) {
+			/*
+			 * Users listed more than once in the streamed world were written
+			 * with their first entry, before the rest were read; once that
+			 * has been written, they are written again with all of their
+			 * entries merged, as entries in the other worlds are.
+			 */
+			if (!users.repeated.isEmpty()) {
 				
-				Logger.log("[*] Loading permissions from world '%s'", false, worldName);
-				File userFile = new File(new File(bPermsFolder, worldName), "users.yml");
+				Logger.log("[*] Merging the entries of %d user(s) listed more than once in world %s", false, users.repeated.size(), worlds[0]);
+				sink.sync();
 				
-				Yaml yaml = new Yaml();
-				Map<String, Object> userFileYml = (Map<String, Object>)yaml.load(new FileInputStream(userFile));
+				Map<String, UserPermissions> repeated = new LinkedHashMap<String, UserPermissions>();
+				for (String world : worlds)
+					readWorld(bPermsFolder, world, repeated, users.repeated);
 				
-				// Skip if there is no 'users' key in the users.yml file
-				if (!userFileYml.containsKey("users")) {
-					Logger.log("[!] Invalid user file for world %s, skipping.", false, worldName);
+				for (UserPermissions user : repeated.values()) {
+					try {
+						sink.replaceOne(new BasicDBObject("uuid", user.uuid), processUser(user), user.uuid);
+					} catch (IOException e) {
+						USERS_FAILED.increment();
+						Logger.log("[!] Could not process user '%s' (%s)", false, user.uuid, e.toString());
+						Logger.trace(e);
+					}
+				}
+				
+			}
+			
+			if (!context.isFleet())
+				Logger.log("[*] Merged %d entries from %d world(s) into %d users", false, entries + users.entries, worlds.length, users.users);
+			
+			long elapsed = System.currentTimeMillis() - started;
+			Logger.log(
+					"[*] Processed %d users in %.1f s (%.1f users/sec)",
+					false,
+					processed[0],
+					elapsed / 1000d,
+					elapsed == 0 ? 0d : processed[0] * 1000d / elapsed
+			);
+			
+			Logger.log("[*] Read %d Essentials userdata files; %d needed a full YAML parse", false, ESSENTIALS_FILES.get(), FULL_PARSES.get());
+			
+			Logger.log("[*] Flushing the remaining bulk writes to the DB");
+			sink.close();
+			journal.close();
+			Logger.log("[*] Finished executing bulk writes! Woop woop");
+			
+			if (indexes != null)
+				indexes.createAfterLoad(db);
+			
+			return true;
+			
+		} catch (FileNotFoundException e) {
+			Logger.log("Error: file not found; %s", false, e.getMessage());
+			return false;
+		} catch (YAMLException e) {
+			Logger.log("Error: invalid users.yml; %s", false, e.getMessage());
+			return false;
+		} catch (Exception e) {
+			MigratorSetup.logFailure(e);
+			return false;
+		} finally {
+			if (target != null)
+				target.close();
+		}
+		
+	}
+	
+	/**
+	 * Reads a world's bPermissions users.yml, merging its entries into
+	 * those of the worlds read before it: groups are unioned, and meta
+	 * is merged, with later entries taking precedence. A user listed
+	 * more than once in the file is merged in the same way.
+	 * 
+	 * @param bPermsFolder bPermissions folder
+	 * @param world Name of the world to read
+	 * @param merged Map of UUID to merged permissions, in the order
+	 * 		   users were first seen
+	 * @param only UUIDs of the users to read, or null to read every user
+	 * @return Number of entries read
+	 * @throws IOException If the users.yml file could not be read
+	 */
+	@SuppressWarnings("unchecked")
+	private int readWorld(File bPermsFolder, String world, Map<String, UserPermissions> merged, Set<String> only) throws IOException {
+		
+		int entries = 0;
+		
+		try (YamlMapStream users = openWorld(bPermsFolder, world)) {
+			
+			while (users.hasNext()) {
+				
+				Entry<String, Object> user = users.next();
+				if (only != null && !only.contains(user.getKey()))
+					continue;
+				if (!(user.getValue() instanceof Map)) {
+					Logger.log("[!] Invalid entry for user '%s' in world %s, skipping.", false, user.getKey(), world);
 					continue;
 				}
 				
-				/*
-				 * Iterate over all users in the world's users.yml
-				 */
-				Map<String, Object> users = (Map<String, Object>)userFileYml.get("users");
-				for (Entry<String, Object> user : users.entrySet()) {
-					
-					String uuid = user.getKey();
-					Logger.log("[*] Getting perms for user '%s'", true, uuid);
-					
-					// Create DBO for user to insert
-					DBObject userDBO = new BasicDBObject();
-					userDBO.put("uuid", user.getKey());
-					
-					/*
-					 * Get user's meta and groups from bPermissions config
-					 */
-					Map<String, Object> data = (Map<String, Object>) user.getValue();
-					List<String> groups      = data.containsKey("groups") ? (List<String>) data.get("groups") : new ArrayList<String>();
-					
-					// Remove any ignored groups
-					groups.removeIf((q) -> {
-						for (String s : asker.getAnswer("whitelistGroups").split(","))
-							if (s.equalsIgnoreCase(q)) return false;
-						return true;
-					});
-					
-					/*
-					Nope; don't skip users - they need their balances!
-					
-					// Skip if they have no non-ignored groups
+				merged.computeIfAbsent(user.getKey(), UserPermissions::new).merge((Map<String, Object>) user.getValue());
+				entries++;
+				
+			}
+			
+		}
+		
+		return entries;
+		
+	}
+	
+	/**
+	 * Opens a stream of the users in a world's bPermissions users.yml
+	 * 
+	 * @param bPermsFolder bPermissions folder
+	 * @param world Name of the world
+	 * @return Stream of the users' entries; empty if the file has none
+	 * @throws IOException If the users.yml file could not be opened
+	 */
+	private YamlMapStream openWorld(File bPermsFolder, String world) throws IOException {
+		
+		Logger.log("[*] Loading permissions from world '%s'", false, world);
+		File userFile = new File(new File(bPermsFolder, world), "users.yml");
+		
+		Reader reader = new UnicodeReader(new BufferedInputStream(new FileInputStream(userFile)));
+		YamlMapStream users;
+		
+		try {
+			users = new YamlMapStream(reader, userFile.getName(), "users");
+		} catch (IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+		
+		// Skip if there is no 'users' key in the users.yml file
+		if (!users.isPresent())
+			Logger.log("[!] Invalid user file for world %s, skipping.", false, world);
+		
+		return users;
+		
+	}
+	
+	/**
+	 * Builds the document for a single user from their merged
+	 * bPermissions data and Essentials userdata file. This does not
+	 * touch the DB, so it is safe to call from multiple threads.
+	 * 
+	 * @param user User's merged bPermissions data
+	 * @return User document
+	 * @throws IOException If the user's Essentials file could not be read
+	 */
+	private DBObject processUser(UserPermissions user) throws IOException {
+		
+		String uuid = user.uuid;
+		Logger.log("[*] Getting perms for user '%s'", true, uuid);
+		
+		// Create DBO for user to insert
+		DBObject userDBO = new BasicDBObject();
+		userDBO.put("uuid", uuid);
+		
+		// Remove any ignored groups, and rename the rest
+		List<String> groups = groupFilter.apply(new ArrayList<String>(user.groups));
+		
+		/*
+		Nope; don't skip users - they need their balances!
+		
+		// Skip if they have no non-ignored groups
+		
+		if (groups.size() == 0) {
+			Logger.log("[!] Skipping user '%s'; no relevant groups found", true, uuid);
+			continue;
+		}*/
+		
+		userDBO.put("groups", groups);
+			
+		// Get their meta if it exists and we want meta
+		if (customMeta) { 
+			
+			if (user.meta.containsKey("prefix")) userDBO.put("custom_prefix", user.meta.get("prefix"));
+			if (user.meta.containsKey("suffix")) userDBO.put("custom_suffix", user.meta.get("suffix"));
+			
+		}
+		
+		/*
+		 * Attempt to get user's Essentials file
+		 */
+		Logger.log("[*] Getting balance/name of user '%s'", true, uuid);
+		
+		File essentialsFile = new File(userDataFolder, String.format("%s.yml", uuid));
+		if (!essentialsFile.exists()) {
+			
+			Logger.log("[!] No userdata file for user '%s'", true, uuid);
+			
+			// Load super-complicated defaults
+			userDBO.put("balance", 0d);
+			
+		} else {
+		
+			// Load their Essentials userdata; only the keys we need are
+			// scanned for, unless the file needs a full parse.
+			long start = READ.start();
+			byte[] essData = Files.readAllBytes(essentialsFile.toPath());
+			READ.stop(start);
+			
+			start = PARSE.start();
+			Map<String, Object> essYaml = ESSENTIALS_KEYS.scan(essData);
+			if (essYaml == null) {
+				Logger.log("[*] Fully parsing userdata file of user '%s'", true, uuid);
+				essYaml = loadYaml(new ByteArrayInputStream(essData), essentialsFile.getName());
+				FULL_PARSES.increment();
+			}
+			ESSENTIALS_FILES.increment();
+			PARSE.stop(start);
+			
+			// Add their username to DBO
+			if (essYaml.containsKey("lastAccountName")) 
+				userDBO.put("name", (String)essYaml.get("lastAccountName"));
+			
+			// Add their balance to DBO
+			if (essYaml.containsKey("money"))
+				userDBO.put("balance", essYaml.get("money") instanceof String ? Double.parseDouble((String) essYaml.get("money")) :
+									   essYaml.get("money") instanceof Number ? ((Number)essYaml.get("money")).doubleValue() : 0d);
+			else
+				userDBO.put("balance", 0d);
+		
+		}
+		
+		return userDBO;
+		
+	}
+	
+	/**
+	 * Loads a YAML document into a map
+	 * 
+	 * @param in Stream to load from; not closed
+	 * @param name Name of the document, for errors
+	 * @return Top-level map of the document
+	 * @throws IOException If the document is not a map
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> loadYaml(InputStream in, String name) throws IOException {
+		
+		Object yml = YAML.get().load(in);
+		if (!(yml instanceof Map))
+			throw new IOException(String.format("'%s' is not a YAML map", name));
+		
+		return (Map<String, Object>) yml;
+		
+	}
+
+	/**
+	 * The users to process: those in a streamed world's users.yml, as
+	 * they are read, merged with their entries in the worlds read up
+	 * front; then the users only in those worlds. Users completed in
+	 * the journal are skipped. Later entries of a user the streamed
+	 * world lists more than once are not given out, but their UUIDs are
+	 * kept for the user to be merged and written again. Only used by
+	 * the pipeline's producer.
+	 */
+	private static class UserStream implements Iterator<UserPermissions>, Closeable {
+		
+		private final YamlMapStream stream;
+		private final String world;
+		private final Map<String, UserPermissions> merged;
+		private final CheckpointJournal journal;
+		
+		private Iterator<UserPermissions> rest;
+		private UserPermissions next;
+		
+		// UUIDs read from the streamed world, and those it lists more than once
+		private final Set<String> streamed = new HashSet<String>();
+		private final Set<String> repeated = new LinkedHashSet<String>();
+		
+		// Entries read from the streamed world, and users seen
+		private int entries;
+		private int users;
+		
+		/**
+		 * Constructs a UserStream
+		 * 
+		 * @param stream Users of the streamed world, or null
+		 * @param world Name of the streamed world, or null
+		 * @param merged Users of the worlds read up front, by UUID;
+		 * 		   emptied as the stream is read
+		 * @param journal Journal of completed users
+		 */
+		UserStream(YamlMapStream stream, String world, Map<String, UserPermissions> merged, CheckpointJournal journal) {
+			
+			this.stream = stream;
+			this.world = world;
+			this.merged = merged;
+			this.journal = journal;
+			
+		}
+		
+		@SuppressWarnings("unchecked")
+		public boolean hasNext() {
+			
+			long start = MERGE.start();
+			
+			try {
+				
+				while (next == null) {
 					
-					if (groups.size() == 0) {
-						Logger.log("[!] Skipping user '%s'; no relevant groups found", true, uuid);
-						continue;
-					}*/
+					UserPermissions user;
 					
-					userDBO.put("groups", groups);
+					if (stream != null && stream.hasNext()) {
 						
-					// Get their meta if it exists and we want meta
-					if (asker.getAnswer("customMeta").equalsIgnoreCase("y")
-							&& data.containsKey("meta")) { 
+						Entry<String, Object> entry = stream.next();
+						if (!(entry.getValue() instanceof Map)) {
+							Logger.log("[!] Invalid entry for user '%s' in world %s, skipping.", false, entry.getKey(), world);
+							continue;
+						}
 						
-						if (((Map)data.get("meta")).containsKey("prefix")) userDBO.put("custom_prefix", ((Map)data.get("meta")).get("prefix"));
-						if (((Map)data.get("meta")).containsKey("suffix")) userDBO.put("custom_suffix", ((Map)data.get("meta")).get("suffix"));
+						// The first entry has been given out already; the user
+						// is written again once every entry has been merged
+						entries++;
+						if (!streamed.add(entry.getKey())) {
+							Logger.log("[!] User '%s' is listed more than once in world %s; merging their entries.", false, entry.getKey(), world);
+							repeated.add(entry.getKey());
+							continue;
+						}
 						
-					}
-					
-					/*
-					 * Attempt to get user's Essentials file
-					 */
-					Logger.log("[*] Getting balance/name of user '%s'", true, uuid);
-					
-					File essentialsFile = new File(new File(asker.getAnswer("userData")), String.format("%s.yml", uuid));
-					if (!essentialsFile.exists()) {
+						user = new UserPermissions(entry.getKey());
+						user.merge((Map<String, Object>) entry.getValue());
 						
-						Logger.log("[!] No userdata file for user '%s'", true, uuid);
-						
-						// Load super-complicated defaults
-						userDBO.put("balance", 0d);
+						UserPermissions others = merged.remove(user.uuid);
+						if (others != null)
+							user.merge(others);
 						
 					} else {
-					
-						// Load their Essentials userdata
-						Map<String, Object> essYaml = (Map<String, Object>) yaml.load(new FileInputStream(essentialsFile));
 						
-						// Add their username to DBO
-						if (essYaml.containsKey("lastAccountName")) 
-							userDBO.put("name", (String)essYaml.get("lastAccountName"));
+						if (rest == null)
+							rest = merged.values().iterator();
+						if (!rest.hasNext())
+							return false;
+						
+						user = rest.next();
 						
-						// Add their balance to DBO
-						if (essYaml.containsKey("money"))
-							userDBO.put("balance", essYaml.get("money") instanceof String ? Double.parseDouble((String) essYaml.get("money")) :
-												   essYaml.get("money") instanceof Number ? ((Number)essYaml.get("money")).doubleValue() : 0d);
-						else
-							userDBO.put("balance", 0d);
-					
 					}
 					
-					/*
-					 * Finally, add them to the DB (via an upsert)!
-					 */
-					bulkOperation
-						.find(new BasicDBObject("uuid", uuid))
-						.upsert()
-						.replaceOne(userDBO);
-					
-					// Print out some progress
-					if (++processed % 100 == 0)
-						Logger.log("[*] Processed %d users", false, processed);
+					users++;
+					if (!journal.isCompleted(user.uuid))
+						next = user;
 					
 				}
-					
+				
+				return true;
+				
+			} finally {
+				MERGE.stop(start);
 			}
 			
-			Logger.log("[*] Executing the bulk operation on DB (warning: this could take a while)");
-			bulkOperation.execute(WriteConcern.MAJORITY);
-			Logger.log("[*] Finished executing bulk operation! Woop woop");
+		}
+		
+		public UserPermissions next() {
 			
-			return true;
+			if (!hasNext())
+				throw new NoSuchElementException();
+			
+			UserPermissions user = next;
+			next = null;
+			return user;
+			
+		}
+		
+		public void close() throws IOException {
+			
+			if (stream != null)
+				stream.close();
 			
-		} catch (UnknownHostException e) {
-			Logger.log("Error: unknown host");
-			return false;
-		} catch (NumberFormatException e) {
-			Logger.log("Error: invalid port");
-			return false;
-		} catch (MongoException e) {
-			Logger.log("Error: database error; %s", false, e.getMessage());
-			return false;
-		} catch (FileNotFoundException e) {
-			Logger.log("Error: file not found; %s", false, e.getMessage());
-			return false;
 		}
 		
 	}
-
+	
+	/**
+	 * A user's bPermissions data, merged across worlds (and servers, in a fleet)
+	 */
+	private static class UserPermissions {
+		
+		private final String uuid;
+		private final Set<String> groups = new LinkedHashSet<String>();
+		private final Map<Object, Object> meta = new HashMap<Object, Object>();
+		
+		UserPermissions(String uuid) {
+			this.uuid = uuid;
+		}
+		
+		/**
+		 * Merges a world's entry for this user into their data
+		 * 
+		 * @param data User's data in the world's users.yml
+		 */
+		void merge(Map<String, Object> data) {
+			
+			if (data.get("groups") instanceof Collection)
+				for (Object group : (Collection<?>) data.get("groups"))
+					groups.add(String.valueOf(group));
+			
+			if (data.get("meta") instanceof Map)
+				meta.putAll((Map<?, ?>) data.get("meta"));
+			
+		}
+		
+		/**
+		 * Merges another server's data for this user into their data,
+		 * as if it were one more world
+		 * 
+		 * @param other User's data on the other server
+		 * @return This object
+		 */
+		UserPermissions merge(UserPermissions other) {
+			
+			groups.addAll(other.groups);
+			meta.putAll(other.meta);
+			return this;
+			
+		}
+		
+	}
+	
 }
@@ -0,0 +1,244 @@
+package com.defiancecraft.configure.migrators;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+
+import com.defiancecraft.configure.util.Logger;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import com.mongodb.MongoException;
+
+/**
+ * Resolves user UUIDs to references to their documents in
+ * the users collection, in chunks rather than one at a time.
+ *
+ * Each call to {@link #resolve(Collection)} looks up every uncached
+ * UUID with a single `$in` query, and creates any users which do not
+ * exist with a single bulk upsert. Resolved IDs are cached for the
+ * lifetime of the resolver, so a UUID is only ever looked up once.
+ *
+ * An offline resolver (for dry runs) never touches the DB; it gives
+ * each user a synthetic ObjectId derived from their UUID, so the same
+ * user always gets the same ID.
+ */
+public class UserResolver {
+
+	private final DB db;
+	private final DBCollection users;
+	private final String usersName;
+	private final Map<String, Object> ids = new HashMap<String, Object>();
+
+	private int roundTrips = 0;
+	private int naiveRoundTrips = 0;
+	private int created = 0;
+
+	/**
+	 * Constructs a UserResolver
+	 *
+	 * @param db Database object to use
+	 * @param users Users DBCollection
+	 */
+	public UserResolver(DB db, DBCollection users) {
+		this(db, users, users.getName());
+	}
+
+	private UserResolver(DB db, DBCollection users, String usersName) {
+		this.db = db;
+		this.users = users;
+		this.usersName = usersName;
+	}
+
+	/**
+	 * Creates an offline UserResolver, which never touches the DB
+	 *
+	 * @param usersName Name of the users collection, for references
+	 * @return UserResolver
+	 */
+	public static UserResolver offline(String usersName) {
+		return new UserResolver(null, null, usersName);
+	}
+
+	/**
+	 * Obtains references to a chunk of users by their UUIDs,
+	 * creating any users that do not exist.
+	 *
+	 * @param uuids UUIDs of users
+	 * @return Map of UUID to DB Reference to user.
+	 * @throws MongoException If a DB error occurs
+	 */
+	public Map<String, DBRef> resolve(Collection<String> uuids) throws MongoException {
+
+		Set<String> missing = new LinkedHashSet<String>();
+		for (String uuid : uuids)
+			if (!ids.containsKey(uuid))
+				missing.add(uuid);
+
+		// Resolving one at a time costs a findOne per user,
+		// plus an insert for each user that does not exist.
+		naiveRoundTrips += uuids.size();
+
+		if (users == null) {
+
+			for (String uuid : missing)
+				ids.put(uuid, syntheticId(uuid));
+			missing.clear();
+
+		}
+
+		if (!missing.isEmpty()) {
+
+			lookup(missing);
+			missing.removeAll(ids.keySet());
+			naiveRoundTrips += missing.size();
+
+		}
+
+		if (!missing.isEmpty()) {
+
+			create(missing);
+			missing.removeAll(ids.keySet());
+
+			// Users that matched rather than upserted were created
+			// by someone else in the meantime; look them up again.
+			if (!missing.isEmpty())
+				lookup(missing);
+
+		}
+
+		Map<String, DBRef> refs = new LinkedHashMap<String, DBRef>();
+		for (String uuid : uuids) {
+
+			if (!ids.containsKey(uuid))
+				throw new MongoException(String.format("Could not resolve user '%s'", uuid));
+
+			refs.put(uuid, new DBRef(db, usersName, ids.get(uuid)));
+
+		}
+
+		return refs;
+
+	}
+
+	/**
+	 * Derives an ObjectId from a UUID, for offline resolvers
+	 *
+	 * @param uuid UUID of the user
+	 * @return ObjectId from the first 12 bytes of the UUID's SHA-1 hash
+	 */
+	private static ObjectId syntheticId(String uuid) {
+
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(uuid.getBytes(StandardCharsets.UTF_8));
+			return new ObjectId(Arrays.copyOf(hash, 12));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not supported", e);
+		}
+
+	}
+
+	/**
+	 * Looks up the IDs of the given users with a single
+	 * `$in` query, adding any that are found to the cache.
+	 *
+	 * @param uuids UUIDs to look up
+	 */
+	private void lookup(Set<String> uuids) {
+
+		DBObject query = new BasicDBObject("uuid", new BasicDBObject("$in", new ArrayList<String>(uuids)));
+		DBCursor cursor = users.find(query, new BasicDBObject("uuid", 1));
+		roundTrips++;
+
+		try {
+			for (DBObject user : cursor)
+				ids.put((String) user.get("uuid"), user.get("_id"));
+		} finally {
+			cursor.close();
+		}
+
+	}
+
+	/**
+	 * Creates the given users with a single bulk upsert,
+	 * adding the IDs of the created users to the cache.
+	 *
+	 * @param uuids UUIDs of users to create
+	 */
+	private void create(Set<String> uuids) {
+
+		List<String> ordered = new ArrayList<String>(uuids);
+		BulkWriteOperation bulk = users.initializeUnorderedBulkOperation();
+
+		for (String uuid : ordered) {
+			Logger.log("[*] Creating user '%s'", true, uuid);
+			bulk.find(new BasicDBObject("uuid", uuid))
+				.upsert()
+				.updateOne(new BasicDBObject("$setOnInsert", new BasicDBObject("uuid", uuid)));
+		}
+
+		BulkWriteResult result = bulk.execute();
+		roundTrips++;
+
+		for (BulkWriteUpsert upsert : result.getUpserts())
+			ids.put(ordered.get(upsert.getIndex()), upsert.getId());
+
+		created += result.getUpserts().size();
+
+	}
+
+	/**
+	 * Gets the number of round trips made to the DB
+	 *
+	 * @return Number of round trips
+	 */
+	public int getRoundTrips() {
+		return roundTrips;
+	}
+
+	/**
+	 * Gets the number of round trips saved compared to
+	 * resolving each user with its own findOne/insert.
+	 *
+	 * @return Number of round trips saved
+	 */
+	public int getRoundTripsSaved() {
+		return naiveRoundTrips - roundTrips;
+	}
+
+	/**
+	 * Gets the number of users created
+	 *
+	 * @return Number of users created
+	 */
+	public int getCreated() {
+		return created;
+	}
+
+	/**
+	 * Gets the number of distinct users resolved
+	 *
+	 * @return Number of users resolved
+	 */
+	public int getResolved() {
+		return ids.size();
+	}
+
+}
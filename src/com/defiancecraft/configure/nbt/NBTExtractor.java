@@ -0,0 +1,29 @@
+package com.defiancecraft.configure.nbt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.jnbt.Tag;
+
+/**
+ * Extracts a fixed set of tags from an NBT document, by path. Paths are
+ * the names of nested compound tags separated by '/', relative to the
+ * root compound, e.g. "EnderItems" or "Level/TileEntities".
+ *
+ * Implementations must be safe to share between threads.
+ */
+public interface NBTExtractor {
+
+	/**
+	 * Reads the tags at this extractor's paths from an uncompressed
+	 * NBT stream, positioned at the root tag. The stream is not closed,
+	 * and may not be read to the end.
+	 *
+	 * @param in Uncompressed NBT stream
+	 * @return Map of path to tag; paths which were not found are absent
+	 * @throws IOException If the stream could not be read, or is not NBT
+	 */
+	public Map<String, Tag> extract(InputStream in) throws IOException;
+
+}
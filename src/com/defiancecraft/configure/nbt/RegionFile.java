@@ -0,0 +1,290 @@
+package com.defiancecraft.configure.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * An Anvil region file (r.&lt;x&gt;.&lt;z&gt;.mca), holding up to 32x32
+ * chunks. The file is memory-mapped, and its sector table decoded, when
+ * it is opened; chunks are read and decompressed from the mapping on
+ * demand, so any number of threads may read chunks of the same region
+ * at once.
+ *
+ * Chunks are decompressed into pooled buffers per thread, as player
+ * files are by {@link com.defiancecraft.configure.util.PlayerFileScanner}.
+ */
+public class RegionFile {
+
+	public static final int CHUNKS = 1024;
+
+	private static final int SECTOR_SIZE = 4096;
+	private static final int HEADER_SIZE = 2 * SECTOR_SIZE;
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private static final int COMPRESSION_GZIP = 1;
+	private static final int COMPRESSION_ZLIB = 2;
+	private static final int COMPRESSION_NONE = 3;
+	private static final int COMPRESSION_EXTERNAL = 0x80;
+
+	private static final Pattern NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+	// Chunks are copied out of the mapping and inflated into buffers per thread, grown as needed
+	private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+	private static final ThreadLocal<byte[]> INFLATED_BUFFERS = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE * 4]);
+	private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+	private final Path file;
+	private final int regionX;
+	private final int regionZ;
+	private final ByteBuffer data;
+
+	// Sector offset and count of each chunk, by index; 0 if absent
+	private final int[] offsets = new int[CHUNKS];
+	private final int[] sectors = new int[CHUNKS];
+	private final int[] chunks;
+
+	private RegionFile(Path file, int regionX, int regionZ, ByteBuffer data) throws IOException {
+
+		this.file = file;
+		this.regionX = regionX;
+		this.regionZ = regionZ;
+		this.data = data;
+
+		if (data.capacity() > 0 && data.capacity() < HEADER_SIZE)
+			throw new IOException(String.format("'%s' has a truncated header", file.getFileName()));
+
+		int[] present = new int[CHUNKS];
+		int count = 0;
+
+		// Each entry is a 3-byte sector offset and a 1-byte sector count
+		for (int i = 0; data.capacity() > 0 && i < CHUNKS; i++) {
+
+			int location = data.getInt(i * 4);
+			offsets[i] = location >>> 8;
+			sectors[i] = location & 0xFF;
+
+			if (offsets[i] != 0 && sectors[i] != 0)
+				present[count++] = i;
+
+		}
+
+		this.chunks = Arrays.copyOf(present, count);
+
+	}
+
+	/**
+	 * Checks whether a file name is a region file name
+	 *
+	 * @param name File name
+	 * @return Whether it is a region file name
+	 */
+	public static boolean isRegionFile(String name) {
+		return NAME.matcher(name).matches();
+	}
+
+	/**
+	 * Opens and memory-maps a region file, and decodes its sector table
+	 *
+	 * @param file Region file
+	 * @return RegionFile
+	 * @throws IOException If the file could not be mapped, or its name
+	 * 		   or header is invalid
+	 */
+	public static RegionFile open(Path file) throws IOException {
+
+		Matcher name = NAME.matcher(file.getFileName().toString());
+		if (!name.matches())
+			throw new IOException(String.format("'%s' is not a region file", file.getFileName()));
+
+		// The mapping stays valid once the channel is closed
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new RegionFile(file, Integer.parseInt(name.group(1)), Integer.parseInt(name.group(2)), data);
+		}
+
+	}
+
+	/**
+	 * Gets the region file's path
+	 *
+	 * @return Path
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the size of the region file
+	 *
+	 * @return Size in bytes
+	 */
+	public long getSize() {
+		return data.capacity();
+	}
+
+	/**
+	 * Gets the indices of the chunks the sector table lists, in the
+	 * order of the table (by z, then x)
+	 *
+	 * @return Chunk indices, from 0 to {@link #CHUNKS} - 1
+	 */
+	public int[] getChunks() {
+		return chunks.clone();
+	}
+
+	/**
+	 * Gets the x coordinate of a chunk in the world
+	 *
+	 * @param index Index of the chunk in the region
+	 * @return Chunk x coordinate
+	 */
+	public int getChunkX(int index) {
+		return regionX * 32 + (index & 31);
+	}
+
+	/**
+	 * Gets the z coordinate of a chunk in the world
+	 *
+	 * @param index Index of the chunk in the region
+	 * @return Chunk z coordinate
+	 */
+	public int getChunkZ(int index) {
+		return regionZ * 32 + (index >> 5);
+	}
+
+	/**
+	 * Reads and decompresses a chunk into this thread's pooled buffer.
+	 * The returned buffer is only valid until the next call to this
+	 * method on the same thread.
+	 *
+	 * @param index Index of the chunk in the region
+	 * @return Heap buffer over the chunk's uncompressed NBT
+	 * @throws IOException If the chunk is absent, corrupt, or in an
+	 * 		   unknown compression format
+	 */
+	public ByteBuffer readChunk(int index) throws IOException {
+
+		long start = (long) offsets[index] * SECTOR_SIZE;
+
+		if (offsets[index] < 2 || start + 5 > data.capacity())
+			throw new IOException(String.format("chunk %d,%d is outside the file", getChunkX(index), getChunkZ(index)));
+
+		int length = data.getInt((int) start);
+		int compression = data.get((int) start + 4) & 0xFF;
+
+		if ((compression & COMPRESSION_EXTERNAL) != 0)
+			return decompress(compression & ~COMPRESSION_EXTERNAL, Files.readAllBytes(getExternalFile(index)), -1, index);
+
+		// The last sector of a file is not always padded, so
+		// the length is checked against the file's size too
+		if (length < 1 || length > sectors[index] * SECTOR_SIZE - 4 || start + 4 + length > data.capacity())
+			throw new IOException(String.format("chunk %d,%d has an invalid length", getChunkX(index), getChunkZ(index)));
+
+		byte[] compressed = BUFFERS.get();
+		if (compressed.length < length - 1) {
+			compressed = new byte[Integer.highestOneBit(length - 1) << 1];
+			BUFFERS.set(compressed);
+		}
+
+		// Absolute bulk reads need a buffer of our own position
+		ByteBuffer chunk = data.duplicate();
+		chunk.position((int) start + 5);
+		chunk.get(compressed, 0, length - 1);
+
+		return decompress(compression, compressed, length - 1, index);
+
+	}
+
+	/**
+	 * Gets the file a chunk too large for the region is stored in
+	 */
+	private Path getExternalFile(int index) {
+		return file.resolveSibling(String.format("c.%d.%d.mcc", getChunkX(index), getChunkZ(index)));
+	}
+
+	/**
+	 * Decompresses a chunk into this thread's pooled inflate buffer
+	 *
+	 * @param length Length of the compressed data, or -1 for all of it
+	 */
+	private ByteBuffer decompress(int compression, byte[] compressed, int length, int index) throws IOException {
+
+		if (length < 0)
+			length = compressed.length;
+
+		byte[] buffer = INFLATED_BUFFERS.get();
+		int inflated = 0;
+
+		switch (compression) {
+
+			case COMPRESSION_ZLIB:
+
+				Inflater inflater = INFLATERS.get();
+				inflater.reset();
+				inflater.setInput(compressed, 0, length);
+
+				try {
+					while (!inflater.finished()) {
+						if (inflated == buffer.length) {
+							buffer = Arrays.copyOf(buffer, buffer.length * 2);
+							INFLATED_BUFFERS.set(buffer);
+						}
+						int read = inflater.inflate(buffer, inflated, buffer.length - inflated);
+						if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+							throw new IOException(String.format("chunk %d,%d is truncated", getChunkX(index), getChunkZ(index)));
+						inflated += read;
+					}
+				} catch (DataFormatException e) {
+					throw new IOException(String.format("chunk %d,%d is not valid zlib", getChunkX(index), getChunkZ(index)), e);
+				}
+
+				break;
+
+			case COMPRESSION_GZIP:
+
+				try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed, 0, length))) {
+					int read;
+					while ((read = in.read(buffer, inflated, buffer.length - inflated)) >= 0) {
+						inflated += read;
+						if (inflated == buffer.length) {
+							buffer = Arrays.copyOf(buffer, buffer.length * 2);
+							INFLATED_BUFFERS.set(buffer);
+						}
+					}
+				}
+
+				break;
+
+			case COMPRESSION_NONE:
+
+				if (buffer.length < length) {
+					buffer = new byte[length];
+					INFLATED_BUFFERS.set(buffer);
+				}
+				System.arraycopy(compressed, 0, buffer, 0, length);
+				inflated = length;
+
+				break;
+
+			default:
+				throw new IOException(String.format("chunk %d,%d has unknown compression %d", getChunkX(index), getChunkZ(index), compression));
+
+		}
+
+		return ByteBuffer.wrap(buffer, 0, inflated);
+
+	}
+
+}
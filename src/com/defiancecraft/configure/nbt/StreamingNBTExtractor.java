@@ -0,0 +1,347 @@
+package com.defiancecraft.configure.nbt;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jnbt.ByteArrayTag;
+import org.jnbt.ByteTag;
+import org.jnbt.CompoundTag;
+import org.jnbt.DoubleTag;
+import org.jnbt.EndTag;
+import org.jnbt.FloatTag;
+import org.jnbt.IntArrayTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.LongTag;
+import org.jnbt.NBTConstants;
+import org.jnbt.NBTUtils;
+import org.jnbt.ShortTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+/**
+ * An NBTExtractor which walks the NBT stream without building a tree,
+ * only building (jnbt) tags for the requested paths.
+ *
+ * Tags which are not on a requested path are skipped using their length
+ * prefixes, without allocating them; their names are compared with the
+ * path as raw bytes. Reading stops as soon as every path has been found.
+ */
+public class StreamingNBTExtractor implements NBTExtractor {
+
+	private static final int SCRATCH_SIZE = 8192;
+
+	// Scratch buffer for skipping and comparing names, per thread
+	private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
+	private final Node root = new Node(null);
+	private final int pathCount;
+
+	/**
+	 * Constructs a StreamingNBTExtractor
+	 *
+	 * @param paths Paths of the tags to extract
+	 */
+	public StreamingNBTExtractor(String... paths) {
+
+		for (String path : paths) {
+
+			Node node = root;
+			for (String name : path.split("/"))
+				node = node.child(name);
+
+			node.path = path;
+
+		}
+
+		this.pathCount = paths.length;
+
+	}
+
+	public Map<String, Tag> extract(InputStream in) throws IOException {
+
+		DataInputStream data = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+		Map<String, Tag> tags = new LinkedHashMap<String, Tag>();
+
+		if (data.readUnsignedByte() != NBTConstants.TYPE_COMPOUND)
+			throw new IOException("root tag is not a compound");
+
+		skip(data, data.readUnsignedShort());
+		walkCompound(data, root, tags);
+
+		return tags;
+
+	}
+
+	/**
+	 * Walks the payload of a compound tag, building the children on
+	 * a requested path and skipping the rest.
+	 *
+	 * @return Whether every path has been found, in which case the
+	 * 		   rest of the stream is left unread
+	 */
+	private boolean walkCompound(DataInputStream in, Node node, Map<String, Tag> tags) throws IOException {
+
+		byte[] scratch = SCRATCH.get();
+		int type;
+
+		while ((type = in.readUnsignedByte()) != NBTConstants.TYPE_END) {
+
+			int length = in.readUnsignedShort();
+			Node child = null;
+
+			// Only read the name if it could match a child
+			if (!node.children.isEmpty() && length <= scratch.length) {
+				in.readFully(scratch, 0, length);
+				child = node.find(scratch, length);
+			} else {
+				skip(in, length);
+			}
+
+			if (child != null && child.path != null) {
+
+				tags.put(child.path, readPayload(in, type, child.name));
+				if (tags.size() == pathCount)
+					return true;
+
+			} else if (child != null && type == NBTConstants.TYPE_COMPOUND) {
+
+				if (walkCompound(in, child, tags))
+					return true;
+
+			} else {
+				skipPayload(in, type);
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Skips the payload of a tag without allocating it
+	 */
+	private void skipPayload(DataInputStream in, int type) throws IOException {
+
+		switch (type) {
+
+			case NBTConstants.TYPE_BYTE:   skip(in, 1); break;
+			case NBTConstants.TYPE_SHORT:  skip(in, 2); break;
+			case NBTConstants.TYPE_INT:    skip(in, 4); break;
+			case NBTConstants.TYPE_LONG:   skip(in, 8); break;
+			case NBTConstants.TYPE_FLOAT:  skip(in, 4); break;
+			case NBTConstants.TYPE_DOUBLE: skip(in, 8); break;
+			case NBTConstants.TYPE_BYTE_ARRAY: skip(in, in.readInt()); break;
+			case NBTConstants.TYPE_INT_ARRAY:  skip(in, in.readInt() * 4L); break;
+			case NBTConstants.TYPE_STRING: skip(in, in.readUnsignedShort()); break;
+
+			case NBTConstants.TYPE_LIST: {
+
+				int elementType = in.readUnsignedByte();
+				int count = in.readInt();
+				int size = fixedSize(elementType);
+
+				if (size >= 0)
+					skip(in, (long) size * count);
+				else
+					for (int i = 0; i < count; i++)
+						skipPayload(in, elementType);
+
+				break;
+
+			}
+
+			case NBTConstants.TYPE_COMPOUND: {
+
+				int childType;
+				while ((childType = in.readUnsignedByte()) != NBTConstants.TYPE_END) {
+					skip(in, in.readUnsignedShort());
+					skipPayload(in, childType);
+				}
+
+				break;
+
+			}
+
+			default:
+				throw new IOException(String.format("invalid tag type %d", type));
+
+		}
+
+	}
+
+	/**
+	 * Gets the size of a fixed-size payload, or -1 if the
+	 * payload has a variable size
+	 */
+	private static int fixedSize(int type) {
+
+		switch (type) {
+			case NBTConstants.TYPE_END:    return 0;
+			case NBTConstants.TYPE_BYTE:   return 1;
+			case NBTConstants.TYPE_SHORT:  return 2;
+			case NBTConstants.TYPE_INT:    return 4;
+			case NBTConstants.TYPE_LONG:   return 8;
+			case NBTConstants.TYPE_FLOAT:  return 4;
+			case NBTConstants.TYPE_DOUBLE: return 8;
+			default: return -1;
+		}
+
+	}
+
+	/**
+	 * Reads the payload of a tag into a jnbt Tag
+	 */
+	private Tag readPayload(DataInputStream in, int type, String name) throws IOException {
+
+		switch (type) {
+
+			case NBTConstants.TYPE_END:    return new EndTag();
+			case NBTConstants.TYPE_BYTE:   return new ByteTag(name, in.readByte());
+			case NBTConstants.TYPE_SHORT:  return new ShortTag(name, in.readShort());
+			case NBTConstants.TYPE_INT:    return new IntTag(name, in.readInt());
+			case NBTConstants.TYPE_LONG:   return new LongTag(name, in.readLong());
+			case NBTConstants.TYPE_FLOAT:  return new FloatTag(name, in.readFloat());
+			case NBTConstants.TYPE_DOUBLE: return new DoubleTag(name, in.readDouble());
+
+			case NBTConstants.TYPE_BYTE_ARRAY: {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return new ByteArrayTag(name, bytes);
+			}
+
+			case NBTConstants.TYPE_INT_ARRAY: {
+				int[] ints = new int[in.readInt()];
+				for (int i = 0; i < ints.length; i++)
+					ints[i] = in.readInt();
+				return new IntArrayTag(name, ints);
+			}
+
+			case NBTConstants.TYPE_STRING:
+				return new StringTag(name, readString(in));
+
+			case NBTConstants.TYPE_LIST: {
+
+				int elementType = in.readUnsignedByte();
+				int count = in.readInt();
+				List<Tag> elements = new ArrayList<Tag>(Math.max(count, 0));
+
+				for (int i = 0; i < count; i++)
+					elements.add(readPayload(in, elementType, ""));
+
+				return new ListTag(name, NBTUtils.getTypeClass(elementType), elements);
+
+			}
+
+			case NBTConstants.TYPE_COMPOUND: {
+
+				Map<String, Tag> children = new HashMap<String, Tag>();
+				int childType;
+
+				while ((childType = in.readUnsignedByte()) != NBTConstants.TYPE_END) {
+					String childName = readString(in);
+					children.put(childName, readPayload(in, childType, childName));
+				}
+
+				return new CompoundTag(name, children);
+
+			}
+
+			default:
+				throw new IOException(String.format("invalid tag type %d", type));
+
+		}
+
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+
+		int length = in.readUnsignedShort();
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+
+	}
+
+	/**
+	 * Skips bytes by reading them into the scratch buffer; unlike
+	 * InputStream#skip, this never allocates and never skips short.
+	 */
+	private static void skip(DataInputStream in, long count) throws IOException {
+
+		if (count < 0)
+			throw new IOException("negative length");
+
+		byte[] scratch = SCRATCH.get();
+		while (count > 0) {
+			int read = in.read(scratch, 0, (int) Math.min(count, scratch.length));
+			if (read < 0)
+				throw new EOFException();
+			count -= read;
+		}
+
+	}
+
+	/**
+	 * A node in the tree of requested paths
+	 */
+	private static class Node {
+
+		private final String name;
+		private final byte[] nameBytes;
+		private final List<Node> children = new ArrayList<Node>();
+		private String path;
+
+		Node(String name) {
+			this.name = name;
+			this.nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+		}
+
+		Node child(String name) {
+
+			for (Node child : children)
+				if (child.name.equals(name))
+					return child;
+
+			Node child = new Node(name);
+			children.add(child);
+			return child;
+
+		}
+
+		/**
+		 * Finds the child whose name matches a raw, encoded name
+		 */
+		Node find(byte[] name, int length) {
+
+			outer:
+			for (Node child : children) {
+
+				if (child.nameBytes.length != length)
+					continue;
+
+				for (int i = 0; i < length; i++)
+					if (child.nameBytes[i] != name[i])
+						continue outer;
+
+				return child;
+
+			}
+
+			return null;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.defiancecraft.configure.nbt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jnbt.CompoundTag;
+import org.jnbt.NBTInputStream;
+import org.jnbt.Tag;
+
+/**
+ * An NBTExtractor which reads the whole document into a tree with
+ * jnbt, and then looks up each path in the tree.
+ */
+public class TreeNBTExtractor implements NBTExtractor {
+
+	private final List<String> paths;
+
+	/**
+	 * Constructs a TreeNBTExtractor
+	 *
+	 * @param paths Paths of the tags to extract
+	 */
+	public TreeNBTExtractor(String... paths) {
+		this.paths = Arrays.asList(paths);
+	}
+
+	@SuppressWarnings("resource")
+	public Map<String, Tag> extract(InputStream in) throws IOException {
+
+		// Not closed; the caller owns the stream
+		Tag root = new NBTInputStream(in, false).readTag();
+		if (!(root instanceof CompoundTag))
+			throw new IOException("root tag is not a compound");
+
+		Map<String, Tag> tags = new LinkedHashMap<String, Tag>();
+
+		for (String path : paths) {
+
+			Tag tag = root;
+			for (String name : path.split("/")) {
+				tag = tag instanceof CompoundTag ? ((CompoundTag) tag).getValue().get(name) : null;
+				if (tag == null)
+					break;
+			}
+
+			if (tag != null)
+				tags.put(path, tag);
+
+		}
+
+		return tags;
+
+	}
+
+}
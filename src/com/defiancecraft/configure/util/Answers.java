@@ -0,0 +1,214 @@
+package com.defiancecraft.configure.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.apache.commons.cli.CommandLine;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Answers to an {@link Asker}'s questions which were given up front,
+ * rather than at the prompt. Answers are looked up, by question name, in:
+ *
+ *     1. -D name=value options on the command line
+ *     2. DCCONF_NAME environment variables (e.g. dbHost is DCCONF_DB_HOST)
+ *     3. The --config file, either YAML or (if it ends with .properties)
+ *        a properties file, of name: value pairs
+ *
+ * With --yes, the summary is not confirmed, and questions without an
+ * answer take their default rather than prompting.
+ */
+public class Answers {
+
+	private static final String ENV_PREFIX = "DCCONF_";
+
+	private final Map<String, String> properties;
+	private final Map<String, String> environment;
+	private final Map<String, String> file;
+	private final boolean assumeYes;
+
+	/**
+	 * Constructs an Answers object
+	 *
+	 * @param properties Answers given on the command line
+	 * @param environment Environment variables
+	 * @param file Answers read from the config file
+	 * @param assumeYes Whether to run without prompting
+	 */
+	public Answers(Map<String, String> properties, Map<String, String> environment, Map<String, String> file, boolean assumeYes) {
+		this.properties = properties;
+		this.environment = environment;
+		this.file = file;
+		this.assumeYes = assumeYes;
+	}
+
+	/**
+	 * Gets the answers given by -D, --config and --yes on a
+	 * command line, and by the environment
+	 *
+	 * @param cmd CommandLine to read
+	 * @return Answers
+	 * @throws IOException If the config file could not be read
+	 * @throws IllegalArgumentException If the config file is not a map of answers
+	 */
+	public static Answers fromCommandLine(CommandLine cmd) throws IOException {
+
+		Map<String, String> properties = new HashMap<String, String>();
+		if (cmd.hasOption("D"))
+			for (Entry<Object, Object> property : cmd.getOptionProperties("D").entrySet())
+				properties.put(property.getKey().toString(), property.getValue().toString());
+
+		Map<String, String> file = cmd.hasOption("config")
+				? load(new File(cmd.getOptionValue("config")))
+				: Collections.<String, String>emptyMap();
+
+		return new Answers(properties, System.getenv(), file, cmd.hasOption("yes"));
+
+	}
+
+	/**
+	 * Gets an empty set of answers, so every question is asked
+	 *
+	 * @return Answers
+	 */
+	public static Answers none() {
+		return new Answers(Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap(), false);
+	}
+
+	/**
+	 * Gets a copy of these answers which takes the answers not given on
+	 * the command line or environment from a map, instead of the config
+	 * file, and which never prompts (e.g. for one server of a fleet)
+	 *
+	 * @param answers Answers to use instead of the config file's
+	 * @return Answers
+	 */
+	public Answers unattended(Map<String, String> answers) {
+		return new Answers(properties, environment, answers, true);
+	}
+
+	/**
+	 * Gets the answer to a question
+	 *
+	 * @param name Name of the question
+	 * @return The answer, or null if it was not given
+	 */
+	public String get(String name) {
+
+		if (properties.containsKey(name))
+			return properties.get(name);
+
+		String env = environment.get(getEnvironmentVariable(name));
+		if (env != null)
+			return env;
+
+		return file.get(name);
+
+	}
+
+	/**
+	 * Gets whether to run without prompting
+	 *
+	 * @return Whether --yes was given
+	 */
+	public boolean isAssumeYes() {
+		return assumeYes;
+	}
+
+	/**
+	 * Gets the environment variable holding the answer to a question;
+	 * e.g. DCCONF_DB_HOST for dbHost
+	 *
+	 * @param name Name of the question
+	 * @return Name of the environment variable
+	 */
+	public static String getEnvironmentVariable(String name) {
+
+		StringBuilder sb = new StringBuilder(ENV_PREFIX);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (i > 0 && Character.isUpperCase(c) && Character.isLowerCase(name.charAt(i - 1)))
+				sb.append('_');
+			sb.append(Character.toUpperCase(c));
+		}
+
+		return sb.toString();
+
+	}
+
+	/**
+	 * Loads a config file of answers
+	 */
+	private static Map<String, String> load(File configFile) throws IOException {
+
+		Map<String, String> answers = new HashMap<String, String>();
+
+		try (InputStream in = new FileInputStream(configFile)) {
+
+			if (configFile.getName().endsWith(".properties")) {
+
+				Properties properties = new Properties();
+				properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+				for (String name : properties.stringPropertyNames())
+					answers.put(name, properties.getProperty(name));
+
+			} else {
+
+				Object yaml = new Yaml().load(new InputStreamReader(in, StandardCharsets.UTF_8));
+				if (yaml == null)
+					return answers;
+				else if (!(yaml instanceof Map))
+					throw new IllegalArgumentException(String.format("config file '%s' is not a map of answers", configFile.getPath()));
+
+				answers.putAll(toAnswers((Map<?, ?>) yaml));
+
+			}
+
+		}
+
+		return answers;
+
+	}
+
+	/**
+	 * Converts a YAML map to answers
+	 *
+	 * @param yaml Map of question name to value
+	 * @return Answers, as strings
+	 * @see #toAnswer(Object)
+	 */
+	public static Map<String, String> toAnswers(Map<?, ?> yaml) {
+
+		Map<String, String> answers = new HashMap<String, String>();
+		for (Entry<?, ?> entry : yaml.entrySet())
+			answers.put(String.valueOf(entry.getKey()), toAnswer(entry.getValue()));
+
+		return answers;
+
+	}
+
+	/**
+	 * Converts a YAML value to an answer; booleans become y/n (as YAML
+	 * reads an unquoted yes/no as a boolean), and nulls become empty.
+	 */
+	private static String toAnswer(Object value) {
+
+		if (value == null)
+			return "";
+		else if (value instanceof Boolean)
+			return (Boolean) value ? "y" : "n";
+		else
+			return value.toString();
+
+	}
+
+}
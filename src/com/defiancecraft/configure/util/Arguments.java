@@ -0,0 +1,62 @@
+package com.defiancecraft.configure.util;
+
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * Helpers to read typed values from command line options.
+ */
+public class Arguments {
+
+	/**
+	 * Gets the value of an option as a positive integer
+	 * 
+	 * @param cmd CommandLine to read from
+	 * @param opt Long name of the option
+	 * @param def Default value if the option is absent
+	 * @return The value of the option
+	 * @throws IllegalArgumentException If the value is not a positive integer
+	 */
+	public static int getPositiveInt(CommandLine cmd, String opt, int def) {
+		
+		if (!cmd.hasOption(opt))
+			return def;
+		
+		String value = cmd.getOptionValue(opt);
+		
+		try {
+			int i = Integer.parseInt(value);
+			if (i > 0)
+				return i;
+		} catch (NumberFormatException e) {}
+		
+		throw new IllegalArgumentException(String.format("--%s must be a positive integer (got '%s')", opt, value));
+		
+	}
+	
+	/**
+	 * Gets the value of an option as an integer which is zero or more
+	 * 
+	 * @param cmd CommandLine to read from
+	 * @param opt Long name of the option
+	 * @param def Default value if the option is absent
+	 * @return The value of the option
+	 * @throws IllegalArgumentException If the value is not a non-negative integer
+	 */
+	public static int getNonNegativeInt(CommandLine cmd, String opt, int def) {
+		
+		if (!cmd.hasOption(opt))
+			return def;
+		
+		String value = cmd.getOptionValue(opt);
+		
+		try {
+			int i = Integer.parseInt(value);
+			if (i >= 0)
+				return i;
+		} catch (NumberFormatException e) {}
+		
+		throw new IllegalArgumentException(String.format("--%s must be zero or a positive integer (got '%s')", opt, value));
+		
+	}
+	
+}
@@ -1,17 +1,32 @@
 package com.defiancecraft.configure.util;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Scanner;
+import java.util.Set;
 
 /**
  * A class to perform a setup and ask the user questions through
- * stdin, storing the answers in a map.
+ * stdin, storing the answers in a map. Questions which were already
+ * answered on the command line, environment or config file (see
+ * {@link Answers}) are not asked.
  */
 public class Asker {
 
+	// Every Asker reads stdin through the same Scanner, as a Scanner
+	// may buffer input past the line it returns
+	private static final Scanner STDIN = new Scanner(System.in);
+	
+	// Answers which are masked wherever they are printed or logged
+	private static final Set<String> SECRETS = new HashSet<String>(Arrays.asList("dbPass"));
+	private static final String MASK = "********";
+	
 	private Map<String, Question> questions = new LinkedHashMap<String, Question>();
+	private Answers answers = Answers.none();
+	private boolean asked = false;
 	
 	/**
 	 * Constructs an Asker object; questions are
@@ -30,23 +45,49 @@ public class Asker {
 		if (questions.length % 3 != 0)
 			throw new IllegalArgumentException("Questions must be in pairs of three.");
 		
-		for (int i = 0; i < questions.length; i += 3)
-			this.questions.put(questions[i], new Question(questions[i + 1], questions[i + 2]));
+		for (int i = 0; i < questions.length; i += 3) {
+			Question question = new Question(questions[i + 1], questions[i + 2]);
+			question.secret = SECRETS.contains(questions[i]);
+			this.questions.put(questions[i], question);
+		}
 		
 	}
 	
+	/**
+	 * Sets the answers given up front, which are used
+	 * instead of asking the first time questions are asked
+	 * 
+	 * @param answers Answers to use
+	 */
+	public void setAnswers(Answers answers) {
+		this.answers = answers;
+	}
+	
 	/**
 	 * Gets user input for all of the questions passed
 	 * when the Asker was created and stores the results
 	 * in the array of questions. Answers to the questions
 	 * can be retrieved with {@link #getAnswer(String)}
+	 * 
+	 * The first time, questions answered up front are not
+	 * asked (nor are any others with --yes); after the summary
+	 * is rejected, every question is asked again.
+	 * 
+	 * @throws IllegalStateException If stdin has no more input
 	 */
 	public void askQuestions() {
 		
-		Scanner scanner = new Scanner(System.in);
+		for (Entry<String, Question> question : this.questions.entrySet()) {
+			
+			String given = asked ? null : answers.get(question.getKey());
+			if (given != null)
+				question.getValue().answer = given;
+			else if (asked || !answers.isAssumeYes())
+				question.getValue().ask(STDIN);
+			
+		}
 		
-		for (Entry<String, Question> question : this.questions.entrySet()) 
-			question.getValue().ask(scanner);
+		asked = true;
 	
 	}
 	
@@ -66,6 +107,7 @@ public class Asker {
 	 * result of this question.
 	 * 
 	 * @return Whether the user confirmed the answers.
+	 * @throws IllegalStateException If stdin has no more input
 	 */
 	public boolean confirm() {
 		
@@ -87,33 +129,46 @@ public class Asker {
 			sb.append(q.getDescription().length() >= maxLength ? // Fill with spaces of length difference, or nothing if len >= maxLen
 					"" : new String(new char[maxLength - q.getDescription().length()]).replace('\0', ' '));
 			sb.append(": ");
-			sb.append(q.getAnswer());
+			sb.append(q.getDisplayAnswer());
 			sb.append(String.format("%n"));
 		}
 		
+		// Unattended runs log the summary for the record, and carry on
+		if (answers.isAssumeYes()) {
+			Logger.log(sb.toString());
+			return true;
+		}
+		
 		sb.append(String.format("%nIs this information correct?"));
 		sb.append(String.format("%n"));
 		sb.append("> [Y]/N ");
 		
+		Logger.flush();
 		System.out.print(sb.toString());
 		
-		// System.in is closed automatically by the
-		// system; no need to close scanner (messes up
-		// System.in for next Scanner)
-		@SuppressWarnings("resource")
-		Scanner scanner   = new Scanner(System.in);
-		
-		// Wait for newLine
-		while (!scanner.hasNextLine());
-		
-		String line       = scanner.nextLine();
+		String line       = readLine(STDIN);
 		boolean confirmed = !line.equalsIgnoreCase("n"); // No need to check if blank; blank == "Y" (default)
 		
-		// Gotta close dat Scanner, so use temporary variable
 		return confirmed;
 		
 	}
 	
+	/**
+	 * Reads a line of input, blocking until there is one
+	 * 
+	 * @param s The Scanner to read from
+	 * @return The line
+	 * @throws IllegalStateException If the Scanner has no more input
+	 */
+	private static String readLine(Scanner s) {
+		
+		if (!s.hasNextLine())
+			throw new IllegalStateException("no more input on stdin; give the answers with -D, DCCONF_* variables or --config, and pass --yes to run unattended");
+		
+		return s.nextLine();
+		
+	}
+	
 	/**
 	 * A class which holds the description
 	 * and default answer to a question. If
@@ -126,6 +181,7 @@ public class Asker {
 		private String description;
 		private String def;
 		private String answer = "";
+		private boolean secret = false;
 		
 		/**
 		 * Constructs a question object with the 
@@ -162,32 +218,46 @@ public class Asker {
 		public String getAnswer() {
 			return answer.isEmpty() ? def : answer;
 		}
+		
+		/**
+		 * Gets the answer to print or log; masked if the
+		 * question is for a secret, such as a password.
+		 * 
+		 * @return The answer, or a mask if it is secret and not empty.
+		 */
+		public String getDisplayAnswer() {
+			return secret && !getAnswer().isEmpty() ? MASK : getAnswer();
+		}
 
 		/**
-		 * Creates a Scanner instance on System.in
-		 * before asking the question
+		 * Asks the question using the
+		 * shared Scanner on System.in
 		 * 
 		 * @see Question#ask(Scanner)
 		 */
 		public void ask() {
-			Scanner s = new Scanner(System.in);
-			ask(s);
+			ask(STDIN);
 		}
 		
 		/**
 		 * Asks the user a question and
 		 * retrieves their input using given
-		 * Scanner.
+		 * Scanner. If the question was already
+		 * answered, that answer is the default.
 		 * 
 		 * @param s The Scanner to use
+		 * @throws IllegalStateException If the Scanner has no more input
 		 */
 		public void ask(Scanner s) {
 			
-			System.out.printf("%s: [%s] ", this.description, this.def);
+			String current = getAnswer();
+			
+			Logger.flush();
+			System.out.printf("%s: [%s] ", this.description, getDisplayAnswer());
 			
-			this.answer = s.nextLine();
+			this.answer = readLine(s);
 			if (this.answer.isEmpty())
-				this.answer = this.def;
+				this.answer = current;
 			
 		}
 		
@@ -0,0 +1,134 @@
+package com.defiancecraft.configure.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An append-only journal of keys (e.g. UUIDs or file names) whose
+ * work has been completed and flushed to the DB. A restarted run can
+ * open the journal with `resume` set to skip any work recorded in it.
+ *
+ * Keys are written one per line. A partially written last line (if
+ * the process died mid-write) is ignored when the journal is read.
+ */
+public class CheckpointJournal {
+
+	private final File file;
+	private final Set<String> completed = new HashSet<String>();
+	private final FileOutputStream out;
+	private final Writer writer;
+
+	/**
+	 * Opens a journal file, creating it if it does not exist.
+	 *
+	 * @param file Journal file
+	 * @param resume Whether to load the keys already in the journal; if
+	 * 				 false, the journal is truncated.
+	 * @throws IOException If the journal could not be read or opened
+	 */
+	public CheckpointJournal(File file, boolean resume) throws IOException {
+
+		this.file = file;
+
+		if (resume && file.exists()) {
+
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+
+				// Only complete (newline-terminated) lines are read
+				StringBuilder line = new StringBuilder();
+				int c;
+				while ((c = reader.read()) != -1) {
+					if (c == '\n') {
+						if (line.length() > 0)
+							completed.add(line.toString());
+						line.setLength(0);
+					} else {
+						line.append((char) c);
+					}
+				}
+
+			}
+
+		}
+
+		this.out = new FileOutputStream(file, resume);
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+		// Terminate any partially written line from a previous run
+		if (resume && file.length() > 0)
+			writer.write('\n');
+
+	}
+
+	/**
+	 * Checks whether a key was recorded as complete by
+	 * a previous run.
+	 *
+	 * @param key Key to check
+	 * @return Whether the key is complete
+	 */
+	public boolean isCompleted(String key) {
+		return completed.contains(key);
+	}
+
+	/**
+	 * Gets the number of keys recorded by a previous run
+	 *
+	 * @return Number of completed keys
+	 */
+	public int getCompletedCount() {
+		return completed.size();
+	}
+
+	/**
+	 * Appends keys to the journal and syncs it to disk. This
+	 * is safe to call from multiple threads.
+	 *
+	 * @param keys Keys to record as complete
+	 * @throws IOException If the journal could not be written
+	 */
+	public synchronized void record(Collection<String> keys) throws IOException {
+
+		if (keys.isEmpty())
+			return;
+
+		for (String key : keys) {
+			writer.write(key);
+			writer.write('\n');
+		}
+
+		writer.flush();
+		out.getFD().sync();
+
+	}
+
+	/**
+	 * Closes the journal
+	 *
+	 * @throws IOException If the journal could not be closed
+	 */
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Gets the file backing this journal
+	 *
+	 * @return Journal file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+}
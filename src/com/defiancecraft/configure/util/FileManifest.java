@@ -0,0 +1,182 @@
+package com.defiancecraft.configure.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A manifest of files (by path), recording their size, modification
+ * time and a hash of their contents when they were last migrated. Used
+ * to skip files which have not changed between runs.
+ *
+ * The manifest is stored as tab-separated lines of
+ *     path, size, mtime, hash
+ */
+public class FileManifest {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * Loads a manifest from a file; if the file does not
+	 * exist, an empty manifest is returned.
+	 *
+	 * @param file File to load from
+	 * @return The manifest
+	 * @throws IOException If the file could not be read, or is invalid
+	 */
+	public static FileManifest load(File file) throws IOException {
+
+		FileManifest manifest = new FileManifest();
+		if (!file.exists())
+			return manifest;
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+
+				if (line.isEmpty())
+					continue;
+
+				String[] parts = line.split("\t");
+				if (parts.length != 4)
+					throw new IOException(String.format("invalid manifest line '%s'", line));
+
+				try {
+					manifest.put(parts[0], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+				} catch (NumberFormatException e) {
+					throw new IOException(String.format("invalid manifest line '%s'", line));
+				}
+
+			}
+
+		}
+
+		return manifest;
+
+	}
+
+	/**
+	 * Saves the manifest, replacing the file atomically so that
+	 * an interrupted save does not lose the previous manifest.
+	 *
+	 * @param file File to save to
+	 * @throws IOException If the file could not be written
+	 */
+	public void save(File file) throws IOException {
+
+		File temp = new File(file.getPath() + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				writer.write(String.format("%s\t%d\t%d\t%s", e.getKey(), e.getValue().size, e.getValue().mtime, e.getValue().hash));
+				writer.newLine();
+			}
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	}
+
+	public Entry get(String path) {
+		return entries.get(path);
+	}
+
+	public void put(String path, Entry entry) {
+		entries.put(path, entry);
+	}
+
+	public Set<String> getPaths() {
+		return entries.keySet();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Hashes the contents of a file (SHA-1)
+	 *
+	 * @param data Contents of the file
+	 * @return Hex encoded hash
+	 */
+	public static String hash(byte[] data) {
+		return hash(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Hashes the contents of a file (SHA-1); the buffer's
+	 * position is not changed
+	 *
+	 * @param data Contents of the file, between the buffer's
+	 * 			   position and limit
+	 * @return Hex encoded hash
+	 */
+	public static String hash(ByteBuffer data) {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not supported", e);
+		}
+
+		digest.update(data.duplicate());
+		byte[] hash = digest.digest();
+		char[] hex = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			hex[i * 2]     = HEX[(hash[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+		}
+
+		return new String(hex);
+
+	}
+
+	/**
+	 * The recorded state of a single file
+	 */
+	public static class Entry {
+
+		private final long size;
+		private final long mtime;
+		private final String hash;
+
+		public Entry(long size, long mtime, String hash) {
+			this.size = size;
+			this.mtime = mtime;
+			this.hash = hash;
+		}
+
+		/**
+		 * Checks whether a file's size and modification time
+		 * match this entry, in which case it is assumed to be
+		 * unchanged without reading it.
+		 *
+		 * @param size Size of the file
+		 * @param mtime Modification time of the file
+		 * @return Whether the file is unchanged
+		 */
+		public boolean matches(long size, long mtime) {
+			return this.size == size && this.mtime == mtime;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+	}
+
+}
@@ -1,29 +1,370 @@
 package com.defiancecraft.configure.util;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * Really simple log implementation, logging if output is verbose
- * and verbose logging is enabled, or if the output is not verbose.
+ * Simple levelled logger, safe to call from any number of threads.
+ *
+ * Messages are queued and formatted on a background writer thread, which
+ * writes them to stdout through a buffer; messages below the current level
+ * are discarded before anything is formatted. When the queue is full,
+ * verbose messages are dropped (and counted) rather than holding up the
+ * caller, while other messages wait for room.
+ *
+ * Arguments are formatted later, on the writer thread, so anything other
+ * than a string, boxed primitive or similar immutable value is converted
+ * to a string when it is logged.
  */
 public class Logger {
 
-	private static boolean verbose = false;
-	
+	/**
+	 * Levels of log message, least important first
+	 */
+	public enum Level {
+		VERBOSE, INFO, WARN, ERROR
+	}
+
+	private static final int QUEUE_SIZE = 8192;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+	private static final BlockingQueue<Record> QUEUE = new ArrayBlockingQueue<Record>(QUEUE_SIZE);
+	private static final AtomicLong QUEUED = new AtomicLong();
+	private static final AtomicLong DROPPED = new AtomicLong();
+	private static final Object WRITTEN_LOCK = new Object();
+
+	private static volatile Level level = Level.INFO;
+	private static long written = 0;
+
+	static {
+
+		Thread writer = new Thread(Logger::writeLoop, "logger");
+		writer.setDaemon(true);
+		writer.start();
+
+		// Don't lose queued messages when main() returns
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_TIMEOUT_MS), "logger-shutdown"));
+
+	}
+
+	/**
+	 * Sets the lowest level of message which is logged
+	 *
+	 * @param level Level to log from
+	 */
+	public static void setLevel(Level level) {
+		Logger.level = level;
+	}
+
+	/**
+	 * Gets the lowest level of message which is logged
+	 *
+	 * @return Level
+	 */
+	public static Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Checks whether messages of a level are logged
+	 *
+	 * @param level Level to check
+	 * @return Whether they are logged
+	 */
+	public static boolean isEnabled(Level level) {
+		return level.compareTo(Logger.level) >= 0;
+	}
+
 	public static void setVerbose(boolean verbose) {
-		Logger.verbose = verbose;
+		setLevel(verbose ? Level.VERBOSE : Level.INFO);
 	}
-	
+
+	public static boolean isVerbose() {
+		return isEnabled(Level.VERBOSE);
+	}
+
 	public static void log(String msg) {
-		log(msg, false);
+		log(Level.INFO, null, msg, (Object[]) null);
 	}
-	
+
 	public static void log(String msg, boolean verbose) {
-		if ((verbose && Logger.verbose) || !verbose)
-			System.out.println(msg);
+		log(verbose ? Level.VERBOSE : Level.INFO, null, msg, (Object[]) null);
+	}
+
+	/*
+	 * One and two parameter overloads, so that verbose messages logged
+	 * for every file or user don't allocate a varargs array (or box
+	 * their parameters' array) when verbose logging is off
+	 */
+	public static void log(String msg, boolean verbose, Object param) {
+		Level level = verbose ? Level.VERBOSE : Level.INFO;
+		if (isEnabled(level))
+			log(level, (Throwable) null, msg, param);
+	}
+
+	public static void log(String msg, boolean verbose, Object param1, Object param2) {
+		Level level = verbose ? Level.VERBOSE : Level.INFO;
+		if (isEnabled(level))
+			log(level, (Throwable) null, msg, param1, param2);
 	}
-	
+
 	public static void log(String msg, boolean verbose, Object... params) {
-		if ((verbose && Logger.verbose) || !verbose)
-			System.out.println(String.format(msg, params));
+		log(verbose ? Level.VERBOSE : Level.INFO, null, msg, params);
+	}
+
+	/**
+	 * Logs a message, formatted with String.format if any parameters are
+	 * given
+	 *
+	 * @param level Level of the message
+	 * @param msg Message, or format string
+	 * @param params Format parameters
+	 */
+	public static void log(Level level, String msg, Object... params) {
+		log(level, null, msg, params);
+	}
+
+	/**
+	 * Logs a message followed by a stack trace
+	 *
+	 * @param level Level of the message
+	 * @param thrown Throwable whose stack trace to log, or null
+	 * @param msg Message, or format string
+	 * @param params Format parameters
+	 */
+	public static void log(Level level, Throwable thrown, String msg, Object... params) {
+
+		if (!isEnabled(level))
+			return;
+
+		if (params != null)
+			for (int i = 0; i < params.length; i++)
+				if (!isImmutable(params[i]))
+					params[i] = String.valueOf(params[i]);
+
+		Record record = new Record(msg, params, thrown);
+		QUEUED.incrementAndGet();
+
+		if (level == Level.VERBOSE) {
+
+			if (!QUEUE.offer(record)) {
+				QUEUED.decrementAndGet();
+				DROPPED.incrementAndGet();
+			}
+
+		} else {
+
+			boolean interrupted = false;
+			while (true) {
+				try {
+					QUEUE.put(record);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+
+		}
+
+	}
+
+	/**
+	 * Logs the stack trace of a throwable, if verbose logging is enabled
+	 *
+	 * @param thrown Throwable to log
+	 */
+	public static void trace(Throwable thrown) {
+		log(Level.VERBOSE, thrown, "[!] Stack trace:", (Object[]) null);
+	}
+
+	/**
+	 * Waits until every message logged so far has been written. This
+	 * must be called before writing to stdout directly, e.g. to prompt
+	 * the user, so that the output stays in order.
+	 */
+	public static void flush() {
+		flush(0);
 	}
-	
+
+	/**
+	 * Waits until every message logged so far has been written
+	 *
+	 * @param timeout Milliseconds to wait for at most, or 0 to wait forever
+	 * @return Whether every message was written
+	 */
+	private static boolean flush(long timeout) {
+
+		long target = QUEUED.get();
+		long deadline = System.currentTimeMillis() + timeout;
+		boolean interrupted = false;
+
+		synchronized (WRITTEN_LOCK) {
+
+			while (written < target) {
+
+				long wait = timeout == 0 ? 0 : deadline - System.currentTimeMillis();
+				if (timeout != 0 && wait <= 0)
+					break;
+
+				try {
+					WRITTEN_LOCK.wait(wait);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+
+			return written >= target;
+
+		}
+
+	}
+
+	/**
+	 * Takes batches of records from the queue and writes them out,
+	 * flushing whenever the queue has been emptied (or a queue's worth
+	 * of records is waiting to be flushed)
+	 */
+	private static void writeLoop() {
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), BUFFER_SIZE);
+		StringBuilder line = new StringBuilder();
+		Formatter formatter = new Formatter(line);
+		List<Record> batch = new ArrayList<Record>(QUEUE_SIZE);
+		long unflushed = 0;
+
+		while (true) {
+
+			try {
+				batch.add(QUEUE.take());
+			} catch (InterruptedException e) {
+				// Daemon thread; keep going until the JVM exits
+				continue;
+			}
+
+			QUEUE.drainTo(batch);
+
+			try {
+
+				for (Record record : batch)
+					write(out, line, formatter, record);
+
+				long dropped = DROPPED.getAndSet(0);
+				if (dropped > 0)
+					write(out, line, formatter, new Record("[!] Dropped %d verbose log messages; the log queue was full", new Object[] { dropped }, null));
+
+			} catch (IOException e) {
+				// Nowhere left to report it
+			}
+
+			unflushed += batch.size();
+			batch.clear();
+
+			if (QUEUE.isEmpty() || unflushed >= QUEUE_SIZE) {
+
+				try {
+					out.flush();
+				} catch (IOException e) {
+					// As above
+				}
+
+				synchronized (WRITTEN_LOCK) {
+					written += unflushed;
+					WRITTEN_LOCK.notifyAll();
+				}
+
+				unflushed = 0;
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Writes a record; messages are formatted into `line` (which
+	 * `formatter` writes to) first, so a bad format string cannot leave
+	 * half a line behind
+	 */
+	private static void write(Writer out, StringBuilder line, Formatter formatter, Record record) throws IOException {
+
+		if (record.params == null || record.params.length == 0) {
+			out.write(record.msg);
+		} else {
+			line.setLength(0);
+			try {
+				formatter.format(record.msg, record.params);
+				out.append(line);
+			} catch (IllegalFormatException e) {
+				out.write(record.msg);
+				out.write(" [bad log format: " + e.getMessage() + "]");
+			}
+		}
+
+		out.write(System.lineSeparator());
+
+		if (record.thrown != null) {
+			PrintWriter pw = new PrintWriter(out);
+			record.thrown.printStackTrace(pw);
+			pw.flush();
+		}
+
+	}
+
+	/**
+	 * Checks whether an argument can safely be formatted later, on
+	 * the writer thread
+	 */
+	private static boolean isImmutable(Object o) {
+		return o == null
+			|| o instanceof String
+			|| o instanceof Integer
+			|| o instanceof Long
+			|| o instanceof Double
+			|| o instanceof Float
+			|| o instanceof Short
+			|| o instanceof Byte
+			|| o instanceof Boolean
+			|| o instanceof Character
+			|| o instanceof Enum
+			|| o instanceof Path
+			|| o instanceof File
+			|| o instanceof UUID;
+	}
+
+	private static class Record {
+
+		private final String msg;
+		private final Object[] params;
+		private final Throwable thrown;
+
+		Record(String msg, Object[] params, Throwable thrown) {
+			this.msg = msg;
+			this.params = params;
+			this.thrown = thrown;
+		}
+
+	}
+
 }
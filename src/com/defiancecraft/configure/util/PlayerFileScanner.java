@@ -0,0 +1,194 @@
+package com.defiancecraft.configure.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lazily lists the player files (&lt;uuid&gt;.dat) in a playerdata
+ * directory, without holding the whole listing in memory, and reads
+ * their contents into pooled buffers.
+ *
+ * The iterator must only be used by one thread; {@link #read(Path, long)}
+ * may be called from any number of threads.
+ */
+public class PlayerFileScanner implements Iterator<Path>, Closeable {
+
+	private static final int UUID_LENGTH = 36;
+	private static final String EXTENSION = ".dat";
+	private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+	// Files are read into buffers per thread, grown as needed
+	private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+	private final DirectoryStream<Path> stream;
+	private final Iterator<Path> iterator;
+
+	/**
+	 * Opens a PlayerFileScanner
+	 *
+	 * @param directory playerdata directory
+	 * @param uuidFilter Filter on the UUIDs of player files; called
+	 * 					 lazily, on the thread iterating the scanner
+	 * @throws IOException If the directory could not be opened
+	 */
+	public PlayerFileScanner(Path directory, Predicate<String> uuidFilter) throws IOException {
+
+		this.stream = Files.newDirectoryStream(directory, (path) -> {
+			String name = path.getFileName().toString();
+			return isPlayerFile(name) && uuidFilter.test(getUUID(path));
+		});
+		this.iterator = stream.iterator();
+
+	}
+
+	/**
+	 * Counts the player files in a playerdata directory, by listing
+	 * their names only; no file is opened or stat'd.
+	 *
+	 * @param directory playerdata directory
+	 * @param uuidFilter Filter on the UUIDs of player files to count
+	 * @return Number of player files
+	 * @throws IOException If the directory could not be listed
+	 */
+	public static int count(Path directory, Predicate<String> uuidFilter) throws IOException {
+
+		int count = 0;
+		try (PlayerFileScanner scanner = new PlayerFileScanner(directory, uuidFilter)) {
+			while (scanner.hasNext()) {
+				scanner.next();
+				count++;
+			}
+		}
+
+		return count;
+
+	}
+
+	/**
+	 * Gets the UUID of the player a player file belongs to
+	 *
+	 * @param playerFile Player file
+	 * @return UUID of the player
+	 */
+	public static String getUUID(Path playerFile) {
+		return playerFile.getFileName().toString().substring(0, UUID_LENGTH);
+	}
+
+	/**
+	 * Checks whether a file name is a player file name: a UUID (with
+	 * hyphens; alphanumeric, to match the names we have always accepted)
+	 * followed by '.dat'
+	 *
+	 * @param name File name
+	 * @return Whether it is a player file name
+	 */
+	public static boolean isPlayerFile(String name) {
+
+		if (name.length() != UUID_LENGTH + EXTENSION.length() || !name.endsWith(EXTENSION))
+			return false;
+
+		for (int i = 0; i < UUID_LENGTH; i++) {
+
+			char c = name.charAt(i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-')
+					return false;
+			} else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+				return false;
+			}
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Reads a file into this thread's pooled buffer. The returned buffer
+	 * is only valid until the next call to this method on the same thread.
+	 *
+	 * Files are read through a FileChannel rather than memory-mapped;
+	 * player files are a few KB, where mapping costs more than it saves.
+	 *
+	 * @param file File to read
+	 * @param size Expected size of the file; only used to size the buffer
+	 * @return Heap buffer over the contents of the file
+	 * @throws IOException If the file could not be read
+	 */
+	public static ByteBuffer read(Path file, long size) throws IOException {
+
+		if (size > Integer.MAX_VALUE - 1)
+			throw new IOException(String.format("'%s' is too large", file.getFileName()));
+
+		byte[] buffer = BUFFERS.get();
+		if (buffer.length <= size) {
+			buffer = new byte[Integer.highestOneBit((int) size) << 1];
+			BUFFERS.set(buffer);
+		}
+
+		ByteBuffer bb = ByteBuffer.wrap(buffer);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			// Grow if the file is larger than expected
+			while (channel.read(bb) >= 0) {
+				if (!bb.hasRemaining()) {
+					byte[] grown = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, grown, 0, buffer.length);
+					buffer = grown;
+					BUFFERS.set(buffer);
+					bb = ByteBuffer.wrap(buffer);
+					bb.position(buffer.length / 2);
+				}
+			}
+
+		}
+
+		bb.flip();
+		return bb;
+
+	}
+
+	/**
+	 * Opens a stream which decompresses a gzipped file (as read by
+	 * {@link #read(Path, long)}) as it is read, so that a reader which
+	 * stops early does not pay to decompress the rest of the file.
+	 *
+	 * @param data Gzipped contents; a heap buffer
+	 * @return Stream of the decompressed contents
+	 * @throws IOException If the contents do not start with a gzip header
+	 */
+	public static InputStream decompress(ByteBuffer data) throws IOException {
+		return new GZIPInputStream(new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining()));
+	}
+
+	public boolean hasNext() {
+		return iterator.hasNext();
+	}
+
+	public Path next() {
+
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		return iterator.next();
+
+	}
+
+	public void close() throws IOException {
+		stream.close();
+	}
+
+}
@@ -0,0 +1,226 @@
+package com.defiancecraft.configure.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bounded producer -> workers -> writer pipeline.
+ *
+ * Inputs are pulled lazily from an Iterator by a producer thread and
+ * handed to a fixed pool of worker threads. Their results are passed
+ * through a bounded queue to a single writer, which runs on the thread
+ * that called {@link #run(Iterator, Worker, Writer, FailureHandler)}, so
+ * the writer never has to be thread-safe. Results reach the writer in
+ * the order the workers finish them, not the order of the inputs.
+ *
+ * At most `capacity` inputs are in flight (submitted but not yet written)
+ * at any time, so memory use is bounded regardless of the input size.
+ *
+ * @param <I> Input type
+ * @param <O> Output type
+ */
+public class WorkerPipeline<I, O> {
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private final int threads;
+	private final int capacity;
+
+	/**
+	 * Constructs a WorkerPipeline
+	 *
+	 * @param threads Number of worker threads
+	 * @param capacity Maximum number of inputs in flight at once
+	 */
+	public WorkerPipeline(int threads, int capacity) {
+
+		if (threads < 1 || capacity < 1)
+			throw new IllegalArgumentException("Threads and capacity must be positive.");
+
+		this.threads = threads;
+		this.capacity = capacity;
+
+	}
+
+	/**
+	 * Runs every input through `worker` on the worker pool, and passes
+	 * each result to `writer` on the calling thread. Inputs for which the
+	 * worker throws are passed to `onFailure` (also on the calling thread)
+	 * and do not stop the run; Errors are passed wrapped in an
+	 * ExecutionException. Every input reaches exactly one of the two.
+	 *
+	 * If the writer throws, or the input iterator throws, the pipeline is
+	 * shut down and the exception is rethrown.
+	 *
+	 * @param inputs Iterator of inputs; only read by the producer thread
+	 * @param worker Function run on the worker pool
+	 * @param writer Consumer of results, run on the calling thread. Results
+	 * 				 may be null if the worker returned null.
+	 * @param onFailure Handler for inputs that could not be processed
+	 * @throws Exception If the writer or the input iterator failed
+	 */
+	public void run(Iterator<I> inputs, Worker<I, O> worker, Writer<I, O> writer, FailureHandler<I> onFailure) throws Exception {
+
+		int pool = POOL_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory factory = (r) -> {
+			Thread t = new Thread(r, String.format("pipeline-%d-worker-%d", pool, threadCount.incrementAndGet()));
+			t.setDaemon(true);
+			return t;
+		};
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads, factory);
+		Semaphore permits = new Semaphore(capacity);
+
+		// One extra slot for the end marker
+		BlockingQueue<Result<I, O>> results = new ArrayBlockingQueue<Result<I, O>>(capacity + 1);
+		AtomicReference<Exception> producerError = new AtomicReference<Exception>();
+
+		/*
+		 * Producer; submits inputs to the workers while there are
+		 * permits available, then waits for them to finish.
+		 */
+		Thread producer = factory.newThread(() -> {
+
+			try {
+
+				while (inputs.hasNext()) {
+
+					I input = inputs.next();
+					permits.acquire();
+					workers.execute(() -> {
+
+						// Errors are caught too, so every input reaches the
+						// writer or onFailure and the permit is given back
+						Result<I, O> result;
+						try {
+							result = new Result<I, O>(input, worker.process(input), null);
+						} catch (Throwable e) {
+							result = new Result<I, O>(input, null, asException(e));
+						}
+
+						// Never blocks; permits bound the queue size
+						results.add(result);
+
+					});
+
+				}
+
+				workers.shutdown();
+				workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable e) {
+				producerError.set(asException(e));
+				workers.shutdownNow();
+			}
+
+			results.add(Result.<I, O>end());
+
+		});
+
+		producer.start();
+
+		/*
+		 * Writer; runs on this thread until the end marker
+		 */
+		try {
+
+			Result<I, O> result;
+			while (!(result = results.take()).isEnd()) {
+
+				permits.release();
+
+				if (result.error != null)
+					onFailure.failed(result.input, result.error);
+				else
+					writer.write(result.input, result.output);
+
+			}
+
+			if (producerError.get() != null)
+				throw producerError.get();
+
+		} finally {
+			producer.interrupt();
+			workers.shutdownNow();
+		}
+
+	}
+
+	/**
+	 * Gets a Throwable as an Exception, wrapping Errors (such as an
+	 * OutOfMemoryError or StackOverflowError) in an ExecutionException
+	 *
+	 * @param e Throwable
+	 * @return Exception
+	 */
+	private static Exception asException(Throwable e) {
+		return e instanceof Exception ? (Exception) e : new ExecutionException(e);
+	}
+
+	/**
+	 * Processes a single input; called concurrently from
+	 * the worker threads.
+	 */
+	@FunctionalInterface
+	public static interface Worker<I, O> {
+		O process(I input) throws Exception;
+	}
+
+	/**
+	 * Consumes the output of a Worker; only ever
+	 * called from a single thread.
+	 */
+	@FunctionalInterface
+	public static interface Writer<I, O> {
+		void write(I input, O output) throws Exception;
+	}
+
+	/**
+	 * Handles an input which a Worker failed to process.
+	 */
+	@FunctionalInterface
+	public static interface FailureHandler<I> {
+		void failed(I input, Exception e);
+	}
+
+	private static class Result<I, O> {
+
+		private final I input;
+		private final O output;
+		private final Exception error;
+		private final boolean end;
+
+		Result(I input, O output, Exception error) {
+			this(input, output, error, false);
+		}
+
+		private Result(I input, O output, Exception error, boolean end) {
+			this.input = input;
+			this.output = output;
+			this.error = error;
+			this.end = end;
+		}
+
+		static <I, O> Result<I, O> end() {
+			return new Result<I, O>(null, null, null, true);
+		}
+
+		boolean isEnd() {
+			return end;
+		}
+
+	}
+
+}
@@ -0,0 +1,308 @@
+package com.defiancecraft.configure.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Reads a few top-level scalar keys out of a YAML document without
+ * parsing the rest of it.
+ *
+ * The scanner only looks at lines which start in the first column. It
+ * understands plain, single-quoted and (escape-free) double-quoted
+ * scalars on one line, and plain decimal and floating point numbers; for
+ * anything else (including octal, hex and sexagesimal integers) it gives
+ * up, and {@link #scan(byte[])} returns null so the caller can fall back
+ * to a full SnakeYAML parse. Plain scalars are resolved to the same types
+ * SnakeYAML would give them, and, as with SnakeYAML, a key given more
+ * than once takes its last value.
+ *
+ * Scanners hold no mutable state, so one can be shared between threads.
+ */
+public class YamlKeyScanner {
+
+	private final byte[][] keys;
+	private final Resolver resolver = new Resolver();
+
+	/**
+	 * Constructs a YamlKeyScanner
+	 *
+	 * @param keys Top-level keys to read
+	 */
+	public YamlKeyScanner(String... keys) {
+
+		this.keys = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++)
+			this.keys[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+
+	}
+
+	/**
+	 * Scans a UTF-8 YAML document for this scanner's keys
+	 *
+	 * @param data Contents of the document
+	 * @return Map of key to value, without the keys which are not in the
+	 * 		   document; or null if the document needs a full parse
+	 */
+	public Map<String, Object> scan(byte[] data) {
+
+		Map<String, Object> values = new HashMap<String, Object>();
+		boolean started = false;
+		int pos = 0;
+
+		// Skip the UTF-8 BOM
+		if (data.length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF)
+			pos = 3;
+
+		// The whole document is scanned, in case a key is repeated
+		while (pos < data.length) {
+
+			int end = lineEnd(data, pos);
+			int next = end < data.length ? end + 1 : end;
+			if (end > pos && data[end - 1] == '\r')
+				end--;
+
+			byte first = pos < end ? data[pos] : (byte) ' ';
+
+			// Blank, indented, comment and sequence lines belong to
+			// nothing we want; a document start is allowed at the top.
+			if (first == ' ' || first == '\t' || first == '#'
+					|| (first == '-' && !startsWith(data, pos, end, "---"))) {
+				pos = next;
+				continue;
+			} else if (startsWith(data, pos, end, "---") && !started) {
+				started = true;
+				pos = next;
+				continue;
+			}
+
+			started = true;
+
+			// Find the end of the key
+			int colon = pos;
+			while (colon < end && !(data[colon] == ':' && (colon + 1 == end || data[colon + 1] == ' ')))
+				colon++;
+
+			if (colon == end || !isPlainStart(first))
+				return null;
+
+			int valueStart = skipSpaces(data, colon + 1, end);
+			int key = findKey(data, pos, colon);
+
+			if (key >= 0) {
+
+				Object value = readScalar(data, valueStart, end);
+				if (value == null)
+					return null;
+
+				values.put(new String(keys[key], StandardCharsets.UTF_8), value);
+
+			} else if (!isSingleLine(data, valueStart, end)) {
+				return null;
+			}
+
+			pos = next;
+
+		}
+
+		return values;
+
+	}
+
+	/**
+	 * Reads and resolves a scalar which ends with the line
+	 *
+	 * @return Value, or null if it is not a simple single-line scalar
+	 */
+	private Object readScalar(byte[] data, int start, int end) {
+
+		if (start == end || data[start] == '#')
+			return null;
+
+		byte first = data[start];
+
+		if (first == '\'' || first == '"') {
+
+			StringBuilder sb = new StringBuilder();
+			int i = start + 1;
+			int run = i;
+
+			while (true) {
+
+				if (i >= end)
+					return null;
+
+				if (data[i] == '\\' && first == '"')
+					return null;
+
+				if (data[i] == first) {
+
+					sb.append(new String(data, run, i - run, StandardCharsets.UTF_8));
+
+					// '' is an escaped quote in single-quoted scalars
+					if (first == '\'' && i + 1 < end && data[i + 1] == '\'') {
+						sb.append('\'');
+						i += 2;
+						run = i;
+						continue;
+					}
+
+					break;
+
+				}
+
+				i++;
+
+			}
+
+			int rest = skipSpaces(data, i + 1, end);
+			return rest == end || data[rest] == '#' ? sb.toString() : null;
+
+		}
+
+		if (!isPlainStart(first) || (first == '-' && (start + 1 == end || data[start + 1] == ' ')))
+			return null;
+
+		// Plain scalars end at a comment; ": " inside one is an error
+		int i = start;
+		int valueEnd = start;
+		for (; i < end; i++) {
+			if (data[i] == '#' && data[i - 1] == ' ')
+				break;
+			if (data[i] == ':' && (i + 1 == end || data[i + 1] == ' '))
+				return null;
+			if (data[i] != ' ' && data[i] != '\t')
+				valueEnd = i + 1;
+		}
+
+		String value = new String(data, start, valueEnd - start, StandardCharsets.UTF_8);
+		Tag tag = resolver.resolve(NodeId.scalar, value, true);
+
+		if (tag.equals(Tag.STR))
+			return value;
+		else if (tag.equals(Tag.INT))
+			return parseDecimal(value);
+
+		try {
+			if (tag.equals(Tag.FLOAT))
+				return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			// Infinity, NaN, sexagesimal, '_' separators, etc.
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Constructs a plain decimal integer as SnakeYAML would: as an
+	 * Integer if it fits, and as a Long otherwise
+	 *
+	 * @param value Scalar which resolves to an int
+	 * @return Integer or Long; or null if the integer is not plain decimal
+	 * 		   (octal, which has a leading zero, hex, sexagesimal, '_'
+	 * 		   separators, or too large for a Long), and so needs SnakeYAML
+	 */
+	static Object parseDecimal(String value) {
+
+		int sign = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+		if (value.length() > sign + 1 && value.charAt(sign) == '0')
+			return null;
+
+		try {
+			long l = Long.parseLong(value);
+			return l == (int) l ? (Object) (int) l : (Object) l;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+
+	}
+
+	/**
+	 * Checks that a value we do not want cannot run onto the next lines
+	 * (an unterminated quoted scalar or flow collection)
+	 */
+	private static boolean isSingleLine(byte[] data, int start, int end) {
+
+		if (start == end)
+			return true;
+
+		byte first = data[start];
+		int last = end - 1;
+		while (last > start && (data[last] == ' ' || data[last] == '\t'))
+			last--;
+
+		switch (first) {
+			case '\'':
+			case '"':
+				return last > start && data[last] == first;
+			case '[':
+				return data[last] == ']';
+			case '{':
+				return data[last] == '}';
+			default:
+				return true;
+		}
+
+	}
+
+	private int findKey(byte[] data, int start, int end) {
+
+		outer:
+		for (int k = 0; k < keys.length; k++) {
+
+			if (keys[k].length != end - start)
+				continue;
+
+			for (int i = 0; i < keys[k].length; i++)
+				if (keys[k][i] != data[start + i])
+					continue outer;
+
+			return k;
+
+		}
+
+		return -1;
+
+	}
+
+	private static boolean isPlainStart(byte b) {
+		return "?:,[]{}#&*!|>'\"%@`".indexOf(b) < 0;
+	}
+
+	private static boolean startsWith(byte[] data, int start, int end, String prefix) {
+
+		if (end - start < prefix.length())
+			return false;
+
+		for (int i = 0; i < prefix.length(); i++)
+			if (data[start + i] != prefix.charAt(i))
+				return false;
+
+		return true;
+
+	}
+
+	private static int lineEnd(byte[] data, int pos) {
+
+		while (pos < data.length && data[pos] != '\n')
+			pos++;
+
+		return pos;
+
+	}
+
+	private static int skipSpaces(byte[] data, int pos, int end) {
+
+		while (pos < end && (data[pos] == ' ' || data[pos] == '\t'))
+			pos++;
+
+		return pos;
+
+	}
+
+}
@@ -0,0 +1,279 @@
+package com.defiancecraft.configure.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Streams the entries of a map under a top-level key of a YAML document
+ * (such as the 'users' map of a bPermissions users.yml) one at a time,
+ * from SnakeYAML's parse events, so that only the entry being read is
+ * held in memory rather than the whole document.
+ *
+ * Entry values are built as Yaml.load would build them: mappings as
+ * LinkedHashMaps, sequences as ArrayLists and scalars resolved to the
+ * same types and values. Keys are given as strings. Anchors and aliases
+ * are supported; explicit tags are not. Entries are given as they are
+ * read, so a key repeated within the map is given once per entry, where
+ * Yaml.load would keep only its last value; callers decide how to combine
+ * them (the userdata migrator merges a user's entries, as it merges their
+ * entries in other worlds). If the top-level key is repeated, only the
+ * first map is streamed. Errors in the document are thrown as
+ * YAMLExceptions as the entries are read.
+ *
+ * Streams must only be used by one thread.
+ */
+public class YamlMapStream implements Iterator<Map.Entry<String, Object>>, Closeable {
+
+	private final Reader reader;
+	private final Iterator<Event> events;
+	private final Yaml yaml = new Yaml();
+	private final Resolver resolver = new Resolver();
+	private final Map<String, Object> anchors = new HashMap<String, Object>();
+
+	private boolean present;
+	private Map.Entry<String, Object> next;
+	private boolean finished;
+
+	/**
+	 * Opens a YamlMapStream, reading up to the first entry of the map
+	 *
+	 * @param reader Reader of the document; closed with the stream
+	 * @param name Name of the document, for errors
+	 * @param key Top-level key of the map to stream
+	 * @throws IOException If the document is not a YAML map
+	 */
+	public YamlMapStream(Reader reader, String name, String key) throws IOException {
+
+		this.reader = reader;
+		this.events = yaml.parse(reader).iterator();
+
+		if (!(nextEvent() instanceof StreamStartEvent)
+				|| !(nextEvent() instanceof DocumentStartEvent)
+				|| !(nextEvent() instanceof MappingStartEvent))
+			throw new IOException(String.format("'%s' is not a YAML map", name));
+
+		// Skip past the other keys' values. Unlike Yaml.load, which
+		// takes the last value of a key given more than once, the
+		// first map under the key is streamed, and any later one ignored
+		Event event;
+		while (!((event = nextEvent()) instanceof MappingEndEvent)) {
+
+			Event value = null;
+			if (event instanceof ScalarEvent && key.equals(String.valueOf(readScalar((ScalarEvent) event)))) {
+				value = nextEvent();
+				if (value instanceof MappingStartEvent) {
+					present = true;
+					return;
+				}
+			} else {
+				skip(event);
+			}
+
+			skip(value == null ? nextEvent() : value);
+
+		}
+
+		finished = true;
+
+	}
+
+	/**
+	 * Checks whether the document has a map under the key; if it does
+	 * not, the stream is empty
+	 *
+	 * @return Whether the map was found
+	 */
+	public boolean isPresent() {
+		return present;
+	}
+
+	public boolean hasNext() {
+
+		if (next != null)
+			return true;
+		if (finished)
+			return false;
+
+		Event event = nextEvent();
+		if (event instanceof MappingEndEvent) {
+			finished = true;
+			return false;
+		}
+
+		String key = String.valueOf(readValue(event));
+		next = new SimpleImmutableEntry<String, Object>(key, readValue(nextEvent()));
+		return true;
+
+	}
+
+	public Map.Entry<String, Object> next() {
+
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		Map.Entry<String, Object> entry = next;
+		next = null;
+		return entry;
+
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Builds the value starting with an event
+	 */
+	private Object readValue(Event event) {
+
+		if (event instanceof AliasEvent) {
+			String anchor = ((AliasEvent) event).getAnchor();
+			if (!anchors.containsKey(anchor))
+				throw error(event, String.format("unknown anchor '%s'", anchor));
+			return anchors.get(anchor);
+		}
+
+		if (event instanceof ScalarEvent)
+			return anchor(event, readScalar((ScalarEvent) event));
+
+		if (event instanceof MappingStartEvent) {
+
+			checkTag(((CollectionStartEvent) event).getTag(), event);
+			Map<Object, Object> map = anchor(event, new LinkedHashMap<Object, Object>());
+
+			while (!((event = nextEvent()) instanceof MappingEndEvent)) {
+				Object key = readValue(event);
+				map.put(key, readValue(nextEvent()));
+			}
+
+			return map;
+
+		}
+
+		if (event instanceof SequenceStartEvent) {
+
+			checkTag(((CollectionStartEvent) event).getTag(), event);
+			List<Object> list = anchor(event, new ArrayList<Object>());
+
+			while (!((event = nextEvent()) instanceof CollectionEndEvent))
+				list.add(readValue(event));
+
+			return list;
+
+		}
+
+		throw error(event, "unexpected " + event.getClass().getSimpleName());
+
+	}
+
+	/**
+	 * Resolves a scalar to the type SnakeYAML would construct it as;
+	 * the common types directly, and anything else by loading it
+	 */
+	private Object readScalar(ScalarEvent event) {
+
+		String value = event.getValue();
+		checkTag(event.getTag(), event);
+
+		// Quoted scalars are strings
+		if (!event.getImplicit().canOmitTagInPlainScalar())
+			return value;
+
+		Tag resolved = resolver.resolve(NodeId.scalar, value, true);
+
+		if (resolved.equals(Tag.STR))
+			return value;
+		if (resolved.equals(Tag.NULL))
+			return null;
+
+		if (resolved.equals(Tag.INT)) {
+			Object decimal = YamlKeyScanner.parseDecimal(value);
+			if (decimal != null)
+				return decimal;
+		}
+
+		// A plain scalar loads to the same value on its own; this
+		// includes octal, hex, sexagesimal and '_'-separated integers
+		return yaml.load(value);
+
+	}
+
+	/**
+	 * Records the value of an anchored node, for its aliases
+	 */
+	private <T> T anchor(Event event, T value) {
+
+		String anchor = ((NodeEvent) event).getAnchor();
+		if (anchor != null)
+			anchors.put(anchor, value);
+
+		return value;
+
+	}
+
+	/**
+	 * Skips the value starting with an event
+	 */
+	private void skip(Event event) {
+
+		if (!(event instanceof CollectionStartEvent))
+			return;
+
+		for (int depth = 1; depth > 0; ) {
+			event = nextEvent();
+			if (event instanceof CollectionStartEvent)
+				depth++;
+			else if (event instanceof CollectionEndEvent)
+				depth--;
+		}
+
+	}
+
+	private void checkTag(String tag, Event event) {
+
+		// '!' is the non-specific tag, which resolves as untagged
+		if (tag != null && !tag.equals("!"))
+			throw error(event, String.format("explicit tags such as '%s' are not supported", tag));
+
+	}
+
+	private Event nextEvent() {
+
+		if (!events.hasNext())
+			throw new YAMLException("unexpected end of document");
+
+		return events.next();
+
+	}
+
+	private static YAMLException error(Event event, String message) {
+		return new YAMLException(String.format("%s (line %d)", message, event.getStartMark().getLine() + 1));
+	}
+
+}